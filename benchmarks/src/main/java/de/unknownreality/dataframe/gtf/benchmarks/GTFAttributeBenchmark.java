@@ -0,0 +1,78 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf.benchmarks;
+
+import de.unknownreality.dataframe.gtf.GTFAttributeTokenizer;
+import de.unknownreality.dataframe.gtf.GTFUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splitting of GENCODE-like attribute fields.
+ * Each operation processes all generated attribute fields.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GTFAttributeBenchmark {
+
+    @Param({"10000"})
+    public int lines;
+
+    private String[] attributes;
+    private GTFAttributeTokenizer tokenizer;
+    private String[] values;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        List<String> attributeList = GTFDataGenerator.createAttributes(lines);
+        attributes = attributeList.toArray(new String[attributeList.size()]);
+        tokenizer = new GTFAttributeTokenizer(Arrays.asList("gene_id", "transcript_id", "gene_name", "exon_number"));
+        values = new String[tokenizer.getKeyCount()];
+    }
+
+    @Benchmark
+    public void splitAttributes(Blackhole blackhole) {
+        for (String attribute : attributes) {
+            blackhole.consume(GTFUtil.splitAttributes(attribute));
+        }
+    }
+
+    @Benchmark
+    public void tokenizeAttributes(Blackhole blackhole) {
+        for (String attribute : attributes) {
+            blackhole.consume(tokenizer.tokenize(attribute, 0, attribute.length(), values));
+            blackhole.consume(values);
+        }
+    }
+}
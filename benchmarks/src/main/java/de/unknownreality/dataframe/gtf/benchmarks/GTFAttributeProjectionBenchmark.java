@@ -0,0 +1,139 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf.benchmarks;
+
+import de.unknownreality.dataframe.gtf.GTFAttributeSlots;
+import de.unknownreality.dataframe.gtf.GTFAttributeTokenizer;
+import de.unknownreality.dataframe.gtf.GTFUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Projection of 10 requested attributes including the detection of missing attributes.
+ * Compares the former per-row <tt>HashSet</tt> of missing keys with cleared spans and generation stamped slots.
+ * The allocation per operation is reported by the gc profiler (<tt>gc.alloc.rate.norm</tt>):
+ * spans and slots allocate nothing per line, the <tt>HashSet</tt> of missing keys allocates hundreds of bytes per line.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GTFAttributeProjectionBenchmark {
+    private static final List<String> KEYS = Arrays.asList("gene_id", "transcript_id", "gene_type", "gene_name",
+            "transcript_type", "transcript_name", "transcript_support_level", "tag", "exon_number", "exon_id");
+
+    @Param({"10000"})
+    public int lines;
+
+    private String[] attributes;
+    private Map<String, Integer> attributeIndexMap;
+    private GTFAttributeTokenizer tokenizer;
+    private int[] spans;
+    private GTFAttributeSlots slots;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        List<String> attributeList = GTFDataGenerator.createAttributes(lines);
+        attributes = attributeList.toArray(new String[attributeList.size()]);
+        attributeIndexMap = new HashMap<>();
+        for (String key : KEYS) {
+            attributeIndexMap.put(key, attributeIndexMap.size());
+        }
+        tokenizer = new GTFAttributeTokenizer(KEYS);
+        spans = new int[3 * tokenizer.getKeyCount()];
+        slots = new GTFAttributeSlots(tokenizer.getKeyCount());
+    }
+
+    @Benchmark
+    public int missingHashSet() {
+        int missing = 0;
+        for (String attribute : attributes) {
+            String[] parts = GTFUtil.splitAttributes(attribute);
+            Set<String> missingAttributes = new HashSet<>(attributeIndexMap.keySet());
+            for (int i = 0; i < parts.length; i += 2) {
+                if (attributeIndexMap.get(parts[i]) != null) {
+                    missingAttributes.remove(parts[i]);
+                }
+            }
+            for (String missingAttribute : missingAttributes) {
+                missing += attributeIndexMap.get(missingAttribute);
+            }
+        }
+        return missing;
+    }
+
+    @Benchmark
+    public int missingSpans() {
+        int missing = 0;
+        for (String attribute : attributes) {
+            tokenizer.tokenize(attribute, 0, attribute.length(), spans);
+            for (int slot = 0; slot < KEYS.size(); slot++) {
+                if (spans[3 * slot] == -1) {
+                    missing += slot;
+                }
+            }
+        }
+        return missing;
+    }
+
+    @Benchmark
+    public int missingSlots() {
+        int missing = 0;
+        for (String attribute : attributes) {
+            tokenizer.tokenize(attribute, 0, attribute.length(), slots);
+            for (int slot = 0; slot < KEYS.size(); slot++) {
+                if (!slots.isFound(slot)) {
+                    missing += slot;
+                }
+            }
+        }
+        return missing;
+    }
+
+    @Benchmark
+    public void projectSlots(Blackhole blackhole) {
+        for (String attribute : attributes) {
+            tokenizer.tokenize(attribute, 0, attribute.length(), slots);
+            for (int slot = 0; slot < KEYS.size(); slot++) {
+                if (slots.isFound(slot)) {
+                    blackhole.consume(slots.isEscaped(slot)
+                            ? GTFAttributeTokenizer.unescape(attribute, slots.getStart(slot), slots.getEnd(slot))
+                            : attribute.substring(slots.getStart(slot), slots.getEnd(slot)));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic GTF files resembling GENCODE annotations.
+ * Each gene has one to four transcripts with exons, CDS, UTR and start/stop codon features.
+ * Attributes follow the GENCODE layout, including unquoted numeric values, multiple tags
+ * and occasional escaped quotes. The output only depends on the seed.
+ */
+public class GTFDataGenerator {
+    private static final String[] CHROMOSOMES = new String[]{"chr1", "chr2", "chr3", "chr7", "chr17", "chrX"};
+    private static final String[] GENE_TYPES = new String[]{"protein_coding", "protein_coding", "protein_coding",
+            "lncRNA", "processed_pseudogene", "miRNA"};
+    private static final String[] TRANSCRIPT_TYPES = new String[]{"protein_coding", "nonsense_mediated_decay",
+            "retained_intron", "processed_transcript"};
+    private static final String[] TAGS = new String[]{"basic", "CCDS", "appris_principal_1", "mRNA_start_NF",
+            "cds_end_NF", "Ensembl_canonical"};
+
+    private final Random random;
+    private final Writer writer;
+    private int geneCount = 0;
+    private int transcriptCount = 0;
+    private int exonCount = 0;
+
+    private GTFDataGenerator(Writer writer, long seed) {
+        this.writer = writer;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Creates a temporary GTF file containing a number of genes.
+     * The file is deleted when the JVM exits.
+     * @param genes number of genes
+     * @return GTF file
+     * @throws IOException if the file can not be written
+     */
+    public static File createFile(int genes) throws IOException {
+        File file = File.createTempFile("gencode-synthetic", ".gtf");
+        file.deleteOnExit();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            write(writer, genes, 42L);
+        }
+        return file;
+    }
+
+    /**
+     * Writes a GENCODE-like header and a number of genes to a writer.
+     * @param writer target writer
+     * @param genes number of genes
+     * @param seed random seed
+     * @throws IOException if the writer fails
+     */
+    public static void write(Writer writer, int genes, long seed) throws IOException {
+        writer.write("##description: synthetic GENCODE-like annotation\n");
+        writer.write("##provider: GENCODE\n");
+        writer.write("##format: gtf\n");
+        GTFDataGenerator generator = new GTFDataGenerator(writer, seed);
+        long position = 10000;
+        for (int i = 0; i < genes; i++) {
+            position = generator.writeGene(CHROMOSOMES[i * CHROMOSOMES.length / genes], position);
+        }
+    }
+
+    /**
+     * Returns the attribute fields of generated lines
+     * @param lines number of lines
+     * @return attribute fields
+     * @throws IOException if the lines can not be generated
+     */
+    public static List<String> createAttributes(int lines) throws IOException {
+        List<String> attributes = new ArrayList<>(lines);
+        int genes = Math.max(1, lines / 20);
+        StringWriter stringWriter = new StringWriter();
+        write(stringWriter, genes, 7L);
+        for (String line : stringWriter.toString().split("\n")) {
+            if (line.startsWith("#")) {
+                continue;
+            }
+            attributes.add(line.substring(line.lastIndexOf('\t') + 1));
+            if (attributes.size() == lines) {
+                break;
+            }
+        }
+        return attributes;
+    }
+
+    private long writeGene(String chromosome, long position) throws IOException {
+        String geneId = String.format("ENSG%011d.%d", ++geneCount, 1 + random.nextInt(20));
+        String geneType = GENE_TYPES[random.nextInt(GENE_TYPES.length)];
+        String geneName = random.nextInt(100) == 0
+                ? "RP11-" + geneCount + "\\\"" + random.nextInt(10) + "\\\""
+                : "GENE" + geneCount;
+        char strand = random.nextBoolean() ? '+' : '-';
+        int transcripts = 1 + random.nextInt(4);
+        int exons = 2 + random.nextInt(9);
+        long geneEnd = position + exons * 400L + random.nextInt(5000);
+        String geneAttributes = "gene_id \"" + geneId + "\"; gene_type \"" + geneType
+                + "\"; gene_name \"" + geneName + "\"; level " + (1 + random.nextInt(3))
+                + "; havana_gene \"OTTHUMG" + String.format("%011d", geneCount) + ".1\";";
+        writeLine(chromosome, "HAVANA", "gene", position, geneEnd, strand, ".", geneAttributes);
+        boolean coding = "protein_coding".equals(geneType);
+        for (int t = 0; t < transcripts; t++) {
+            String transcriptId = String.format("ENST%011d.%d", ++transcriptCount, 1 + random.nextInt(5));
+            String transcriptType = coding ? TRANSCRIPT_TYPES[random.nextInt(TRANSCRIPT_TYPES.length)] : geneType;
+            StringBuilder transcriptAttributes = new StringBuilder(geneAttributes.length() + 256)
+                    .append("gene_id \"").append(geneId)
+                    .append("\"; transcript_id \"").append(transcriptId)
+                    .append("\"; gene_type \"").append(geneType)
+                    .append("\"; gene_name \"").append(geneName)
+                    .append("\"; transcript_type \"").append(transcriptType)
+                    .append("\"; transcript_name \"").append(geneName).append('-').append(201 + t)
+                    .append("\"; level ").append(1 + random.nextInt(3))
+                    .append("; transcript_support_level \"").append(1 + random.nextInt(5)).append('"');
+            int tags = random.nextInt(4);
+            for (int i = 0; i < tags; i++) {
+                transcriptAttributes.append("; tag \"").append(TAGS[random.nextInt(TAGS.length)]).append('"');
+            }
+            transcriptAttributes.append(';');
+            String attributes = transcriptAttributes.toString();
+            writeLine(chromosome, "HAVANA", "transcript", position, geneEnd, strand, ".", attributes);
+            long exonStart = position;
+            for (int e = 0; e < exons; e++) {
+                long exonEnd = exonStart + 50 + random.nextInt(300);
+                String exonAttributes = attributes.substring(0, attributes.length() - 1)
+                        + "; exon_number " + (e + 1)
+                        + "; exon_id \"" + String.format("ENSE%011d.1", ++exonCount) + "\";";
+                writeLine(chromosome, "HAVANA", "exon", exonStart, exonEnd, strand, ".", exonAttributes);
+                if (coding) {
+                    if (e == 0 || e == exons - 1) {
+                        writeLine(chromosome, "HAVANA", "UTR", exonStart, exonStart + 20, strand, ".", exonAttributes);
+                    }
+                    writeLine(chromosome, "HAVANA", "CDS", exonStart, exonEnd, strand,
+                            Integer.toString(random.nextInt(3)), exonAttributes);
+                    if (e == 0) {
+                        writeLine(chromosome, "HAVANA", "start_codon", exonStart, exonStart + 2, strand, "0",
+                                exonAttributes);
+                    }
+                    if (e == exons - 1) {
+                        writeLine(chromosome, "HAVANA", "stop_codon", exonEnd - 2, exonEnd, strand, "0",
+                                exonAttributes);
+                    }
+                }
+                exonStart = exonEnd + 100 + random.nextInt(200);
+            }
+        }
+        return geneEnd + 1000 + random.nextInt(20000);
+    }
+
+    private void writeLine(String chromosome, String source, String feature, long start, long end,
+                           char strand, String frame, String attributes) throws IOException {
+        writer.write(chromosome);
+        writer.write('\t');
+        writer.write(source);
+        writer.write('\t');
+        writer.write(feature);
+        writer.write('\t');
+        writer.write(Long.toString(start));
+        writer.write('\t');
+        writer.write(Long.toString(end));
+        writer.write("\t.\t");
+        writer.write(strand);
+        writer.write('\t');
+        writer.write(frame);
+        writer.write('\t');
+        writer.write(attributes);
+        writer.write('\n');
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+package de.unknownreality.dataframe.gtf.benchmarks;
+
+import de.unknownreality.dataframe.gtf.GTFField;
+import de.unknownreality.dataframe.gtf.GTFReader;
+import de.unknownreality.dataframe.gtf.GTFReaderBuilder;
+import de.unknownreality.dataframe.gtf.GTFRow;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Projection of 2-3 of the 8 GTF fields of generated lines whose fields are already located.
+ * Compares the former loop over <tt>GTFField.values()</tt> with a lookup of each field in a <tt>HashSet</tt>
+ * of field indices against the precompiled projection of the field index of each column.
+ * <tt>loadRows</tt> reads the rows of the same lines using {@link GTFReader}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GTFFieldProjectionBenchmark {
+    private static final String NA = "NA";
+
+    @Param({"10000"})
+    public int lines;
+
+    @Param({"seqname,start,end", "feature,strand"})
+    public String fields;
+
+    private String data;
+    private String[] lineArray;
+    private int[][] fieldStarts;
+    private int[][] fieldEnds;
+    private Set<Integer> fieldIndices;
+    private int[] projectedFields;
+    private String[] values;
+    private GTFReader reader;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        StringWriter writer = new StringWriter();
+        GTFDataGenerator.write(writer, Math.max(1, lines / 20), 7L);
+        List<String> lineList = new ArrayList<>(lines);
+        for (String line : writer.toString().split("\n")) {
+            if (!line.startsWith("#") && lineList.size() < lines) {
+                lineList.add(line);
+            }
+        }
+        lineArray = lineList.toArray(new String[lineList.size()]);
+        data = String.join("\n", lineList);
+        fieldStarts = new int[lineArray.length][9];
+        fieldEnds = new int[lineArray.length][9];
+        for (int l = 0; l < lineArray.length; l++) {
+            int start = 0;
+            for (int f = 0; f < 9; f++) {
+                int end = f == 8 ? lineArray[l].length() : lineArray[l].indexOf('\t', start);
+                fieldStarts[l][f] = start;
+                fieldEnds[l][f] = end;
+                start = end + 1;
+            }
+        }
+
+        GTFReaderBuilder builder = GTFReaderBuilder.create();
+        fieldIndices = new HashSet<>();
+        String[] fieldNames = fields.split(",");
+        projectedFields = new int[fieldNames.length];
+        for (int i = 0; i < fieldNames.length; i++) {
+            GTFField field = GTFField.fromString(fieldNames[i]);
+            fieldIndices.add(field.getIndex());
+            projectedFields[i] = field.getIndex();
+            builder.withGTFField(field);
+        }
+        values = new String[fieldNames.length];
+        reader = builder.build();
+    }
+
+    @Benchmark
+    public void projectFieldSet(Blackhole blackhole) {
+        for (int l = 0; l < lineArray.length; l++) {
+            String line = lineArray[l];
+            int idx = 0;
+            for (int i = 0; i < GTFField.values().length; i++) {
+                if (fieldIndices.contains(i)) {
+                    values[idx++] = isNA(line, fieldStarts[l][i], fieldEnds[l][i])
+                            ? NA
+                            : line.substring(fieldStarts[l][i], fieldEnds[l][i]);
+                }
+            }
+            blackhole.consume(values);
+        }
+    }
+
+    @Benchmark
+    public void projectPlan(Blackhole blackhole) {
+        for (int l = 0; l < lineArray.length; l++) {
+            String line = lineArray[l];
+            for (int column = 0; column < projectedFields.length; column++) {
+                int start = fieldStarts[l][projectedFields[column]];
+                int end = fieldEnds[l][projectedFields[column]];
+                values[column] = isNA(line, start, end) ? NA : line.substring(start, end);
+            }
+            blackhole.consume(values);
+        }
+    }
+
+    @Benchmark
+    public void loadRows(Blackhole blackhole) {
+        for (GTFRow row : reader.load(new StringReader(data))) {
+            blackhole.consume(row);
+        }
+    }
+
+    private static boolean isNA(String line, int start, int end) {
+        return end - start == 1 && line.charAt(start) == '.';
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf.benchmarks;
+
+import de.unknownreality.dataframe.DataFrame;
+import de.unknownreality.dataframe.column.IntegerColumn;
+import de.unknownreality.dataframe.gtf.GTFField;
+import de.unknownreality.dataframe.gtf.GTFReaderBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end loading of a synthetic GENCODE-like GTF file.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GTFReaderBenchmark {
+
+    @Param({"2000"})
+    public int genes;
+
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = GTFDataGenerator.createFile(genes);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public DataFrame loadGTFFields() {
+        return DataFrame.load(file, GTFReaderBuilder.create().build());
+    }
+
+    @Benchmark
+    public DataFrame loadAttributes() {
+        return DataFrame.load(file, GTFReaderBuilder.create()
+                .withGTFField(GTFField.SEQNAME)
+                .withGTFField(GTFField.FEATURE)
+                .withGTFField(GTFField.START)
+                .withGTFField(GTFField.END)
+                .withAttribute("gene_id")
+                .withAttribute("transcript_id")
+                .withAttribute("gene_name")
+                .withAttribute("exon_number", IntegerColumn.class)
+                .build());
+    }
+
+    @Benchmark
+    public DataFrame loadDataFrameAttributes() {
+        return GTFReaderBuilder.create()
+                .withGTFField(GTFField.SEQNAME)
+                .withGTFField(GTFField.FEATURE)
+                .withGTFField(GTFField.START)
+                .withGTFField(GTFField.END)
+                .withAttribute("gene_id")
+                .withAttribute("transcript_id")
+                .withAttribute("gene_name")
+                .withAttribute("exon_number", IntegerColumn.class)
+                .build()
+                .loadDataFrame(file);
+    }
+}
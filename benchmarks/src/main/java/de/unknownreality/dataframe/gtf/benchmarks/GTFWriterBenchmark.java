@@ -0,0 +1,87 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf.benchmarks;
+
+import de.unknownreality.dataframe.DataFrame;
+import de.unknownreality.dataframe.gtf.GTFFormat;
+import de.unknownreality.dataframe.gtf.GTFReaderBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing a dataframe with all GTF fields and five attributes.
+ * The output is discarded, only the number of characters is counted.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GTFWriterBenchmark {
+
+    @Param({"2000"})
+    public int genes;
+
+    private DataFrame dataFrame;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dataFrame = DataFrame.load(GTFDataGenerator.createFile(genes), GTFReaderBuilder.create()
+                .withAttribute("gene_id")
+                .withAttribute("transcript_id")
+                .withAttribute("gene_type")
+                .withAttribute("gene_name")
+                .withAttribute("exon_number")
+                .build());
+    }
+
+    @Benchmark
+    public long write() {
+        CountingWriter writer = new CountingWriter();
+        dataFrame.write(writer, GTFFormat.GTF);
+        return writer.count;
+    }
+
+    private static class CountingWriter extends Writer {
+        private long count = 0;
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
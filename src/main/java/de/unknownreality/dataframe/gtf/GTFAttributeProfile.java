@@ -0,0 +1,373 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import de.unknownreality.dataframe.DataFrameColumn;
+import de.unknownreality.dataframe.DataFrameRuntimeException;
+import de.unknownreality.dataframe.column.DoubleColumn;
+import de.unknownreality.dataframe.column.IntegerColumn;
+import de.unknownreality.dataframe.column.LongColumn;
+import de.unknownreality.dataframe.column.StringColumn;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Statistics of the attributes of a GTF file.
+ * Only the attributes part of each row is scanned. For each attribute key the number of occurrences,
+ * an estimate of the number of distinct values (HyperLogLog) and the narrowest column type
+ * (<tt>Integer</tt>, <tt>Long</tt>, <tt>Double</tt> or <tt>String</tt>) parsing all values are computed.
+ * Values are checked in place, no strings are created for values.
+ * <p>
+ * A profile can be applied to {@link GTFSettings} to load all attributes with matching column types
+ * and dictionary encoding of low cardinality attributes.
+ * </p>
+ */
+public class GTFAttributeProfile {
+    public static final double DEFAULT_DICTIONARY_RATIO = 0.1;
+    private static final int TYPE_INTEGER = 0;
+    private static final int TYPE_LONG = 1;
+    private static final int TYPE_DOUBLE = 2;
+    private static final int TYPE_STRING = 3;
+
+    private final Map<String, AttributeStatistics> attributes = new LinkedHashMap<>();
+    private final boolean keysOnly;
+    private long rowCount = 0;
+
+    private GTFAttributeProfile(boolean keysOnly) {
+        this.keysOnly = keysOnly;
+    }
+
+    /**
+     * Profiles all rows of a GTF file. Gzip and BGZF compressed files are decompressed.
+     * @param file input file
+     * @return attribute profile
+     */
+    public static GTFAttributeProfile create(File file) {
+        return create(file, 0);
+    }
+
+    /**
+     * Profiles the first rows of a GTF file. Gzip and BGZF compressed files are decompressed.
+     * @param file input file
+     * @param maxRows maximum number of rows, values less than 1 profile all rows
+     * @return attribute profile
+     */
+    public static GTFAttributeProfile create(File file, long maxRows) {
+        return create(file, maxRows, false);
+    }
+
+    /**
+     * Returns the keys of all attributes of a GTF file in the order they first appear.
+     * No statistics are computed.
+     * @param file input file
+     * @return attribute keys
+     */
+    static Set<String> findKeys(File file) {
+        return create(file, 0, true).attributes.keySet();
+    }
+
+    private static GTFAttributeProfile create(File file, long maxRows, boolean keysOnly) {
+        try {
+            GTFLineSource source = GTFCompression.isCompressed(file)
+                    ? new GTFReaderLineSource(new BufferedReader(new InputStreamReader(
+                    GTFCompression.open(file, 1), StandardCharsets.UTF_8)))
+                    : new GTFMappedLineSource(file);
+            return create(source, maxRows, keysOnly);
+        } catch (IOException e) {
+            throw new DataFrameRuntimeException(String.format("error reading gtf file '%s'", file), e);
+        }
+    }
+
+    /**
+     * Profiles the first rows of GTF data
+     * @param reader input reader
+     * @param maxRows maximum number of rows, values less than 1 profile all rows
+     * @return attribute profile
+     */
+    public static GTFAttributeProfile create(Reader reader, long maxRows) {
+        return create(new GTFReaderLineSource(new BufferedReader(reader)), maxRows, false);
+    }
+
+    private static GTFAttributeProfile create(GTFLineSource source, long maxRows, boolean keysOnly) {
+        GTFAttributeProfile profile = new GTFAttributeProfile(keysOnly);
+        Profiler profiler = profile.new Profiler();
+        GTFAttributeTokenizer tokenizer = new GTFAttributeTokenizer(Collections.emptyList());
+        int lineNumber = 0;
+        try (GTFLineSource lineSource = source) {
+            CharSequence line;
+            while ((maxRows < 1 || profile.rowCount < maxRows) && (line = lineSource.readLine()) != null) {
+                lineNumber++;
+                if (GTFLineParser.isIgnored(line)) {
+                    continue;
+                }
+                int attributesStart = 0;
+                for (int tabs = 0; tabs < 8 && attributesStart != -1; tabs++) {
+                    attributesStart = indexOf(line, '\t', attributesStart);
+                    attributesStart = attributesStart == -1 ? -1 : attributesStart + 1;
+                }
+                if (attributesStart == -1) {
+                    throw new DataFrameRuntimeException(String.format("invalid column count in line %d", lineNumber));
+                }
+                int attributesEnd = indexOf(line, '\t', attributesStart);
+                profile.rowCount++;
+                tokenizer.visit(line, attributesStart, attributesEnd == -1 ? line.length() : attributesEnd, profiler);
+            }
+        } catch (IOException e) {
+            throw new DataFrameRuntimeException(String.format("error reading gtf row: %d", lineNumber), e);
+        }
+        return profile;
+    }
+
+    /**
+     * Returns the number of profiled rows
+     * @return number of rows
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the statistics of all attributes in the order they were found
+     * @return attribute statistics
+     */
+    public List<AttributeStatistics> getAttributes() {
+        return Collections.unmodifiableList(new ArrayList<>(attributes.values()));
+    }
+
+    /**
+     * Returns the statistics of an attribute
+     * @param key attribute key
+     * @return attribute statistics or <tt>null</tt> if the attribute was not found
+     */
+    public AttributeStatistics getAttribute(String key) {
+        return attributes.get(key);
+    }
+
+    /**
+     * Adds all attributes to the settings using the narrowest column types.
+     * String attributes are dictionary encoded if the number of distinct values is at most
+     * {@value #DEFAULT_DICTIONARY_RATIO} times the number of occurrences.
+     * @param settings target settings
+     */
+    public void applyTo(GTFSettings settings) {
+        applyTo(settings, DEFAULT_DICTIONARY_RATIO);
+    }
+
+    /**
+     * Adds all attributes to the settings using the narrowest column types.
+     * String attributes are dictionary encoded if the number of distinct values is at most
+     * <tt>maxDistinctRatio</tt> times the number of occurrences.
+     * @param settings target settings
+     * @param maxDistinctRatio maximum ratio of distinct values to occurrences for dictionary encoding
+     */
+    public void applyTo(GTFSettings settings, double maxDistinctRatio) {
+        for (AttributeStatistics attribute : attributes.values()) {
+            settings.addAttribute(attribute.key, attribute.getColumnType());
+            if (attribute.getColumnType() == StringColumn.class
+                    && attribute.getDistinctCount() <= attribute.count * maxDistinctRatio) {
+                settings.addDictionaryEncoding(attribute.key);
+            }
+        }
+    }
+
+    /**
+     * Returns the narrowest type of a value.
+     * Values are checked in the same way as they are parsed by the column types.
+     */
+    private static int getType(CharSequence input, int start, int end) {
+        int i = start;
+        if (i < end && (input.charAt(i) == '-' || input.charAt(i) == '+')) {
+            i++;
+        }
+        int digitsStart = i;
+        while (i < end && isDigit(input.charAt(i))) {
+            i++;
+        }
+        int digits = i - digitsStart;
+        if (i == end && digits > 0) {
+            if (digits <= 9) {
+                return TYPE_INTEGER;
+            }
+            if (digits <= 18) {
+                long value = Long.parseLong(input.subSequence(start, end).toString());
+                return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE ? TYPE_INTEGER : TYPE_LONG;
+            }
+        }
+        if (i < end && input.charAt(i) == '.') {
+            i++;
+            int fractionStart = i;
+            while (i < end && isDigit(input.charAt(i))) {
+                i++;
+            }
+            digits += i - fractionStart;
+        }
+        if (digits == 0) {
+            return TYPE_STRING;
+        }
+        if (i < end && (input.charAt(i) == 'e' || input.charAt(i) == 'E')) {
+            i++;
+            if (i < end && (input.charAt(i) == '-' || input.charAt(i) == '+')) {
+                i++;
+            }
+            int exponentStart = i;
+            while (i < end && isDigit(input.charAt(i))) {
+                i++;
+            }
+            if (i == exponentStart) {
+                return TYPE_STRING;
+            }
+        }
+        return i == end ? TYPE_DOUBLE : TYPE_STRING;
+    }
+
+    private static boolean isNA(CharSequence input, int start, int end) {
+        return end - start == 2 && input.charAt(start) == 'N' && input.charAt(start + 1) == 'A';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int indexOf(CharSequence input, char c, int from) {
+        for (int i = from; i < input.length(); i++) {
+            if (input.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Statistics of a single attribute
+     */
+    public static class AttributeStatistics {
+        private final String key;
+        private final GTFHyperLogLog distinctValues = new GTFHyperLogLog();
+        private long count = 0;
+        private long naCount = 0;
+        private int type = TYPE_INTEGER;
+
+        private AttributeStatistics(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Returns the number of occurrences of the attribute
+         * @return number of occurrences
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the number of occurrences with <tt>NA</tt> values
+         * @return number of NA values
+         */
+        public long getNACount() {
+            return naCount;
+        }
+
+        /**
+         * Returns the estimated number of distinct values
+         * @return distinct value estimate
+         */
+        public long getDistinctCount() {
+            return Math.min(distinctValues.estimate(), count - naCount);
+        }
+
+        /**
+         * Returns the narrowest column type parsing all values
+         * @return column type
+         */
+        public Class<? extends DataFrameColumn> getColumnType() {
+            switch (type) {
+                case TYPE_INTEGER:
+                    return count == naCount ? StringColumn.class : IntegerColumn.class;
+                case TYPE_LONG:
+                    return LongColumn.class;
+                case TYPE_DOUBLE:
+                    return DoubleColumn.class;
+                default:
+                    return StringColumn.class;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: count=%d, distinct=%d, type=%s",
+                    key, count, getDistinctCount(), getColumnType().getSimpleName());
+        }
+    }
+
+    /**
+     * Adds the values of an attribute span to the statistics
+     */
+    private class Profiler implements GTFAttributeTokenizer.AttributeVisitor {
+        private final GTFStringCache keys = new GTFStringCache(new GTFDictionary());
+
+        @Override
+        public void visit(CharSequence input, int keyStart, int keyEnd, boolean keyEscaped,
+                          int valueStart, int valueEnd, boolean valueEscaped) {
+            String key = keyEscaped
+                    ? GTFAttributeTokenizer.unescape(input, keyStart, keyEnd)
+                    : keys.get(input, keyStart, keyEnd);
+            AttributeStatistics statistics = attributes.get(key);
+            if (statistics == null) {
+                statistics = new AttributeStatistics(key);
+                attributes.put(key, statistics);
+            }
+            statistics.count++;
+            if (keysOnly) {
+                return;
+            }
+            if (isNA(input, valueStart, valueEnd)) {
+                statistics.naCount++;
+                return;
+            }
+            statistics.distinctValues.add(GTFHyperLogLog.hash(input, valueStart, valueEnd));
+            if (statistics.type != TYPE_STRING) {
+                int type = valueEscaped ? TYPE_STRING : getType(input, valueStart, valueEnd);
+                if (type > statistics.type) {
+                    statistics.type = type;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import java.util.Arrays;
+
+/**
+ * Positions of the values of requested attribute keys in the attributes part of a GTF row.
+ * Filled by {@link GTFAttributeTokenizer#tokenize(CharSequence, int, int, GTFAttributeSlots)}.
+ * <p>
+ * Each slot stores a generation stamp instead of being cleared for every row.
+ * A slot is found if its stamp equals the generation of the last tokenized row,
+ * so starting a new row does not depend on the number of requested keys.
+ * </p>
+ * <p>
+ * Slots are reused for all rows and must not be shared between threads.
+ * </p>
+ */
+public final class GTFAttributeSlots {
+    private final int[] starts;
+    private final int[] ends;
+    private final boolean[] escaped;
+    private final int[] stamps;
+    private int generation = 0;
+
+    /**
+     * Creates slots for a number of requested keys
+     * @param slotCount number of slots, see {@link GTFAttributeTokenizer#getKeyCount()}
+     */
+    public GTFAttributeSlots(int slotCount) {
+        starts = new int[slotCount];
+        ends = new int[slotCount];
+        escaped = new boolean[slotCount];
+        stamps = new int[slotCount];
+    }
+
+    /**
+     * Returns the number of slots
+     * @return number of slots
+     */
+    public int size() {
+        return stamps.length;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the key of a slot was found in the last tokenized row
+     * @param slot key slot
+     * @return <tt>true</tt> if the key was found
+     */
+    public boolean isFound(int slot) {
+        return stamps[slot] == generation;
+    }
+
+    /**
+     * Returns the start of the value of a slot
+     * @param slot key slot
+     * @return start of the value (inclusive)
+     */
+    public int getStart(int slot) {
+        return starts[slot];
+    }
+
+    /**
+     * Returns the end of the value of a slot
+     * @param slot key slot
+     * @return end of the value (exclusive)
+     */
+    public int getEnd(int slot) {
+        return ends[slot];
+    }
+
+    /**
+     * Returns <tt>true</tt> if the value of a slot contains escape characters
+     * @param slot key slot
+     * @return <tt>true</tt> if the value has to be unescaped
+     * @see GTFAttributeTokenizer#unescape(CharSequence, int, int)
+     */
+    public boolean isEscaped(int slot) {
+        return escaped[slot];
+    }
+
+    /**
+     * Starts a new row, all slots become not found
+     */
+    void clear() {
+        if (generation == Integer.MAX_VALUE) {
+            Arrays.fill(stamps, 0);
+            generation = 0;
+        }
+        generation++;
+    }
+
+    /**
+     * Sets the value of a slot in the current row
+     */
+    void set(int slot, int start, int end, boolean containsEscapeChar) {
+        starts[slot] = start;
+        ends[slot] = end;
+        escaped[slot] = containsEscapeChar;
+        stamps[slot] = generation;
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import java.util.Collection;
+
+/**
+ * Extracts the values of a fixed set of attribute keys from the attributes part of a GTF row.
+ * The attribute span is scanned in place. Keys are compared against the requested keys without creating
+ * strings, only values of requested keys are converted to <tt>String</tt>.
+ * Escaping and quotations are handled the same way as in {@link GTFUtil#splitAttributes(String)}.
+ * <p>
+ * A tokenizer does not keep any state between calls and can be shared between threads.
+ * </p>
+ */
+public class GTFAttributeTokenizer {
+    private final String[] keys;
+    private final int[] keyHashes;
+    private final int[] table;
+    private final int tableMask;
+
+    /**
+     * Creates a tokenizer for the specified attribute keys.
+     * The position of a key in the collection is its slot in the value array.
+     * @param keys requested attribute keys
+     */
+    public GTFAttributeTokenizer(Collection<String> keys) {
+        this.keys = keys.toArray(new String[keys.size()]);
+        this.keyHashes = new int[this.keys.length];
+        int tableSize = 4;
+        while (tableSize < this.keys.length * 2) {
+            tableSize <<= 1;
+        }
+        this.table = new int[tableSize];
+        this.tableMask = tableSize - 1;
+        for (int slot = 0; slot < this.keys.length; slot++) {
+            keyHashes[slot] = this.keys[slot].hashCode();
+            int pos = keyHashes[slot] & tableMask;
+            while (table[pos] != 0) {
+                pos = (pos + 1) & tableMask;
+            }
+            table[pos] = slot + 1;
+        }
+    }
+
+    /**
+     * Returns the number of requested keys
+     * @return number of keys
+     */
+    public int getKeyCount() {
+        return keys.length;
+    }
+
+    /**
+     * Returns the key assigned to a slot
+     * @param slot key slot
+     * @return attribute key
+     */
+    public String getKey(int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * Scans the attributes between <tt>start</tt> (inclusive) and <tt>end</tt> (exclusive) and
+     * writes the value of each requested key into its slot of <tt>values</tt>.
+     * Slots of keys that are not found are set to <tt>null</tt>.
+     * If a key occurs more than once, the last value is used.
+     * @param input input containing the attributes
+     * @param start start of the attribute span
+     * @param end end of the attribute span
+     * @param values target array, at least {@link #getKeyCount()} long
+     * @return number of parts (keys and values) found in the attribute span
+     */
+    public int tokenize(CharSequence input, int start, int end, String[] values) {
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = null;
+        }
+        return scan(input, start, end, values, null, null, null);
+    }
+
+    /**
+     * Scans the attributes between <tt>start</tt> (inclusive) and <tt>end</tt> (exclusive) and
+     * writes the position of the value of each requested key into <tt>spans</tt>, no strings are created.
+     * For slot <tt>i</tt>, <tt>spans[3*i]</tt> is the start and <tt>spans[3*i+1]</tt> the end of the value
+     * and <tt>spans[3*i+2]</tt> is <tt>1</tt> if the value contains escape characters
+     * (see {@link #unescape(CharSequence, int, int)}).
+     * The start of keys that are not found is set to <tt>-1</tt>.
+     * @param input input containing the attributes
+     * @param start start of the attribute span
+     * @param end end of the attribute span
+     * @param spans target array, at least 3 * {@link #getKeyCount()} long
+     * @return number of parts (keys and values) found in the attribute span
+     */
+    public int tokenize(CharSequence input, int start, int end, int[] spans) {
+        for (int i = 0; i < keys.length; i++) {
+            spans[3 * i] = -1;
+        }
+        return scan(input, start, end, null, spans, null, null);
+    }
+
+    /**
+     * Scans the attributes between <tt>start</tt> (inclusive) and <tt>end</tt> (exclusive) and
+     * writes the position of the value of each requested key into its slot, no strings are created.
+     * In contrast to {@link #tokenize(CharSequence, int, int, int[])}, the slots are not cleared one by one,
+     * keys that are not found are detected using {@link GTFAttributeSlots#isFound(int)}.
+     * @param input input containing the attributes
+     * @param start start of the attribute span
+     * @param end end of the attribute span
+     * @param slots target slots, at least {@link #getKeyCount()} slots
+     * @return number of parts (keys and values) found in the attribute span
+     */
+    public int tokenize(CharSequence input, int start, int end, GTFAttributeSlots slots) {
+        slots.clear();
+        return scan(input, start, end, null, null, slots, null);
+    }
+
+    /**
+     * Scans the attributes between <tt>start</tt> (inclusive) and <tt>end</tt> (exclusive) and
+     * passes the position of every key and value to a visitor, regardless of the requested keys.
+     * @param input input containing the attributes
+     * @param start start of the attribute span
+     * @param end end of the attribute span
+     * @param visitor attribute visitor
+     * @return number of parts (keys and values) found in the attribute span
+     */
+    int visit(CharSequence input, int start, int end, AttributeVisitor visitor) {
+        return scan(input, start, end, null, null, null, visitor);
+    }
+
+    /**
+     * Returns the value between <tt>start</tt> and <tt>end</tt> with escape characters removed
+     * @param input input containing the value
+     * @param start start of the value
+     * @param end end of the value
+     * @return unescaped value
+     */
+    public static String unescape(CharSequence input, int start, int end) {
+        return createString(input, start, end, true);
+    }
+
+    private int scan(CharSequence input, int start, int end, String[] values, int[] spans,
+                     GTFAttributeSlots slots, AttributeVisitor visitor) {
+        while (start < end && input.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && input.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        int parts = 0;
+        int currentSlot = -1;
+        int keyStart = 0;
+        int keyEnd = 0;
+        boolean keyEscaped = false;
+        int i = start;
+        while (i < end) {
+            char c = input.charAt(i);
+            if (isSeparator(c)) {
+                i++;
+                continue;
+            }
+            char quote = 0;
+            if (c == '"' || c == '\'') {
+                quote = c;
+                i++;
+            }
+            int partStart = i;
+            int partEnd = -1;
+            int hash = 0;
+            boolean containsEscapeChar = false;
+            while (i < end) {
+                c = input.charAt(i);
+                if (c == '\\') {
+                    containsEscapeChar = true;
+                    if (i + 1 < end) {
+                        hash = 31 * hash + input.charAt(i + 1);
+                    }
+                    i += 2;
+                    continue;
+                }
+                if (quote != 0 ? c == quote : isSeparator(c)) {
+                    partEnd = i;
+                    i++;
+                    break;
+                }
+                hash = 31 * hash + c;
+                i++;
+            }
+            if (partEnd == -1) {
+                partEnd = Math.min(i, end);
+            }
+            if (visitor != null) {
+                if (parts % 2 == 0) {
+                    keyStart = partStart;
+                    keyEnd = partEnd;
+                    keyEscaped = containsEscapeChar;
+                } else {
+                    visitor.visit(input, keyStart, keyEnd, keyEscaped, partStart, partEnd, containsEscapeChar);
+                }
+            } else if (parts % 2 == 0) {
+                currentSlot = findSlot(input, partStart, partEnd, hash, containsEscapeChar);
+            } else if (currentSlot != -1) {
+                if (values != null) {
+                    values[currentSlot] = createString(input, partStart, partEnd, containsEscapeChar);
+                } else if (slots != null) {
+                    slots.set(currentSlot, partStart, partEnd, containsEscapeChar);
+                } else {
+                    spans[3 * currentSlot] = partStart;
+                    spans[3 * currentSlot + 1] = partEnd;
+                    spans[3 * currentSlot + 2] = containsEscapeChar ? 1 : 0;
+                }
+            }
+            parts++;
+        }
+        return parts;
+    }
+
+    private int findSlot(CharSequence input, int start, int end, int hash, boolean containsEscapeChar) {
+        if (keys.length == 0) {
+            return -1;
+        }
+        int pos = hash & tableMask;
+        int slot;
+        while ((slot = table[pos] - 1) != -1) {
+            if (keyHashes[slot] == hash && matches(keys[slot], input, start, end, containsEscapeChar)) {
+                return slot;
+            }
+            pos = (pos + 1) & tableMask;
+        }
+        return -1;
+    }
+
+    private static boolean matches(String key, CharSequence input, int start, int end, boolean containsEscapeChar) {
+        if (containsEscapeChar) {
+            return key.equals(createString(input, start, end, true));
+        }
+        if (key.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != input.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String createString(CharSequence input, int start, int end, boolean containsEscapeChar) {
+        if (!containsEscapeChar) {
+            return GTFUtil.substring(input, start, end);
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = input.charAt(i);
+            if (c == '\\') {
+                if (++i == end) {
+                    break;
+                }
+                c = input.charAt(i);
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == ';' || c == '=';
+    }
+
+    /**
+     * Receives the positions of the keys and values of an attribute span
+     */
+    interface AttributeVisitor {
+        /**
+         * Called for each key value pair
+         * @param input input containing the attributes
+         * @param keyStart start of the key
+         * @param keyEnd end of the key
+         * @param keyEscaped <tt>true</tt> if the key contains escape characters
+         * @param valueStart start of the value
+         * @param valueEnd end of the value
+         * @param valueEscaped <tt>true</tt> if the value contains escape characters
+         */
+        void visit(CharSequence input, int keyStart, int keyEnd, boolean keyEscaped,
+                   int valueStart, int valueEnd, boolean valueEscaped);
+    }
+}
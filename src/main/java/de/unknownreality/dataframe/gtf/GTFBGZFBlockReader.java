@@ -0,0 +1,182 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the compressed blocks of a BGZF (blocked gzip) input.
+ * Blocks are read sequentially. If the reader is created for a file, it can be positioned at the
+ * compressed offset of any block.
+ */
+class GTFBGZFBlockReader implements Closeable {
+    private final byte[] header = new byte[12];
+    private final FileChannel channel;
+    private InputStream in;
+    private long offset = 0;
+
+    GTFBGZFBlockReader(InputStream in) {
+        this.channel = null;
+        this.in = in;
+    }
+
+    GTFBGZFBlockReader(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.in = new BufferedInputStream(Channels.newInputStream(channel), GTFCompression.BUFFER_SIZE);
+    }
+
+    /**
+     * Positions the reader at the start of a block
+     * @param blockOffset compressed offset of the block
+     * @throws IOException if the reader is not created for a file
+     */
+    void seek(long blockOffset) throws IOException {
+        if (blockOffset == offset) {
+            return;
+        }
+        if (channel == null) {
+            throw new IOException("BGZF stream is not seekable");
+        }
+        channel.position(blockOffset);
+        in = new BufferedInputStream(Channels.newInputStream(channel), GTFCompression.BUFFER_SIZE);
+        offset = blockOffset;
+    }
+
+    /**
+     * Returns the compressed offset of the next block
+     * @return compressed offset
+     */
+    long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Reads the next compressed block
+     * @return compressed block or <tt>null</tt> at the end of the input
+     * @throws IOException if the block is invalid
+     */
+    Block read() throws IOException {
+        int read = GTFCompression.readFully(in, header, 0, header.length);
+        if (read == 0) {
+            return null;
+        }
+        if (read < header.length || !GTFCompression.isGzip(header, read) || (header[3] & 4) == 0) {
+            throw new IOException(String.format("invalid BGZF block at offset %d", offset));
+        }
+        int extraLength = GTFCompression.readUnsignedShort(header, 10);
+        byte[] extra = new byte[extraLength];
+        readBlockData(extra);
+        int blockSize = -1;
+        for (int i = 0; i + 4 <= extraLength; i += 4 + GTFCompression.readUnsignedShort(extra, i + 2)) {
+            if (extra[i] == 'B' && extra[i + 1] == 'C' && GTFCompression.readUnsignedShort(extra, i + 2) == 2) {
+                blockSize = GTFCompression.readUnsignedShort(extra, i + 4) + 1;
+            }
+        }
+        if (blockSize < header.length + extraLength + 8) {
+            throw new IOException(String.format("invalid BGZF block at offset %d", offset));
+        }
+        byte[] data = new byte[blockSize - header.length - extraLength];
+        readBlockData(data);
+        Block block = new Block(offset, blockSize, data);
+        offset += blockSize;
+        return block;
+    }
+
+    private void readBlockData(byte[] buffer) throws IOException {
+        if (GTFCompression.readFully(in, buffer, 0, buffer.length) != buffer.length) {
+            throw new IOException(String.format("truncated BGZF block at offset %d", offset));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Compressed BGZF block
+     */
+    static class Block {
+        final long offset;
+        final int size;
+        private final byte[] data;
+
+        private Block(long offset, int size, byte[] data) {
+            this.offset = offset;
+            this.size = size;
+            this.data = data;
+        }
+
+        /**
+         * Inflates the compressed data and validates the uncompressed size and checksum
+         * @return uncompressed data
+         * @throws IOException if the block is invalid
+         */
+        byte[] inflate() throws IOException {
+            int compressedLength = data.length - 8;
+            int crc = GTFCompression.readInt(data, compressedLength);
+            int size = GTFCompression.readInt(data, compressedLength + 4);
+            byte[] result = new byte[size];
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(data, 0, compressedLength);
+                int length = 0;
+                while (length < size) {
+                    int inflated = inflater.inflate(result, length, size - length);
+                    if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    length += inflated;
+                }
+                if (length != size) {
+                    throw new IOException(String.format("invalid BGZF block size at offset %d", offset));
+                }
+            } catch (DataFormatException e) {
+                throw new IOException(String.format("invalid BGZF block at offset %d", offset), e);
+            } finally {
+                inflater.end();
+            }
+            CRC32 checksum = new CRC32();
+            checksum.update(result, 0, size);
+            if ((int) checksum.getValue() != crc) {
+                throw new IOException(String.format("invalid BGZF checksum at offset %d", offset));
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Decompresses BGZF (blocked gzip) input in parallel.
+ * Compressed blocks are read by the calling thread and inflated by a pool of worker threads.
+ * The decompressed blocks are returned in the order of the input.
+ * The number of blocks held in memory is limited to four times the parallelism.
+ */
+class GTFBGZFInputStream extends InputStream {
+    private static final int BLOCKS_PER_THREAD = 4;
+    private static final byte[] EMPTY = new byte[0];
+
+    private final GTFBGZFBlockReader blockReader;
+    private final ExecutorService executor;
+    private final int maxPendingBlocks;
+    private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+    private boolean endOfInput = false;
+    private byte[] block = EMPTY;
+    private int position = 0;
+
+    GTFBGZFInputStream(InputStream in, int parallelism) {
+        this.blockReader = new GTFBGZFBlockReader(in);
+        this.maxPendingBlocks = parallelism * BLOCKS_PER_THREAD;
+        this.executor = Executors.newFixedThreadPool(parallelism, GTFUtil.createThreadFactory("gtf-inflater"));
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return block[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int length = Math.min(len, block.length - position);
+        System.arraycopy(block, position, b, off, length);
+        position += length;
+        return length;
+    }
+
+    @Override
+    public int available() {
+        return block.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        pendingBlocks.clear();
+        blockReader.close();
+    }
+
+    private boolean fill() throws IOException {
+        while (position == block.length) {
+            while (!endOfInput && pendingBlocks.size() < maxPendingBlocks) {
+                submitNextBlock();
+            }
+            Future<byte[]> future = pendingBlocks.poll();
+            if (future == null) {
+                executor.shutdown();
+                return false;
+            }
+            block = await(future);
+            position = 0;
+        }
+        return true;
+    }
+
+    private void submitNextBlock() throws IOException {
+        final GTFBGZFBlockReader.Block compressedBlock = blockReader.read();
+        if (compressedBlock == null) {
+            endOfInput = true;
+            return;
+        }
+        pendingBlocks.add(executor.submit(compressedBlock::inflate));
+    }
+
+    private byte[] await(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while decompressing BGZF block");
+        } catch (ExecutionException e) {
+            executor.shutdownNow();
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("error decompressing BGZF block", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes BGZF (blocked gzip) output.
+ * Data is compressed in independent gzip blocks of at most {@value #MAX_BLOCK_DATA} uncompressed bytes.
+ * If the parallelism is greater than 1, full blocks are compressed by a pool of threads and written in order.
+ * The end-of-file marker block is written on close.
+ * The virtual offset of the current position or of any uncompressed position written so far
+ * can be used to index the written data.
+ */
+class GTFBGZFOutputStream extends OutputStream {
+    static final int MAX_BLOCK_DATA = 0xFF00;
+    private static final int BLOCK_HEADER_LENGTH = 18;
+    private static final int MAX_BLOCK_SIZE = 0x10000 + BLOCK_HEADER_LENGTH + 8;
+    private static final byte[] EOF_BLOCK = new byte[]{
+            0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0, 0x1b, 0,
+            3, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+
+    private final OutputStream out;
+    private byte[] buffer = new byte[MAX_BLOCK_DATA];
+    private final BlockCompressor compressor;
+    private final int parallelism;
+    private final ExecutorService executor;
+    private final ThreadLocal<BlockCompressor> compressors;
+    private final List<BlockCompressor> createdCompressors = new ArrayList<>();
+    private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+    private final Deque<Integer> pendingLengths = new ArrayDeque<>();
+    private long[] blockStarts = new long[64];
+    private long[] blockOffsets = new long[64];
+    private int blockCount = 0;
+    private long writtenOffset = 0;
+    private long uncompressedOffset = 0;
+    private int length = 0;
+    private long blockOffset = 0;
+    private boolean finished = false;
+    private boolean closed = false;
+
+    GTFBGZFOutputStream(OutputStream out) {
+        this(out, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    GTFBGZFOutputStream(OutputStream out, int compressionLevel) {
+        this(out, compressionLevel, 1);
+    }
+
+    /**
+     * Creates a BGZF output stream
+     * @param out target output
+     * @param compressionLevel deflate compression level
+     * @param parallelism number of threads compressing blocks
+     */
+    GTFBGZFOutputStream(OutputStream out, int compressionLevel, int parallelism) {
+        this.out = out;
+        this.parallelism = parallelism;
+        if (parallelism > 1) {
+            this.compressor = null;
+            this.executor = Executors.newFixedThreadPool(parallelism, GTFUtil.createThreadFactory("gtf-bgzf"));
+            this.compressors = ThreadLocal.withInitial(() -> {
+                BlockCompressor blockCompressor = new BlockCompressor(compressionLevel);
+                synchronized (createdCompressors) {
+                    createdCompressors.add(blockCompressor);
+                }
+                return blockCompressor;
+            });
+        } else {
+            this.compressor = new BlockCompressor(compressionLevel);
+            this.executor = null;
+            this.compressors = null;
+        }
+    }
+
+    /**
+     * Returns the virtual offset of the current position.
+     * The upper 48 bits contain the compressed offset of the current block,
+     * the lower 16 bits the offset within the uncompressed block.
+     * Blocks that are compressed in parallel are written first.
+     * @return virtual offset
+     * @throws IOException if pending blocks can not be written
+     */
+    long getVirtualOffset() throws IOException {
+        writePendingBlocks(0);
+        return blockOffset << 16 | length;
+    }
+
+    /**
+     * Returns the number of uncompressed bytes written so far
+     * @return uncompressed offset
+     */
+    long getUncompressedOffset() {
+        return uncompressedOffset + length;
+    }
+
+    /**
+     * Returns the virtual offset of an uncompressed position within the blocks written so far.
+     * Positions at the end of a block are mapped to the start of the following block.
+     * Should be called after {@link #finish()} to map all positions.
+     * @param offset uncompressed offset
+     * @return virtual offset
+     */
+    long getVirtualOffset(long offset) {
+        int index = Arrays.binarySearch(blockStarts, 0, blockCount, offset);
+        if (index >= 0) {
+            return blockOffsets[index] << 16;
+        }
+        int block = -index - 2;
+        if (block < 0) {
+            throw new IllegalArgumentException(String.format("invalid uncompressed offset %d", offset));
+        }
+        long within = offset - blockStarts[block];
+        long end = block + 1 < blockCount ? blockStarts[block + 1] : writtenOffset;
+        if (offset >= end) {
+            if (offset == end && block + 1 == blockCount) {
+                return blockOffset << 16;
+            }
+            throw new IllegalArgumentException(String.format("invalid uncompressed offset %d", offset));
+        }
+        return blockOffsets[block] << 16 | within;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (length == buffer.length) {
+            writeBlock();
+        }
+        buffer[length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (length == buffer.length) {
+                writeBlock();
+            }
+            int copy = Math.min(len, buffer.length - length);
+            System.arraycopy(b, off, buffer, length, copy);
+            length += copy;
+            off += copy;
+            len -= copy;
+        }
+    }
+
+    /**
+     * Compresses the buffered data into a block, even if the block is not full.
+     * @throws IOException if the block can not be written
+     */
+    @Override
+    public void flush() throws IOException {
+        if (length > 0) {
+            writeBlock();
+        }
+        writePendingBlocks(0);
+        out.flush();
+    }
+
+    /**
+     * Writes the remaining data and the end-of-file marker block without closing the underlying output
+     * @throws IOException if the data can not be written
+     */
+    void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        try {
+            if (length > 0) {
+                writeBlock();
+            }
+            writePendingBlocks(0);
+            out.write(EOF_BLOCK);
+            out.flush();
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+                synchronized (createdCompressors) {
+                    for (BlockCompressor blockCompressor : createdCompressors) {
+                        blockCompressor.deflater.end();
+                    }
+                    createdCompressors.clear();
+                }
+            } else {
+                compressor.deflater.end();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (executor == null) {
+            int blockSize = compressor.compress(buffer, length);
+            addBlock(length, blockSize);
+            out.write(compressor.block, 0, blockSize);
+        } else {
+            final byte[] data = buffer;
+            final int dataLength = length;
+            pendingBlocks.add(executor.submit(() -> {
+                BlockCompressor blockCompressor = compressors.get();
+                return Arrays.copyOf(blockCompressor.block, blockCompressor.compress(data, dataLength));
+            }));
+            pendingLengths.add(dataLength);
+            buffer = new byte[MAX_BLOCK_DATA];
+            writePendingBlocks(parallelism * 2);
+        }
+        uncompressedOffset += length;
+        length = 0;
+    }
+
+    /**
+     * Writes compressed blocks in order until at most <tt>maxPending</tt> blocks are pending
+     */
+    private void writePendingBlocks(int maxPending) throws IOException {
+        while (pendingBlocks.size() > maxPending) {
+            byte[] block;
+            try {
+                block = pendingBlocks.poll().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while compressing bgzf block");
+            } catch (ExecutionException e) {
+                throw new IOException("error compressing bgzf block", e.getCause());
+            }
+            addBlock(pendingLengths.poll(), block.length);
+            out.write(block);
+        }
+    }
+
+    /**
+     * Records the offsets of a written block
+     */
+    private void addBlock(int dataLength, int blockSize) {
+        if (blockCount == blockStarts.length) {
+            blockStarts = Arrays.copyOf(blockStarts, blockCount * 2);
+            blockOffsets = Arrays.copyOf(blockOffsets, blockCount * 2);
+        }
+        blockStarts[blockCount] = writtenOffset;
+        blockOffsets[blockCount] = blockOffset;
+        blockCount++;
+        writtenOffset += dataLength;
+        blockOffset += blockSize;
+    }
+
+    /**
+     * Deflater and output buffer compressing single blocks
+     */
+    private static class BlockCompressor {
+        private final Deflater deflater;
+        private final CRC32 crc = new CRC32();
+        private final byte[] block = new byte[MAX_BLOCK_SIZE];
+
+        BlockCompressor(int compressionLevel) {
+            this.deflater = new Deflater(compressionLevel, true);
+        }
+
+        /**
+         * Compresses data into a complete BGZF block
+         * @return size of the block
+         */
+        int compress(byte[] data, int length) {
+            deflater.reset();
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            int compressedLength = 0;
+            while (!deflater.finished()) {
+                compressedLength += deflater.deflate(block, BLOCK_HEADER_LENGTH + compressedLength,
+                        block.length - 8 - BLOCK_HEADER_LENGTH - compressedLength);
+            }
+            crc.reset();
+            crc.update(data, 0, length);
+            int blockSize = BLOCK_HEADER_LENGTH + compressedLength + 8;
+            byte[] header = new byte[]{0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0,
+                    (byte) (blockSize - 1), (byte) ((blockSize - 1) >> 8)};
+            System.arraycopy(header, 0, block, 0, BLOCK_HEADER_LENGTH);
+            writeInt(block, BLOCK_HEADER_LENGTH + compressedLength, (int) crc.getValue());
+            writeInt(block, BLOCK_HEADER_LENGTH + compressedLength + 4, length);
+            return blockSize;
+        }
+
+        private static void writeInt(byte[] target, int offset, int value) {
+            target[offset] = (byte) value;
+            target[offset + 1] = (byte) (value >> 8);
+            target[offset + 2] = (byte) (value >> 16);
+            target[offset + 3] = (byte) (value >> 24);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable {@link CharSequence} view of a line within a {@link ByteBuffer}.
+ * Each byte is interpreted as one character, GTF files are expected to be ASCII encoded.
+ * Strings are only created by {@link #toString(int, int)}.
+ */
+class GTFByteLine implements CharSequence {
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+    private byte[] decodeBuffer = new byte[256];
+
+    /**
+     * Sets the line to a range of a buffer
+     * @param buffer backing buffer
+     * @param offset start of the line
+     * @param length length of the line
+     */
+    void set(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (buffer.get(offset + index) & 0xFF);
+    }
+
+    /**
+     * Decodes a part of the line
+     * @param start start index (inclusive)
+     * @param end end index (exclusive)
+     * @return decoded string
+     */
+    String toString(int start, int end) {
+        int len = end - start;
+        if (decodeBuffer.length < len) {
+            decodeBuffer = new byte[Math.max(len, decodeBuffer.length * 2)];
+        }
+        for (int i = 0; i < len; i++) {
+            decodeBuffer[i] = buffer.get(offset + start + i);
+        }
+        return new String(decodeBuffer, 0, len, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return toString(0, length);
+    }
+}
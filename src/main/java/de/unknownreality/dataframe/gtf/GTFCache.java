@@ -0,0 +1,242 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import de.unknownreality.dataframe.DataFrameColumn;
+import de.unknownreality.dataframe.column.StringColumn;
+import de.unknownreality.dataframe.filter.FilterPredicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Binary columnar cache of GTF files loaded by {@link GTFReader#loadDataFrame(File)}.
+ * <p>
+ * The cache is written next to the GTF file after it was parsed. Numeric columns are stored as primitive values
+ * with a NA bitmap, <tt>String</tt> columns are stored dictionary encoded. A cache file is only used if the size,
+ * modification time and a hash of the first and last 64KB of the GTF file did not change and if it was created
+ * with the same projection (fields, attributes, pre-filter and region) of the settings.
+ * Cache files are memory mapped and copied directly into the column builders.
+ * </p>
+ * <p>
+ * Invalid or unreadable cache files are ignored and replaced after the GTF file was parsed.
+ * </p>
+ */
+final class GTFCache {
+    private static final Logger log = LoggerFactory.getLogger(GTFCache.class);
+    private static final int MAGIC = 0x47544643;
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".gtfcache";
+    private static final int SAMPLE_SIZE = 64 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private GTFCache() {
+    }
+
+    /**
+     * Returns the cache file of a GTF file for the projection of the settings
+     * @param file GTF file
+     * @param settings reader settings
+     * @return cache file or <tt>null</tt> if the settings can not be cached
+     */
+    static File getCacheFile(File file, GTFSettings settings) {
+        String projectionKey = getProjectionKey(settings);
+        if (projectionKey == null) {
+            return null;
+        }
+        return new File(file.getAbsoluteFile().getParentFile(),
+                String.format("%s.%08x%s", file.getName(), projectionKey.hashCode(), SUFFIX));
+    }
+
+    /**
+     * Reads the column builders of a GTF file from its cache file
+     * @param file GTF file
+     * @param settings reader settings
+     * @return column builders or <tt>null</tt> if there is no valid cache file
+     */
+    static List<GTFColumnBuilder> read(File file, GTFSettings settings) {
+        File cacheFile = getCacheFile(file, settings);
+        if (cacheFile == null || !cacheFile.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || buffer.getLong() != file.length()
+                    || buffer.getLong() != file.lastModified()
+                    || buffer.getLong() != getSampleHash(file)
+                    || !readString(buffer).equals(getProjectionKey(settings))) {
+                log.debug("outdated gtf cache file '{}'", cacheFile);
+                return null;
+            }
+            int rowCount = buffer.getInt();
+            int columnCount = buffer.getInt();
+            List<GTFColumnBuilder> columns = new ArrayList<>(columnCount);
+            for (int i = 0; i < columnCount; i++) {
+                String name = readString(buffer);
+                Class<? extends DataFrameColumn> columnClass =
+                        Class.forName(readString(buffer)).asSubclass(DataFrameColumn.class);
+                GTFDictionary dictionary = settings.getDictionaries().get(name);
+                GTFColumnBuilder column = GTFColumnBuilder.create(name, columnClass,
+                        dictionary != null && columnClass == StringColumn.class
+                                ? new GTFStringCache(dictionary) : null);
+                column.readCache(buffer, rowCount);
+                columns.add(column);
+            }
+            return columns;
+        } catch (IOException | ReflectiveOperationException | RuntimeException e) {
+            log.warn("error reading gtf cache file '{}'", cacheFile, e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the column builders of a GTF file to its cache file.
+     * Errors are logged, the cache file is not written if a column type can not be cached.
+     * @param file GTF file
+     * @param settings reader settings
+     * @param columns column builders containing all rows of the GTF file
+     */
+    static void write(File file, GTFSettings settings, List<? extends GTFColumnBuilder> columns) {
+        File cacheFile = getCacheFile(file, settings);
+        if (cacheFile == null) {
+            return;
+        }
+        for (GTFColumnBuilder column : columns) {
+            if (!column.isCacheable()) {
+                return;
+            }
+        }
+        File tempFile = null;
+        try {
+            tempFile = File.createTempFile(file.getName(), ".tmp", cacheFile.getParentFile());
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(file.length());
+                out.writeLong(file.lastModified());
+                out.writeLong(getSampleHash(file));
+                writeString(out, getProjectionKey(settings));
+                out.writeInt(columns.isEmpty() ? 0 : columns.get(0).size());
+                out.writeInt(columns.size());
+                for (GTFColumnBuilder column : columns) {
+                    writeString(out, column.name);
+                    writeString(out, column.prototype.getClass().getName());
+                    column.writeCache(out);
+                }
+            }
+            try {
+                Files.move(tempFile.toPath(), cacheFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            log.warn("error writing gtf cache file '{}'", cacheFile, e);
+            if (tempFile != null && !tempFile.delete()) {
+                tempFile.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Returns a key describing all settings that change the loaded columns.
+     * Returns <tt>null</tt> if the pre-filter has no stable string representation.
+     */
+    private static String getProjectionKey(GTFSettings settings) {
+        StringBuilder key = new StringBuilder("fields=");
+        key.append(settings.isAddAllGTFFields() ? "all" : settings.getGtfFields().toString());
+        key.append("\nattributes=");
+        for (Map.Entry<String, DataFrameColumn> attribute : settings.getAttributes().entrySet()) {
+            key.append(attribute.getKey()).append(':').append(attribute.getValue().getClass().getName()).append(';');
+        }
+        key.append("\nallAttributes=").append(settings.isAddAllAttributes());
+        FilterPredicate preFilter = settings.getPreFilter();
+        if (preFilter != null) {
+            String filter = preFilter.toString();
+            if (filter.equals(preFilter.getClass().getName() + "@" + Integer.toHexString(preFilter.hashCode()))) {
+                return null;
+            }
+            key.append("\nfilter=").append(filter);
+        }
+        if (settings.getRegion() != null) {
+            key.append("\nregion=").append(settings.getRegion());
+        }
+        return key.toString();
+    }
+
+    /**
+     * Computes a hash of the first and last 64KB of a file
+     */
+    private static long getSampleHash(File file) throws IOException {
+        byte[] sample = new byte[SAMPLE_SIZE];
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            CRC32 head = new CRC32();
+            int read = in.read(sample);
+            head.update(sample, 0, Math.max(read, 0));
+            CRC32 tail = new CRC32();
+            long tailStart = Math.max(0, in.length() - SAMPLE_SIZE);
+            in.seek(tailStart);
+            read = in.read(sample);
+            tail.update(sample, 0, Math.max(read, 0));
+            return head.getValue() << 32 | tail.getValue();
+        }
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
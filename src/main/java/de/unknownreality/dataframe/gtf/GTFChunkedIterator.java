@@ -0,0 +1,305 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import de.unknownreality.dataframe.DataFrameRuntimeException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Reads a GTF file in parallel.
+ * The file is split into chunks at line boundaries. The first chunk is parsed by the calling thread,
+ * all other chunks are parsed by a pool of worker threads. Chunks are memory mapped if enabled in the settings. Rows are returned in the order of the file.
+ * The number of chunks held in memory is limited to twice the parallelism.
+ * If a line can not be parsed, the rows before it are returned and the error is reported with the line number
+ * in the file, as in sequential reading.
+ */
+class GTFChunkedIterator extends GTFIterator {
+    private static final long MIN_CHUNK_SIZE = 1024 * 1024;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final File file;
+    private final GTFSettings settings;
+    private final long[] boundaries;
+    private final int maxPendingChunks;
+    private final ExecutorService executor;
+    private final Deque<Future<Chunk>> pendingChunks = new ArrayDeque<>();
+    private int nextChunk = 1;
+    private boolean firstChunkDone = false;
+    private Chunk currentChunk = null;
+    private int currentIndex = 0;
+    private int chunkLineNumber = 0;
+
+    private GTFChunkedIterator(File file, GTFSettings settings, long[] boundaries) throws IOException {
+        super(openChunk(file, settings, boundaries[0], boundaries[1]), settings);
+        this.file = file;
+        this.settings = settings;
+        this.boundaries = boundaries;
+        this.maxPendingChunks = settings.getParallelism() * 2;
+        this.executor = Executors.newFixedThreadPool(settings.getParallelism(),
+                GTFUtil.createThreadFactory("gtf-reader"));
+        while (pendingChunks.size() < maxPendingChunks && submitNextChunk()) {
+            // fill the queue
+        }
+    }
+
+    /**
+     * Creates a parallel iterator for a GTF file
+     * @param file input file
+     * @param settings gtf settings
+     * @return parallel iterator
+     * @throws IOException if the file can not be read
+     */
+    static GTFChunkedIterator create(File file, GTFSettings settings) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            int chunkCount = (int) Math.max(1,
+                    Math.min(settings.getParallelism() * CHUNKS_PER_THREAD, size / MIN_CHUNK_SIZE));
+            return new GTFChunkedIterator(file, settings, findChunkBoundaries(channel, chunkCount));
+        }
+    }
+
+    /**
+     * Splits a file into chunks. Each chunk boundary is placed directly after a line break.
+     * @param channel input channel
+     * @param chunkCount number of chunks
+     * @return chunk boundaries, chunk <tt>i</tt> starts at <tt>boundaries[i]</tt> and ends at <tt>boundaries[i+1]</tt>
+     * @throws IOException if the channel can not be read
+     */
+    static long[] findChunkBoundaries(FileChannel channel, int chunkCount) throws IOException {
+        long size = channel.size();
+        long[] boundaries = new long[chunkCount + 1];
+        boundaries[chunkCount] = size;
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        for (int i = 1; i < chunkCount; i++) {
+            long position = Math.max(size * i / chunkCount, boundaries[i - 1]);
+            long boundary = size;
+            while (position < size && boundary == size) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                for (int j = 0; j < read; j++) {
+                    if (buffer.get(j) == '\n') {
+                        boundary = position + j + 1;
+                        break;
+                    }
+                }
+                position += read;
+            }
+            boundaries[i] = boundary;
+        }
+        return boundaries;
+    }
+
+    @Override
+    protected GTFRow getNext() {
+        if (!firstChunkDone) {
+            GTFRow row = super.getNext();
+            if (row != null) {
+                return row;
+            }
+            firstChunkDone = true;
+            chunkLineNumber = getLineNumber();
+        }
+        while (currentChunk == null || currentIndex == currentChunk.rows.size()) {
+            if (currentChunk != null) {
+                if (currentChunk.error != null) {
+                    Exception error = currentChunk.error;
+                    int lineNumber = chunkLineNumber + currentChunk.lineCount;
+                    close();
+                    throw new DataFrameRuntimeException(String.format("error reading gtf row: %d", lineNumber), error);
+                }
+                chunkLineNumber += currentChunk.lineCount;
+            }
+            Future<Chunk> future = pendingChunks.poll();
+            if (future == null) {
+                close();
+                return null;
+            }
+            submitNextChunk();
+            currentChunk = await(future);
+            currentIndex = 0;
+            addSkipped(currentChunk.skippedLines, currentChunk.filteredRows);
+            addMetrics(currentChunk.metrics);
+        }
+        String[] rowValues = currentChunk.rows.get(currentIndex);
+        currentChunk.rows.set(currentIndex++, null);
+        return createRow(rowValues);
+    }
+
+    private boolean submitNextChunk() {
+        if (nextChunk >= boundaries.length - 1) {
+            return false;
+        }
+        final long start = boundaries[nextChunk];
+        final long end = boundaries[nextChunk + 1];
+        nextChunk++;
+        pendingChunks.add(executor.submit(() -> parseChunk(start, end)));
+        return true;
+    }
+
+    private Chunk await(Future<Chunk> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            close();
+            Thread.currentThread().interrupt();
+            throw new DataFrameRuntimeException("interrupted while reading gtf file", e);
+        } catch (ExecutionException e) {
+            close();
+            throw new DataFrameRuntimeException(String.format("error reading gtf file '%s'", file), e.getCause());
+        }
+    }
+
+    /**
+     * Closes the first chunk, stops the worker threads and discards all chunks that were not read yet.
+     * Also called if a chunk can not be parsed.
+     */
+    @Override
+    public void close() {
+        super.close();
+        firstChunkDone = true;
+        executor.shutdownNow();
+        pendingChunks.clear();
+        currentChunk = null;
+    }
+
+    private Chunk parseChunk(long start, long end) throws IOException {
+        GTFLineParser chunkParser = new GTFLineParser(settings);
+        Chunk chunk = new Chunk();
+        chunk.metrics = GTFParseMetrics.create(settings);
+        chunkParser.setMetrics(chunk.metrics);
+        int lineNumber = 0;
+        try (GTFLineSource source = GTFMeteredLineSource.wrap(openChunk(file, settings, start, end), chunk.metrics)) {
+            CharSequence line;
+            while ((line = source.readLine()) != null) {
+                try {
+                    if (GTFLineParser.isIgnored(line)) {
+                        chunk.skippedLines++;
+                        continue;
+                    }
+                    String[] rowValues = chunkParser.parse(line, lineNumber);
+                    if (rowValues != null) {
+                        chunk.rows.add(rowValues);
+                    } else {
+                        chunk.filteredRows++;
+                    }
+                } catch (Exception e) {
+                    // reported with the line number in the file once the preceding chunks are read
+                    chunk.error = e;
+                    chunk.lineCount = lineNumber;
+                    return chunk;
+                } finally {
+                    lineNumber++;
+                }
+            }
+        }
+        chunk.lineCount = lineNumber;
+        return chunk;
+    }
+
+    private static GTFLineSource openChunk(File file, GTFSettings settings, long start, long end) throws IOException {
+        if (settings.isMemoryMapped()) {
+            return new GTFMappedLineSource(file, start, end);
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        channel.position(start);
+        InputStream inputStream = new ChunkInputStream(Channels.newInputStream(channel), end - start);
+        return new GTFReaderLineSource(new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Parsed rows of a chunk
+     */
+    private static class Chunk {
+        private final List<String[]> rows = new ArrayList<>();
+        private long skippedLines = 0;
+        private long filteredRows = 0;
+        private GTFParseMetrics metrics = null;
+        // number of lines of the chunk, or of the lines before the failing line
+        private int lineCount = 0;
+        private Exception error = null;
+    }
+
+    /**
+     * Input stream that ends after a fixed number of bytes
+     */
+    private static class ChunkInputStream extends FilterInputStream {
+        private long remaining;
+
+        ChunkInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b != -1) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+    }
+}
@@ -0,0 +1,716 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import de.unknownreality.dataframe.DataFrameColumn;
+import de.unknownreality.dataframe.DataFrameRuntimeException;
+import de.unknownreality.dataframe.Values;
+import de.unknownreality.dataframe.column.DoubleColumn;
+import de.unknownreality.dataframe.column.IntegerColumn;
+import de.unknownreality.dataframe.column.LongColumn;
+import de.unknownreality.dataframe.column.StringColumn;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects the values of one column while a GTF file is read.
+ * Numeric values are parsed directly from the characters of the input into primitive arrays.
+ * Values that can not be parsed directly are parsed using the parser of the column.
+ * Values that can not be parsed at all are added as NA.
+ */
+abstract class GTFColumnBuilder {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final double[] POWERS_OF_TEN = new double[]{
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    protected final String name;
+    protected final DataFrameColumn prototype;
+    protected final BitSet na = new BitSet();
+    protected int size = 0;
+
+    GTFColumnBuilder(String name, DataFrameColumn prototype) {
+        this.name = name;
+        this.prototype = prototype;
+    }
+
+    /**
+     * Creates a column builder for a column type
+     * @param name column name
+     * @param columnClass column type
+     * @param dictionary dictionary used for <tt>String</tt> columns, may be <tt>null</tt>
+     * @return column builder
+     */
+    static GTFColumnBuilder create(String name, Class<? extends DataFrameColumn> columnClass,
+                                   GTFStringCache dictionary) {
+        if (columnClass == LongColumn.class) {
+            return new LongColumnBuilder(name);
+        }
+        if (columnClass == DoubleColumn.class) {
+            return new DoubleColumnBuilder(name);
+        }
+        if (columnClass == IntegerColumn.class) {
+            return new IntegerColumnBuilder(name);
+        }
+        if (columnClass == StringColumn.class) {
+            return new StringColumnBuilder(name, dictionary);
+        }
+        return new ParsedColumnBuilder(name, columnClass);
+    }
+
+    /**
+     * Appends the value between <tt>start</tt> and <tt>end</tt>
+     * @param input input containing the value
+     * @param start start of the value
+     * @param end end of the value
+     */
+    abstract void append(CharSequence input, int start, int end);
+
+    /**
+     * Appends a value that is already converted to a string. <tt>null</tt> and <tt>NA</tt> are added as NA.
+     * @param value input value
+     */
+    void appendString(String value) {
+        if (value == null || Values.NA.isNA(value)) {
+            appendNA();
+            return;
+        }
+        Object parsed;
+        try {
+            parsed = prototype.getParser().parse(value);
+        } catch (ParseException e) {
+            parsed = null;
+        }
+        if (parsed == null) {
+            appendNA();
+        } else {
+            appendParsed(parsed);
+        }
+    }
+
+    /**
+     * Appends a value returned by the parser of the column
+     * @param value parsed value
+     */
+    protected abstract void appendParsed(Object value);
+
+    /**
+     * Appends NA
+     */
+    void appendNA() {
+        na.set(size);
+        appendParsed(null);
+    }
+
+    /**
+     * Appends multiple NA values
+     * @param count number of NA values
+     */
+    void appendNA(int count) {
+        for (int i = 0; i < count; i++) {
+            appendNA();
+        }
+    }
+
+    /**
+     * Returns the number of values in this builder
+     * @return number of values
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Creates the resulting column
+     * @return column containing all appended values
+     */
+    abstract DataFrameColumn build();
+
+    /**
+     * Returns <tt>true</tt> if the values of this builder can be written to a cache file
+     * @return <tt>true</tt> if the builder supports {@link #writeCache(DataOutput)}
+     */
+    boolean isCacheable() {
+        return true;
+    }
+
+    /**
+     * Writes all values of this builder to a cache file
+     * @param out cache output
+     * @throws IOException if the cache can not be written
+     */
+    abstract void writeCache(DataOutput out) throws IOException;
+
+    /**
+     * Appends values written by {@link #writeCache(DataOutput)}
+     * @param buffer cache buffer positioned at the values
+     * @param count number of values
+     */
+    abstract void readCache(ByteBuffer buffer, int count);
+
+    /**
+     * Writes the NA bitmap
+     */
+    protected void writeNA(DataOutput out) throws IOException {
+        long[] words = na.toLongArray();
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    /**
+     * Reads a NA bitmap and marks the values starting at the current size as NA
+     */
+    protected void readNA(ByteBuffer buffer) {
+        long[] words = new long[buffer.getInt()];
+        buffer.asLongBuffer().get(words);
+        buffer.position(buffer.position() + 8 * words.length);
+        BitSet cached = BitSet.valueOf(words);
+        for (int i = cached.nextSetBit(0); i >= 0; i = cached.nextSetBit(i + 1)) {
+            na.set(size + i);
+        }
+    }
+
+    /**
+     * Writes strings dictionary encoded. The distinct values are written first,
+     * followed by the code of each row (<tt>-1</tt> for NA).
+     * @param values string values, <tt>null</tt> for NA
+     * @param rows row index of each value or <tt>null</tt> if there is one value per row
+     * @param valueCount number of values
+     */
+    protected void writeStrings(DataOutput out, String[] values, int[] rows, int valueCount) throws IOException {
+        Map<String, Integer> codes = new HashMap<>();
+        int[] rowCodes = new int[size];
+        Arrays.fill(rowCodes, -1);
+        for (int i = 0; i < valueCount; i++) {
+            if (values[i] != null) {
+                Integer code = codes.get(values[i]);
+                if (code == null) {
+                    code = codes.size();
+                    codes.put(values[i], code);
+                }
+                rowCodes[rows == null ? i : rows[i]] = code;
+            }
+        }
+        String[] dictionary = new String[codes.size()];
+        for (Map.Entry<String, Integer> code : codes.entrySet()) {
+            dictionary[code.getValue()] = code.getKey();
+        }
+        out.writeInt(dictionary.length);
+        for (String value : dictionary) {
+            GTFCache.writeString(out, value);
+        }
+        for (int code : rowCodes) {
+            out.writeInt(code);
+        }
+    }
+
+    /**
+     * Reads strings written by {@link #writeStrings(DataOutput, String[], int[], int)} and appends them
+     */
+    protected void readStrings(ByteBuffer buffer, int count, GTFStringCache stringCache) {
+        String[] dictionary = new String[buffer.getInt()];
+        for (int i = 0; i < dictionary.length; i++) {
+            String value = GTFCache.readString(buffer);
+            dictionary[i] = stringCache != null ? stringCache.get(value) : value;
+        }
+        for (int i = 0; i < count; i++) {
+            int code = buffer.getInt();
+            if (code == -1) {
+                appendNA();
+            } else {
+                appendParsed(dictionary[code]);
+            }
+        }
+    }
+
+    /**
+     * Parses a long from the characters between <tt>start</tt> and <tt>end</tt>.
+     * Returns <tt>false</tt> if the characters are not an optionally signed number with at most 18 digits.
+     */
+    private static boolean parseLong(CharSequence input, int start, int end, long[] target, int index) {
+        boolean negative = false;
+        if (start < end && (input.charAt(start) == '-' || input.charAt(start) == '+')) {
+            negative = input.charAt(start) == '-';
+            start++;
+        }
+        if (start == end || end - start > 18) {
+            return false;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = input.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return false;
+            }
+            value = value * 10 + digit;
+        }
+        target[index] = negative ? -value : value;
+        return true;
+    }
+
+    /**
+     * Parses a double from the characters between <tt>start</tt> and <tt>end</tt>.
+     * Only decimal numbers with at most 15 significant digits and without exponent are parsed,
+     * these are converted exactly by dividing by a power of ten.
+     * Returns <tt>false</tt> for all other inputs.
+     */
+    private static boolean parseDouble(CharSequence input, int start, int end, double[] target, int index) {
+        boolean negative = false;
+        if (start < end && (input.charAt(start) == '-' || input.charAt(start) == '+')) {
+            negative = input.charAt(start) == '-';
+            start++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (int i = start; i < end; i++) {
+            char c = input.charAt(i);
+            if (c == '.' && fractionDigits == -1) {
+                fractionDigits = 0;
+                continue;
+            }
+            int digit = c - '0';
+            if (digit < 0 || digit > 9 || ++digits > 15) {
+                return false;
+            }
+            mantissa = mantissa * 10 + digit;
+            if (fractionDigits != -1) {
+                fractionDigits++;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+        double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        target[index] = negative ? -value : value;
+        return true;
+    }
+
+    private static class LongColumnBuilder extends GTFColumnBuilder {
+        private long[] values = new long[INITIAL_CAPACITY];
+
+        LongColumnBuilder(String name) {
+            super(name, new LongColumn());
+        }
+
+        @Override
+        void append(CharSequence input, int start, int end) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            if (parseLong(input, start, end, values, size)) {
+                size++;
+            } else {
+                appendString(GTFUtil.substring(input, start, end));
+            }
+        }
+
+        @Override
+        protected void appendParsed(Object value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value == null ? 0 : ((Number) value).longValue();
+        }
+
+        @Override
+        void writeCache(DataOutput out) throws IOException {
+            writeNA(out);
+            for (int i = 0; i < size; i++) {
+                out.writeLong(values[i]);
+            }
+        }
+
+        @Override
+        void readCache(ByteBuffer buffer, int count) {
+            readNA(buffer);
+            if (size + count > values.length) {
+                values = Arrays.copyOf(values, size + count);
+            }
+            buffer.asLongBuffer().get(values, size, count);
+            buffer.position(buffer.position() + 8 * count);
+            size += count;
+        }
+
+        @Override
+        DataFrameColumn build() {
+            LongColumn column = new LongColumn(name);
+            for (int i = 0; i < size; i++) {
+                if (na.get(i)) {
+                    column.appendNA();
+                } else {
+                    column.append(values[i]);
+                }
+            }
+            return column;
+        }
+    }
+
+    private static class IntegerColumnBuilder extends GTFColumnBuilder {
+        private int[] values = new int[INITIAL_CAPACITY];
+        private final long[] parsed = new long[1];
+
+        IntegerColumnBuilder(String name) {
+            super(name, new IntegerColumn());
+        }
+
+        @Override
+        void append(CharSequence input, int start, int end) {
+            if (parseLong(input, start, end, parsed, 0)
+                    && parsed[0] >= Integer.MIN_VALUE && parsed[0] <= Integer.MAX_VALUE) {
+                appendParsed((int) parsed[0]);
+            } else {
+                appendString(GTFUtil.substring(input, start, end));
+            }
+        }
+
+        @Override
+        protected void appendParsed(Object value) {
+            appendInt(value == null ? 0 : ((Number) value).intValue());
+        }
+
+        private void appendInt(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        @Override
+        void writeCache(DataOutput out) throws IOException {
+            writeNA(out);
+            for (int i = 0; i < size; i++) {
+                out.writeInt(values[i]);
+            }
+        }
+
+        @Override
+        void readCache(ByteBuffer buffer, int count) {
+            readNA(buffer);
+            if (size + count > values.length) {
+                values = Arrays.copyOf(values, size + count);
+            }
+            buffer.asIntBuffer().get(values, size, count);
+            buffer.position(buffer.position() + 4 * count);
+            size += count;
+        }
+
+        @Override
+        DataFrameColumn build() {
+            IntegerColumn column = new IntegerColumn(name);
+            for (int i = 0; i < size; i++) {
+                if (na.get(i)) {
+                    column.appendNA();
+                } else {
+                    column.append(values[i]);
+                }
+            }
+            return column;
+        }
+    }
+
+    private static class DoubleColumnBuilder extends GTFColumnBuilder {
+        private double[] values = new double[INITIAL_CAPACITY];
+
+        DoubleColumnBuilder(String name) {
+            super(name, new DoubleColumn());
+        }
+
+        @Override
+        void append(CharSequence input, int start, int end) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            if (parseDouble(input, start, end, values, size)) {
+                size++;
+            } else {
+                appendString(GTFUtil.substring(input, start, end));
+            }
+        }
+
+        @Override
+        protected void appendParsed(Object value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value == null ? 0 : ((Number) value).doubleValue();
+        }
+
+        @Override
+        void writeCache(DataOutput out) throws IOException {
+            writeNA(out);
+            for (int i = 0; i < size; i++) {
+                out.writeDouble(values[i]);
+            }
+        }
+
+        @Override
+        void readCache(ByteBuffer buffer, int count) {
+            readNA(buffer);
+            if (size + count > values.length) {
+                values = Arrays.copyOf(values, size + count);
+            }
+            buffer.asDoubleBuffer().get(values, size, count);
+            buffer.position(buffer.position() + 8 * count);
+            size += count;
+        }
+
+        @Override
+        DataFrameColumn build() {
+            DoubleColumn column = new DoubleColumn(name);
+            for (int i = 0; i < size; i++) {
+                if (na.get(i)) {
+                    column.appendNA();
+                } else {
+                    column.append(values[i]);
+                }
+            }
+            return column;
+        }
+    }
+
+    private static class StringColumnBuilder extends GTFColumnBuilder {
+        private String[] values = new String[INITIAL_CAPACITY];
+        private final GTFStringCache dictionary;
+
+        StringColumnBuilder(String name, GTFStringCache dictionary) {
+            super(name, new StringColumn());
+            this.dictionary = dictionary;
+        }
+
+        @Override
+        void append(CharSequence input, int start, int end) {
+            appendParsed(dictionary != null
+                    ? dictionary.get(input, start, end)
+                    : GTFUtil.substring(input, start, end));
+        }
+
+        @Override
+        void appendString(String value) {
+            if (value == null || Values.NA.isNA(value)) {
+                appendNA();
+            } else {
+                appendParsed(dictionary != null ? dictionary.get(value) : value);
+            }
+        }
+
+        @Override
+        protected void appendParsed(Object value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = (String) value;
+        }
+
+        @Override
+        void writeCache(DataOutput out) throws IOException {
+            writeStrings(out, values, null, size);
+        }
+
+        @Override
+        void readCache(ByteBuffer buffer, int count) {
+            if (size + count > values.length) {
+                values = Arrays.copyOf(values, size + count);
+            }
+            readStrings(buffer, count, dictionary);
+        }
+
+        @Override
+        DataFrameColumn build() {
+            StringColumn column = new StringColumn(name);
+            for (int i = 0; i < size; i++) {
+                if (na.get(i)) {
+                    column.appendNA();
+                } else {
+                    column.append(values[i]);
+                }
+            }
+            return column;
+        }
+    }
+
+    /**
+     * Builder for <tt>String</tt> columns with mostly missing values.
+     * Only the row indices and values of non-NA rows are stored, NA values only increase the size.
+     */
+    static class SparseStringColumnBuilder extends GTFColumnBuilder {
+        private int[] rows = new int[16];
+        private String[] values = new String[16];
+        private int valueCount = 0;
+        private final GTFStringCache dictionary;
+
+        SparseStringColumnBuilder(String name, GTFStringCache dictionary) {
+            super(name, new StringColumn());
+            this.dictionary = dictionary;
+        }
+
+        @Override
+        void append(CharSequence input, int start, int end) {
+            appendParsed(dictionary != null
+                    ? dictionary.get(input, start, end)
+                    : GTFUtil.substring(input, start, end));
+        }
+
+        @Override
+        void appendString(String value) {
+            if (value == null || Values.NA.isNA(value)) {
+                appendNA();
+            } else {
+                appendParsed(dictionary != null ? dictionary.get(value) : value);
+            }
+        }
+
+        @Override
+        void appendNA() {
+            size++;
+        }
+
+        @Override
+        void appendNA(int count) {
+            size += count;
+        }
+
+        @Override
+        protected void appendParsed(Object value) {
+            if (value == null) {
+                size++;
+                return;
+            }
+            if (valueCount == values.length) {
+                rows = Arrays.copyOf(rows, valueCount * 2);
+                values = Arrays.copyOf(values, valueCount * 2);
+            }
+            rows[valueCount] = size++;
+            values[valueCount++] = (String) value;
+        }
+
+        /**
+         * Removes the last value
+         */
+        void removeLast() {
+            size--;
+            if (valueCount > 0 && rows[valueCount - 1] == size) {
+                values[--valueCount] = null;
+            }
+        }
+
+        @Override
+        void writeCache(DataOutput out) throws IOException {
+            writeStrings(out, values, rows, valueCount);
+        }
+
+        @Override
+        void readCache(ByteBuffer buffer, int count) {
+            readStrings(buffer, count, dictionary);
+        }
+
+        @Override
+        DataFrameColumn build() {
+            StringColumn column = new StringColumn(name);
+            int next = 0;
+            for (int i = 0; i < size; i++) {
+                if (next < valueCount && rows[next] == i) {
+                    column.append(values[next++]);
+                } else {
+                    column.appendNA();
+                }
+            }
+            return column;
+        }
+    }
+
+    /**
+     * Builder for all other column types. Values are parsed using the parser of the column.
+     */
+    private static class ParsedColumnBuilder extends GTFColumnBuilder {
+        private Object[] values = new Object[INITIAL_CAPACITY];
+        private final Class<? extends DataFrameColumn> columnClass;
+
+        ParsedColumnBuilder(String name, Class<? extends DataFrameColumn> columnClass) {
+            super(name, createColumn(columnClass, name));
+            this.columnClass = columnClass;
+        }
+
+        @Override
+        void append(CharSequence input, int start, int end) {
+            appendString(GTFUtil.substring(input, start, end));
+        }
+
+        @Override
+        protected void appendParsed(Object value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        @Override
+        boolean isCacheable() {
+            return false;
+        }
+
+        @Override
+        void writeCache(DataOutput out) {
+            throw new UnsupportedOperationException("column type can not be cached: " + columnClass.getName());
+        }
+
+        @Override
+        void readCache(ByteBuffer buffer, int count) {
+            throw new UnsupportedOperationException("column type can not be cached: " + columnClass.getName());
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        DataFrameColumn build() {
+            DataFrameColumn column = createColumn(columnClass, name);
+            for (int i = 0; i < size; i++) {
+                if (na.get(i)) {
+                    column.appendNA();
+                } else {
+                    column.append((Comparable) values[i]);
+                }
+            }
+            return column;
+        }
+
+        private static DataFrameColumn createColumn(Class<? extends DataFrameColumn> columnClass, String name) {
+            try {
+                return columnClass.getConstructor(String.class).newInstance(name);
+            } catch (ReflectiveOperationException e) {
+                throw new DataFrameRuntimeException(
+                        String.format("error creating column instance '%s'", columnClass.getCanonicalName()), e);
+            }
+        }
+    }
+}
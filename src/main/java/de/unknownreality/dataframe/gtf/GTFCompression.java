@@ -0,0 +1,130 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Detects and opens gzip and BGZF (blocked gzip) compressed GTF files based on their magic bytes.
+ */
+final class GTFCompression {
+    static final int BUFFER_SIZE = 64 * 1024;
+    private static final int HEADER_LENGTH = 16;
+
+    private GTFCompression() {
+    }
+
+    /**
+     * Returns <tt>true</tt> if a file starts with the gzip magic bytes
+     * @param file input file
+     * @return <tt>true</tt> if the file is gzip or BGZF compressed
+     * @throws IOException if the file can not be read
+     */
+    static boolean isCompressed(File file) throws IOException {
+        byte[] header = new byte[HEADER_LENGTH];
+        int length;
+        try (InputStream in = new FileInputStream(file)) {
+            length = readFully(in, header, 0, header.length);
+        }
+        return isGzip(header, length);
+    }
+
+    /**
+     * Opens a file and decompresses it if required.
+     * BGZF files are decompressed in parallel if the parallelism is greater than 1,
+     * other gzip files are decompressed sequentially.
+     * @param file input file
+     * @param parallelism number of decompression threads
+     * @return decompressed input stream
+     * @throws IOException if the file can not be read
+     */
+    static InputStream open(File file, int parallelism) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        try {
+            byte[] header = new byte[HEADER_LENGTH];
+            in.mark(HEADER_LENGTH);
+            int length = readFully(in, header, 0, header.length);
+            in.reset();
+            if (isBGZF(header, length) && parallelism > 1) {
+                return new GTFBGZFInputStream(in, parallelism);
+            }
+            if (isGzip(header, length)) {
+                return new GZIPInputStream(in, BUFFER_SIZE);
+            }
+            return in;
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns <tt>true</tt> if a header starts with the gzip magic bytes
+     */
+    static boolean isGzip(byte[] header, int length) {
+        return length >= 2 && (header[0] & 0xFF) == 0x1F && (header[1] & 0xFF) == 0x8B;
+    }
+
+    /**
+     * Returns <tt>true</tt> if a header is the header of a BGZF block.
+     * BGZF blocks are gzip members containing a <tt>BC</tt> extra field with the size of the block.
+     */
+    static boolean isBGZF(byte[] header, int length) {
+        return length >= HEADER_LENGTH && isGzip(header, length)
+                && header[2] == 8
+                && (header[3] & 4) != 0
+                && header[12] == 'B' && header[13] == 'C'
+                && readUnsignedShort(header, 14) == 2;
+    }
+
+    static int readUnsignedShort(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) | (buffer[offset + 1] & 0xFF) << 8;
+    }
+
+    static int readInt(byte[] buffer, int offset) {
+        return readUnsignedShort(buffer, offset) | readUnsignedShort(buffer, offset + 2) << 16;
+    }
+
+    /**
+     * Reads until the buffer is full or the end of the stream is reached
+     * @return number of bytes read
+     */
+    static int readFully(InputStream in, byte[] buffer, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int read = in.read(buffer, offset + total, length - total);
+            if (read == -1) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Dictionary of the distinct values of a column.
+ * Each distinct value is stored once, all rows containing the value reference the same instance.
+ * A dictionary can be used by multiple threads.
+ */
+public class GTFDictionary {
+    private final ConcurrentMap<String, String> values = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the canonical instance of a value
+     * @param value input value
+     * @return canonical instance
+     */
+    public String intern(String value) {
+        String canonical = values.putIfAbsent(value, value);
+        return canonical == null ? value : canonical;
+    }
+
+    /**
+     * Returns the number of distinct values
+     * @return number of distinct values
+     */
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * Removes all values. Values interned afterwards are not shared with previously returned instances.
+     */
+    public void clear() {
+        values.clear();
+    }
+
+    /**
+     * Returns all distinct values
+     * @return distinct values
+     */
+    public Collection<String> getValues() {
+        return Collections.unmodifiableCollection(values.keySet());
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Gene of a {@link GTFGeneModel} with its transcripts
+ */
+public class GTFGene {
+    private final String id;
+    private final String name;
+    private final String seqname;
+    private final char strand;
+    private final long start;
+    private final long end;
+    private final List<GTFTranscript> transcripts;
+
+    GTFGene(String id, String name, String seqname, char strand, long start, long end,
+            List<GTFTranscript> transcripts) {
+        this.id = id;
+        this.name = name;
+        this.seqname = seqname;
+        this.strand = strand;
+        this.start = start;
+        this.end = end;
+        this.transcripts = Collections.unmodifiableList(transcripts);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Returns the <tt>gene_name</tt> attribute of the gene
+     * @return gene name or <tt>null</tt> if the gene has no name
+     */
+    public String getName() {
+        return name;
+    }
+
+    public String getSeqname() {
+        return seqname;
+    }
+
+    /**
+     * Returns the strand of the gene (<tt>+</tt>, <tt>-</tt> or <tt>.</tt>)
+     * @return strand
+     */
+    public char getStrand() {
+        return strand;
+    }
+
+    /**
+     * Returns the start of the gene. If the input contains no gene feature,
+     * the smallest start of all features of the gene is returned.
+     * @return start position
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Returns the end of the gene. If the input contains no gene feature,
+     * the largest end of all features of the gene is returned.
+     * @return end position
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * Returns the transcripts of the gene in the order they appear in the input
+     * @return transcripts
+     */
+    public List<GTFTranscript> getTranscripts() {
+        return transcripts;
+    }
+
+    /**
+     * Returns a transcript of this gene
+     * @param transcriptId transcript id
+     * @return transcript or <tt>null</tt> if the gene contains no transcript with this id
+     */
+    public GTFTranscript getTranscript(String transcriptId) {
+        for (GTFTranscript transcript : transcripts) {
+            if (transcript.getId().equals(transcriptId)) {
+                return transcript;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s:%d-%d(%s) transcripts=%d", id, seqname, start, end, strand, transcripts.size());
+    }
+}
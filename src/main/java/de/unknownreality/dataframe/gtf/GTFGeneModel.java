@@ -0,0 +1,97 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Genes and transcripts of a GTF file, created by {@link GTFGeneModelBuilder}
+ */
+public class GTFGeneModel implements Iterable<GTFGene> {
+    private final List<GTFGene> genes;
+    private final Map<String, GTFGene> geneIds = new HashMap<>();
+    private final Map<String, GTFTranscript> transcriptIds = new HashMap<>();
+
+    GTFGeneModel(List<GTFGene> genes) {
+        this.genes = Collections.unmodifiableList(genes);
+        for (GTFGene gene : genes) {
+            geneIds.put(gene.getId(), gene);
+            for (GTFTranscript transcript : gene.getTranscripts()) {
+                transcriptIds.put(transcript.getId(), transcript);
+            }
+        }
+    }
+
+    /**
+     * Returns all genes in the order they were completed
+     * @return genes
+     */
+    public List<GTFGene> getGenes() {
+        return genes;
+    }
+
+    /**
+     * Returns the number of genes
+     * @return number of genes
+     */
+    public int size() {
+        return genes.size();
+    }
+
+    /**
+     * Returns a gene
+     * @param geneId gene id
+     * @return gene or <tt>null</tt> if the model contains no gene with this id
+     */
+    public GTFGene getGene(String geneId) {
+        return geneIds.get(geneId);
+    }
+
+    /**
+     * Returns a transcript
+     * @param transcriptId transcript id
+     * @return transcript or <tt>null</tt> if the model contains no transcript with this id
+     */
+    public GTFTranscript getTranscript(String transcriptId) {
+        return transcriptIds.get(transcriptId);
+    }
+
+    /**
+     * Returns the number of transcripts of all genes
+     * @return number of transcripts
+     */
+    public int getTranscriptCount() {
+        return transcriptIds.size();
+    }
+
+    @Override
+    public Iterator<GTFGene> iterator() {
+        return genes.iterator();
+    }
+}
@@ -0,0 +1,639 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import de.unknownreality.dataframe.DataFrameRuntimeException;
+import de.unknownreality.dataframe.Values;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Assembles genes, transcripts, exons and CDS of a GTF file in a single pass.
+ * Records are grouped by the <tt>gene_id</tt> and <tt>transcript_id</tt> attributes,
+ * records without <tt>gene_id</tt> are ignored.
+ * <p>
+ * If the input is sorted by position (all records of a sequence are consecutive and every gene starts before
+ * the records of later genes), genes with a <tt>gene</tt> record are passed to the consumer as soon as a record of
+ * another gene beyond their end is read, so only overlapping genes are kept in memory. Without a <tt>gene</tt>
+ * record the end of a gene is not known before the end of its sequence, such genes are kept until the sequence changes.
+ * For unsorted input all genes are kept until the end of the input. If more than
+ * {@link #withMaxBufferedFeatures(int) max buffered features} are read, features are spilled to temporary files
+ * partitioned by <tt>gene_id</tt> and genes are assembled partition by partition.
+ * </p>
+ */
+public class GTFGeneModelBuilder {
+    public static final int DEFAULT_MAX_BUFFERED_FEATURES = 4_000_000;
+    private static final int SPILL_PARTITIONS = 64;
+    private static final byte FEATURE_OTHER = 0;
+    private static final byte FEATURE_EXON = 1;
+    private static final byte FEATURE_CDS = 2;
+    private static final byte FEATURE_GENE = 3;
+
+    private boolean sortedInput = false;
+    private int maxBufferedFeatures = DEFAULT_MAX_BUFFERED_FEATURES;
+    private File tempDirectory = null;
+
+    public static GTFGeneModelBuilder create() {
+        return new GTFGeneModelBuilder();
+    }
+
+    /**
+     * Specifies whether the input is sorted by position.
+     * Sorted input is assembled with bounded memory: genes with a <tt>gene</tt> record are completed
+     * once a record beyond their end is read, genes without one at the end of their sequence.
+     * If a record of an already completed gene or sequence is found, a {@link DataFrameRuntimeException} is thrown.
+     * @param sortedInput <tt>true</tt> if the input is sorted by position
+     * @return <tt>self</tt> for method chaining
+     */
+    public GTFGeneModelBuilder withSortedInput(boolean sortedInput) {
+        this.sortedInput = sortedInput;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of features of unsorted input kept in memory before features are spilled
+     * to temporary files. Default is {@value #DEFAULT_MAX_BUFFERED_FEATURES}.
+     * @param maxBufferedFeatures maximum number of buffered features
+     * @return <tt>self</tt> for method chaining
+     */
+    public GTFGeneModelBuilder withMaxBufferedFeatures(int maxBufferedFeatures) {
+        if (maxBufferedFeatures < 1) {
+            throw new IllegalArgumentException("max buffered features must be positive");
+        }
+        this.maxBufferedFeatures = maxBufferedFeatures;
+        return this;
+    }
+
+    /**
+     * Sets the directory for spill files. Default is the system temp directory.
+     * @param tempDirectory directory for spill files
+     * @return <tt>self</tt> for method chaining
+     */
+    public GTFGeneModelBuilder withTempDirectory(File tempDirectory) {
+        this.tempDirectory = tempDirectory;
+        return this;
+    }
+
+    /**
+     * Assembles all genes of a GTF file
+     * @param file input file
+     * @return gene model
+     */
+    public GTFGeneModel build(File file) {
+        List<GTFGene> genes = new ArrayList<>();
+        stream(file, genes::add);
+        return new GTFGeneModel(genes);
+    }
+
+    /**
+     * Assembles all genes of a reader
+     * @param reader input reader
+     * @return gene model
+     */
+    public GTFGeneModel build(Reader reader) {
+        List<GTFGene> genes = new ArrayList<>();
+        stream(reader, genes::add);
+        return new GTFGeneModel(genes);
+    }
+
+    /**
+     * Passes each gene of a GTF file to a consumer once it is complete
+     * @param file input file
+     * @param consumer gene consumer
+     * @return number of genes passed to the consumer
+     */
+    public int stream(File file, Consumer<? super GTFGene> consumer) {
+        Assembler assembler = createAssembler(consumer);
+        createReader().stream(file, assembler);
+        return assembler.finish();
+    }
+
+    /**
+     * Passes each gene of a reader to a consumer once it is complete
+     * @param reader input reader
+     * @param consumer gene consumer
+     * @return number of genes passed to the consumer
+     */
+    public int stream(Reader reader, Consumer<? super GTFGene> consumer) {
+        Assembler assembler = createAssembler(consumer);
+        createReader().stream(reader, assembler);
+        return assembler.finish();
+    }
+
+    private Assembler createAssembler(Consumer<? super GTFGene> consumer) {
+        return sortedInput ? new SortedAssembler(consumer) : new UnsortedAssembler(consumer);
+    }
+
+    private static GTFReader createReader() {
+        return GTFReaderBuilder.create()
+                .withGTFField(GTFField.SEQNAME)
+                .withGTFField(GTFField.FEATURE)
+                .withGTFField(GTFField.START)
+                .withGTFField(GTFField.END)
+                .withGTFField(GTFField.STRAND)
+                .withAttribute("gene_id")
+                .withAttribute("transcript_id")
+                .withAttribute("gene_name")
+                .build();
+    }
+
+    private static String valueOrNull(String value) {
+        return Values.NA.isNA(value) ? null : value;
+    }
+
+    /**
+     * Collects the features of the records passed to {@link #accept(GTFRecordView)} into genes
+     */
+    private abstract static class Assembler implements Consumer<GTFRecordView> {
+        private final Consumer<? super GTFGene> consumer;
+        private final Map<String, String> seqnames = new HashMap<>();
+        private int[] columns;
+        private int genes = 0;
+
+        Assembler(Consumer<? super GTFGene> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void accept(GTFRecordView record) {
+            if (columns == null) {
+                GTFHeader header = record.getHeader();
+                columns = new int[]{
+                        header.getIndex(GTFField.SEQNAME), header.getIndex(GTFField.FEATURE),
+                        header.getIndex(GTFField.START), header.getIndex(GTFField.END),
+                        header.getIndex(GTFField.STRAND), header.getIndex("gene_id"),
+                        header.getIndex("transcript_id"), header.getIndex("gene_name")};
+            }
+            String geneId = valueOrNull(record.get(columns[5]));
+            if (geneId == null) {
+                return;
+            }
+            String seqname = seqnames.computeIfAbsent(record.get(columns[0]), s -> s);
+            String feature = record.get(columns[1]);
+            byte type = "exon".equals(feature) ? FEATURE_EXON : "CDS".equals(feature) ? FEATURE_CDS
+                    : "gene".equals(feature) ? FEATURE_GENE : FEATURE_OTHER;
+            long start;
+            long end;
+            try {
+                start = Long.parseLong(record.get(columns[2]));
+                end = Long.parseLong(record.get(columns[3]));
+            } catch (NumberFormatException e) {
+                throw new DataFrameRuntimeException(
+                        String.format("invalid feature position (line %d)", record.getLineNumber()), e);
+            }
+            String strand = record.get(columns[4]);
+            add(seqname, type, start, end, strand.isEmpty() ? '.' : strand.charAt(0), geneId,
+                    valueOrNull(record.get(columns[6])), valueOrNull(record.get(columns[7])),
+                    record.getLineNumber());
+        }
+
+        abstract void add(String seqname, byte type, long start, long end, char strand,
+                          String geneId, String transcriptId, String geneName, int lineNumber);
+
+        /**
+         * Completes all remaining genes
+         * @return number of genes passed to the consumer
+         */
+        abstract int finish();
+
+        void emit(GeneBuilder gene) {
+            consumer.accept(gene.build());
+            genes++;
+        }
+
+        int getGeneCount() {
+            return genes;
+        }
+    }
+
+    /**
+     * Completes genes once a record of another gene beyond their end is read.
+     * Only genes with a <tt>gene</tt> record have a known end, all other genes are completed at the end of the sequence.
+     */
+    private static class SortedAssembler extends Assembler {
+        private final Map<String, GeneBuilder> open = new LinkedHashMap<>();
+        private final Set<String> completedGenes = new HashSet<>();
+        private final Set<String> completedSeqnames = new HashSet<>();
+        private String seqname = null;
+        private long minOpenEnd = Long.MAX_VALUE;
+
+        SortedAssembler(Consumer<? super GTFGene> consumer) {
+            super(consumer);
+        }
+
+        @Override
+        void add(String seqname, byte type, long start, long end, char strand,
+                 String geneId, String transcriptId, String geneName, int lineNumber) {
+            if (!seqname.equals(this.seqname)) {
+                if (this.seqname != null) {
+                    emitAll();
+                    completedSeqnames.add(this.seqname);
+                    completedGenes.clear();
+                }
+                if (completedSeqnames.contains(seqname)) {
+                    throw new DataFrameRuntimeException(String.format(
+                            "sequence %s continues after other sequences, input is not sorted (line %d)",
+                            seqname, lineNumber));
+                }
+                this.seqname = seqname;
+            } else if (start > minOpenEnd) {
+                emitCompleted(start, geneId);
+            }
+            GeneBuilder gene = open.get(geneId);
+            if (gene == null) {
+                if (completedGenes.contains(geneId)) {
+                    throw new DataFrameRuntimeException(String.format(
+                            "gene %s continues after a record beyond its end, input is not sorted (line %d)",
+                            geneId, lineNumber));
+                }
+                gene = new GeneBuilder(geneId, seqname, strand);
+                open.put(geneId, gene);
+            }
+            gene.add(type, start, end, transcriptId, geneName);
+            if (gene.bounded) {
+                minOpenEnd = Math.min(minOpenEnd, gene.end);
+            }
+        }
+
+        private void emitCompleted(long position, String geneId) {
+            long min = Long.MAX_VALUE;
+            Iterator<GeneBuilder> it = open.values().iterator();
+            while (it.hasNext()) {
+                GeneBuilder gene = it.next();
+                if (!gene.bounded) {
+                    continue;
+                }
+                if (gene.end < position && !gene.id.equals(geneId)) {
+                    it.remove();
+                    completedGenes.add(gene.id);
+                    emit(gene);
+                } else {
+                    min = Math.min(min, gene.end);
+                }
+            }
+            minOpenEnd = min;
+        }
+
+        private void emitAll() {
+            for (GeneBuilder gene : open.values()) {
+                emit(gene);
+            }
+            open.clear();
+            minOpenEnd = Long.MAX_VALUE;
+        }
+
+        @Override
+        int finish() {
+            emitAll();
+            return getGeneCount();
+        }
+    }
+
+    /**
+     * Keeps all genes until the end of the input and spills features partitioned by gene to temporary files
+     * if more than {@link #maxBufferedFeatures} features are buffered
+     */
+    private class UnsortedAssembler extends Assembler {
+        private final Map<String, GeneBuilder> genes = new LinkedHashMap<>();
+        private File[] partitionFiles;
+        private DataOutputStream[] partitions;
+        private int bufferedFeatures = 0;
+
+        UnsortedAssembler(Consumer<? super GTFGene> consumer) {
+            super(consumer);
+        }
+
+        @Override
+        void add(String seqname, byte type, long start, long end, char strand,
+                 String geneId, String transcriptId, String geneName, int lineNumber) {
+            if (partitions != null) {
+                writeFeature(seqname, type, start, end, strand, geneId, transcriptId, geneName);
+                return;
+            }
+            addFeature(genes, seqname, type, start, end, strand, geneId, transcriptId, geneName);
+            if (++bufferedFeatures > maxBufferedFeatures) {
+                spill();
+            }
+        }
+
+        private void spill() {
+            try {
+                partitionFiles = new File[SPILL_PARTITIONS];
+                partitions = new DataOutputStream[SPILL_PARTITIONS];
+                for (int i = 0; i < SPILL_PARTITIONS; i++) {
+                    partitionFiles[i] = File.createTempFile("gtf-genes-" + i + "-", ".spill", tempDirectory);
+                    partitionFiles[i].deleteOnExit();
+                    partitions[i] = new DataOutputStream(
+                            new BufferedOutputStream(new FileOutputStream(partitionFiles[i])));
+                }
+            } catch (IOException e) {
+                close();
+                throw new DataFrameRuntimeException("error creating gene model spill files", e);
+            }
+            for (GeneBuilder gene : genes.values()) {
+                gene.spill(this);
+            }
+            genes.clear();
+            bufferedFeatures = 0;
+        }
+
+        void writeFeature(String seqname, byte type, long start, long end, char strand,
+                          String geneId, String transcriptId, String geneName) {
+            DataOutputStream out = partitions[(geneId.hashCode() & Integer.MAX_VALUE) % SPILL_PARTITIONS];
+            try {
+                out.writeUTF(seqname);
+                out.writeByte(type);
+                out.writeLong(start);
+                out.writeLong(end);
+                out.writeChar(strand);
+                out.writeUTF(geneId);
+                writeNullable(out, transcriptId);
+                writeNullable(out, geneName);
+            } catch (IOException e) {
+                close();
+                throw new DataFrameRuntimeException("error writing gene model spill file", e);
+            }
+        }
+
+        private void writeNullable(DataOutputStream out, String value) throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null) {
+                out.writeUTF(value);
+            }
+        }
+
+        private String readNullable(DataInputStream in) throws IOException {
+            return in.readBoolean() ? in.readUTF() : null;
+        }
+
+        @Override
+        int finish() {
+            if (partitions == null) {
+                emitAll();
+                return getGeneCount();
+            }
+            try {
+                for (DataOutputStream out : partitions) {
+                    out.close();
+                }
+                Map<String, String> seqnames = new HashMap<>();
+                for (File partitionFile : partitionFiles) {
+                    try (DataInputStream in = new DataInputStream(
+                            new BufferedInputStream(new FileInputStream(partitionFile)))) {
+                        while (true) {
+                            String seqname;
+                            try {
+                                seqname = in.readUTF();
+                            } catch (EOFException e) {
+                                break;
+                            }
+                            addFeature(genes, seqnames.computeIfAbsent(seqname, s -> s), in.readByte(),
+                                    in.readLong(), in.readLong(), in.readChar(), in.readUTF(),
+                                    readNullable(in), readNullable(in));
+                        }
+                    }
+                    emitAll();
+                }
+            } catch (IOException e) {
+                throw new DataFrameRuntimeException("error reading gene model spill file", e);
+            } finally {
+                close();
+            }
+            return getGeneCount();
+        }
+
+        private void emitAll() {
+            for (GeneBuilder gene : genes.values()) {
+                emit(gene);
+            }
+            genes.clear();
+        }
+
+        private void close() {
+            if (partitions == null) {
+                return;
+            }
+            for (int i = 0; i < partitions.length; i++) {
+                try {
+                    if (partitions[i] != null) {
+                        partitions[i].close();
+                    }
+                } catch (IOException ignored) {
+                }
+                if (partitionFiles[i] != null) {
+                    partitionFiles[i].delete();
+                }
+            }
+        }
+    }
+
+    private static void addFeature(Map<String, GeneBuilder> genes, String seqname, byte type, long start, long end,
+                                   char strand, String geneId, String transcriptId, String geneName) {
+        GeneBuilder gene = genes.get(geneId);
+        if (gene == null) {
+            gene = new GeneBuilder(geneId, seqname, strand);
+            genes.put(geneId, gene);
+        }
+        gene.add(type, start, end, transcriptId, geneName);
+    }
+
+    private static class GeneBuilder {
+        private final String id;
+        private final String seqname;
+        private final char strand;
+        private final Map<String, TranscriptBuilder> transcripts = new LinkedHashMap<>();
+        private String name;
+        private long start = Long.MAX_VALUE;
+        private long end = Long.MIN_VALUE;
+        private boolean bounded = false;
+
+        GeneBuilder(String id, String seqname, char strand) {
+            this.id = id;
+            this.seqname = seqname;
+            this.strand = strand;
+        }
+
+        void add(byte type, long start, long end, String transcriptId, String name) {
+            this.start = Math.min(this.start, start);
+            this.end = Math.max(this.end, end);
+            if (type == FEATURE_GENE) {
+                bounded = true;
+            }
+            if (name != null) {
+                this.name = name;
+            }
+            if (transcriptId == null) {
+                return;
+            }
+            TranscriptBuilder transcript = transcripts.get(transcriptId);
+            if (transcript == null) {
+                transcript = new TranscriptBuilder(transcriptId);
+                transcripts.put(transcriptId, transcript);
+            }
+            transcript.add(type, start, end);
+        }
+
+        void spill(UnsortedAssembler assembler) {
+            assembler.writeFeature(seqname, FEATURE_OTHER, start, end, strand, id, null, name);
+            for (TranscriptBuilder transcript : transcripts.values()) {
+                assembler.writeFeature(seqname, FEATURE_OTHER, transcript.start, transcript.end, strand,
+                        id, transcript.id, null);
+                for (int i = 0; i < transcript.exons.size; i += 2) {
+                    assembler.writeFeature(seqname, FEATURE_EXON, transcript.exons.values[i],
+                            transcript.exons.values[i + 1], strand, id, transcript.id, null);
+                }
+                for (int i = 0; i < transcript.cds.size; i += 2) {
+                    assembler.writeFeature(seqname, FEATURE_CDS, transcript.cds.values[i],
+                            transcript.cds.values[i + 1], strand, id, transcript.id, null);
+                }
+            }
+        }
+
+        GTFGene build() {
+            List<GTFTranscript> list = new ArrayList<>(transcripts.size());
+            for (TranscriptBuilder transcript : transcripts.values()) {
+                long[] exons = transcript.exons.sorted();
+                long[] cds = transcript.cds.sorted();
+                list.add(new GTFTranscript(transcript.id, id, seqname, strand, transcript.start, transcript.end,
+                        starts(exons), ends(exons), starts(cds), ends(cds)));
+            }
+            return new GTFGene(id, name, seqname, strand, start, end, list);
+        }
+
+        private static long[] starts(long[] intervals) {
+            long[] starts = new long[intervals.length / 2];
+            for (int i = 0; i < starts.length; i++) {
+                starts[i] = intervals[i * 2];
+            }
+            return starts;
+        }
+
+        private static long[] ends(long[] intervals) {
+            long[] ends = new long[intervals.length / 2];
+            for (int i = 0; i < ends.length; i++) {
+                ends[i] = intervals[i * 2 + 1];
+            }
+            return ends;
+        }
+    }
+
+    private static class TranscriptBuilder {
+        private final String id;
+        private final IntervalList exons = new IntervalList();
+        private final IntervalList cds = new IntervalList();
+        private long start = Long.MAX_VALUE;
+        private long end = Long.MIN_VALUE;
+
+        TranscriptBuilder(String id) {
+            this.id = id;
+        }
+
+        void add(byte type, long start, long end) {
+            this.start = Math.min(this.start, start);
+            this.end = Math.max(this.end, end);
+            if (type == FEATURE_EXON) {
+                exons.add(start, end);
+            } else if (type == FEATURE_CDS) {
+                cds.add(start, end);
+            }
+        }
+    }
+
+    /**
+     * Growable list of start/end pairs stored in a single primitive array
+     */
+    private static class IntervalList {
+        private static final long[] EMPTY = new long[0];
+        private long[] values = EMPTY;
+        private int size = 0;
+
+        void add(long start, long end) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.max(8, size * 2));
+            }
+            values[size++] = start;
+            values[size++] = end;
+        }
+
+        /**
+         * Returns the intervals sorted by start. Intervals of minus strand transcripts are usually
+         * in descending order and are reversed, other orders are sorted by insertion.
+         * @return sorted start/end pairs
+         */
+        long[] sorted() {
+            long[] sorted = Arrays.copyOf(values, size);
+            int n = size / 2;
+            boolean ascending = true;
+            boolean descending = true;
+            for (int i = 1; i < n && (ascending || descending); i++) {
+                ascending &= sorted[(i - 1) * 2] <= sorted[i * 2];
+                descending &= sorted[(i - 1) * 2] >= sorted[i * 2];
+            }
+            if (ascending) {
+                return sorted;
+            }
+            if (descending) {
+                for (int i = 0, j = n - 1; i < j; i++, j--) {
+                    swap(sorted, i, j);
+                }
+                return sorted;
+            }
+            for (int i = 1; i < n; i++) {
+                for (int j = i; j > 0 && sorted[(j - 1) * 2] > sorted[j * 2]; j--) {
+                    swap(sorted, j - 1, j);
+                }
+            }
+            return sorted;
+        }
+
+        private static void swap(long[] intervals, int a, int b) {
+            long start = intervals[a * 2];
+            long end = intervals[a * 2 + 1];
+            intervals[a * 2] = intervals[b * 2];
+            intervals[a * 2 + 1] = intervals[b * 2 + 1];
+            intervals[b * 2] = start;
+            intervals[b * 2 + 1] = end;
+        }
+    }
+}
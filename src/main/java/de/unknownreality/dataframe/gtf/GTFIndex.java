@@ -0,0 +1,545 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.LongUnaryOperator;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Binned genomic interval index of a coordinate sorted, BGZF compressed GTF file.
+ * The index uses the binning scheme and file format of tabix (<tt>.tbi</tt>), index files can be
+ * used by tabix and vice versa.
+ * Features are assigned to the smallest bin containing them. Each bin references the ranges of the file
+ * containing its features as virtual offsets. A linear index stores the smallest offset of all features
+ * overlapping each 16kb window.
+ */
+public class GTFIndex {
+    public static final String INDEX_EXTENSION = ".tbi";
+    private static final byte[] MAGIC = new byte[]{'T', 'B', 'I', 1};
+    private static final int MIN_SHIFT = 14;
+    private static final long MAX_POSITION = 1L << 29;
+    private static final int FORMAT_GENERIC = 0;
+    private static final int COLUMN_SEQNAME = 1;
+    private static final int COLUMN_START = 4;
+    private static final int COLUMN_END = 5;
+
+    private final Map<String, Reference> references = new LinkedHashMap<>();
+
+    private GTFIndex() {
+    }
+
+    /**
+     * Returns the default index file of a GTF file (<tt>file.gtf.gz.tbi</tt>)
+     * @param gtfFile BGZF compressed GTF file
+     * @return index file
+     */
+    public static File getIndexFile(File gtfFile) {
+        return new File(gtfFile.getPath() + INDEX_EXTENSION);
+    }
+
+    /**
+     * Builds the index of a GTF file and writes it to the default index file
+     * @param gtfFile coordinate sorted, BGZF compressed GTF file
+     * @return created index
+     * @throws IOException if the file can not be read or is not sorted
+     * @see #getIndexFile(File)
+     */
+    public static GTFIndex create(File gtfFile) throws IOException {
+        GTFIndex index = build(gtfFile);
+        index.write(getIndexFile(gtfFile));
+        return index;
+    }
+
+    /**
+     * Builds the index of a GTF file.
+     * The file must be BGZF compressed and sorted by seqname and start. All features of a seqname must be consecutive.
+     * @param gtfFile coordinate sorted, BGZF compressed GTF file
+     * @return index
+     * @throws IOException if the file can not be read or is not sorted
+     */
+    public static GTFIndex build(File gtfFile) throws IOException {
+        GTFIndex index = new GTFIndex();
+        IndexBuilder builder = index.new IndexBuilder();
+        try (GTFBGZFBlockReader reader = new GTFBGZFBlockReader(gtfFile)) {
+            GTFBGZFBlockReader.Block block;
+            while ((block = reader.read()) != null) {
+                byte[] data = block.inflate();
+                for (int i = 0; i < data.length; i++) {
+                    builder.add(data[i], block.offset << 16 | i,
+                            i + 1 < data.length ? block.offset << 16 | (i + 1) : reader.getOffset() << 16);
+                }
+            }
+            builder.finish(reader.getOffset() << 16);
+        }
+        return index;
+    }
+
+    /**
+     * Converts all offsets of the index, used to convert uncompressed offsets to virtual offsets
+     * @param offsets offset conversion
+     */
+    private void convertOffsets(LongUnaryOperator offsets) {
+        for (Reference reference : references.values()) {
+            for (List<Chunk> chunks : reference.bins.values()) {
+                for (int i = 0; i < chunks.size(); i++) {
+                    Chunk chunk = chunks.get(i);
+                    chunks.set(i, new Chunk(offsets.applyAsLong(chunk.start), offsets.applyAsLong(chunk.end)));
+                }
+            }
+            for (int w = 0; w < reference.linearIndex.length; w++) {
+                if (reference.linearIndex[w] != -1) {
+                    reference.linearIndex[w] = offsets.applyAsLong(reference.linearIndex[w]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads an index file
+     * @param indexFile index file
+     * @return index
+     * @throws IOException if the file can not be read or is not a tabix index
+     */
+    public static GTFIndex read(File indexFile) throws IOException {
+        GTFIndex index = new GTFIndex();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(indexFile), GTFCompression.BUFFER_SIZE)))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(MAGIC, magic)) {
+                throw new IOException(String.format("invalid index file '%s'", indexFile));
+            }
+            int referenceCount = readInt(in);
+            for (int i = 0; i < 6; i++) {
+                // format, seqname, start and end columns, meta character and skipped lines
+                readInt(in);
+            }
+            byte[] names = new byte[readInt(in)];
+            in.readFully(names);
+            int nameStart = 0;
+            for (int i = 0; i < names.length; i++) {
+                if (names[i] == 0) {
+                    String name = new String(names, nameStart, i - nameStart, StandardCharsets.UTF_8);
+                    index.references.put(name, new Reference());
+                    nameStart = i + 1;
+                }
+            }
+            if (index.references.size() != referenceCount) {
+                throw new IOException(String.format("invalid index file '%s'", indexFile));
+            }
+            for (Reference reference : index.references.values()) {
+                int binCount = readInt(in);
+                for (int b = 0; b < binCount; b++) {
+                    int bin = readInt(in);
+                    int chunkCount = readInt(in);
+                    List<Chunk> chunks = new ArrayList<>(chunkCount);
+                    for (int c = 0; c < chunkCount; c++) {
+                        chunks.add(new Chunk(readLong(in), readLong(in)));
+                    }
+                    reference.bins.put(bin, chunks);
+                }
+                reference.linearIndex = new long[readInt(in)];
+                for (int w = 0; w < reference.linearIndex.length; w++) {
+                    reference.linearIndex[w] = readLong(in);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Writes this index in the tabix format
+     * @param indexFile target file
+     * @throws IOException if the file can not be written
+     */
+    public void write(File indexFile) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GTFBGZFOutputStream(new FileOutputStream(indexFile)), GTFCompression.BUFFER_SIZE))) {
+            out.write(MAGIC);
+            writeInt(out, references.size());
+            writeInt(out, FORMAT_GENERIC);
+            writeInt(out, COLUMN_SEQNAME);
+            writeInt(out, COLUMN_START);
+            writeInt(out, COLUMN_END);
+            writeInt(out, '#');
+            writeInt(out, 0);
+            int namesLength = 0;
+            List<byte[]> names = new ArrayList<>(references.size());
+            for (String name : references.keySet()) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                names.add(bytes);
+                namesLength += bytes.length + 1;
+            }
+            writeInt(out, namesLength);
+            for (byte[] name : names) {
+                out.write(name);
+                out.write(0);
+            }
+            for (Reference reference : references.values()) {
+                writeInt(out, reference.bins.size());
+                for (Map.Entry<Integer, List<Chunk>> bin : reference.bins.entrySet()) {
+                    writeInt(out, bin.getKey());
+                    writeInt(out, bin.getValue().size());
+                    for (Chunk chunk : bin.getValue()) {
+                        writeLong(out, chunk.start);
+                        writeLong(out, chunk.end);
+                    }
+                }
+                writeInt(out, reference.linearIndex.length);
+                for (long offset : reference.linearIndex) {
+                    writeLong(out, offset);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the names of all indexed sequences in the order of the file
+     * @return sequence names
+     */
+    public Set<String> getSeqnames() {
+        return Collections.unmodifiableSet(references.keySet());
+    }
+
+    /**
+     * Returns the ranges of the file that may contain features overlapping a region.
+     * The ranges are sorted and do not overlap.
+     * @param region query region
+     * @return file ranges as virtual offsets
+     */
+    List<Chunk> query(GTFRegion region) {
+        Reference reference = references.get(region.getSeqname());
+        long begin = region.getStart() - 1;
+        long end = Math.min(region.getEnd(), MAX_POSITION);
+        if (reference == null || begin >= end) {
+            return Collections.emptyList();
+        }
+        long minOffset = 0;
+        if (reference.linearIndex.length != 0) {
+            minOffset = reference.linearIndex[(int) Math.min(begin >> MIN_SHIFT, reference.linearIndex.length - 1)];
+        }
+        List<Chunk> candidates = new ArrayList<>();
+        for (int bin : reg2bins((int) begin, (int) end)) {
+            List<Chunk> chunks = reference.bins.get(bin);
+            if (chunks == null) {
+                continue;
+            }
+            for (Chunk chunk : chunks) {
+                if (chunk.end > minOffset) {
+                    candidates.add(new Chunk(chunk.start, chunk.end));
+                }
+            }
+        }
+        candidates.sort(Comparator.comparingLong(c -> c.start));
+        List<Chunk> merged = new ArrayList<>(candidates.size());
+        for (Chunk chunk : candidates) {
+            Chunk last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && chunk.start <= last.end) {
+                last.end = Math.max(last.end, chunk.end);
+            } else {
+                merged.add(chunk);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Returns the smallest bin containing a range
+     * @param begin begin of the range (0-based, inclusive)
+     * @param end end of the range (exclusive)
+     * @return bin
+     */
+    static int reg2bin(int begin, int end) {
+        --end;
+        if (begin >> 14 == end >> 14) return ((1 << 15) - 1) / 7 + (begin >> 14);
+        if (begin >> 17 == end >> 17) return ((1 << 12) - 1) / 7 + (begin >> 17);
+        if (begin >> 20 == end >> 20) return ((1 << 9) - 1) / 7 + (begin >> 20);
+        if (begin >> 23 == end >> 23) return ((1 << 6) - 1) / 7 + (begin >> 23);
+        if (begin >> 26 == end >> 26) return ((1 << 3) - 1) / 7 + (begin >> 26);
+        return 0;
+    }
+
+    /**
+     * Returns all bins that may contain features overlapping a range
+     * @param begin begin of the range (0-based, inclusive)
+     * @param end end of the range (exclusive)
+     * @return bins
+     */
+    static List<Integer> reg2bins(int begin, int end) {
+        List<Integer> bins = new ArrayList<>();
+        --end;
+        bins.add(0);
+        for (int k = 1 + (begin >> 26); k <= 1 + (end >> 26); ++k) bins.add(k);
+        for (int k = 9 + (begin >> 23); k <= 9 + (end >> 23); ++k) bins.add(k);
+        for (int k = 73 + (begin >> 20); k <= 73 + (end >> 20); ++k) bins.add(k);
+        for (int k = 585 + (begin >> 17); k <= 585 + (end >> 17); ++k) bins.add(k);
+        for (int k = 4681 + (begin >> 14); k <= 4681 + (end >> 14); ++k) bins.add(k);
+        return bins;
+    }
+
+    private static int readInt(DataInputStream in) throws IOException {
+        return Integer.reverseBytes(in.readInt());
+    }
+
+    private static long readLong(DataInputStream in) throws IOException {
+        return Long.reverseBytes(in.readLong());
+    }
+
+    private static void writeInt(DataOutputStream out, int value) throws IOException {
+        out.writeInt(Integer.reverseBytes(value));
+    }
+
+    private static void writeLong(DataOutputStream out, long value) throws IOException {
+        out.writeLong(Long.reverseBytes(value));
+    }
+
+    /**
+     * Indexes uncompressed GTF data while it is written to a BGZF stream.
+     * Features are recorded with uncompressed offsets that are converted to virtual offsets
+     * once all blocks are compressed.
+     */
+    static final class Indexer {
+        private final GTFIndex index = new GTFIndex();
+        private final IndexBuilder builder = index.new IndexBuilder();
+        private long offset = 0;
+
+        /**
+         * Adds uncompressed data following the previously added data
+         * @param data uncompressed data
+         * @param off start of the data
+         * @param len length of the data
+         * @throws IOException if the data is not sorted or contains invalid coordinates
+         */
+        void add(byte[] data, int off, int len) throws IOException {
+            for (int i = off; i < off + len; i++) {
+                builder.add(data[i], offset, offset + 1);
+                offset++;
+            }
+        }
+
+        /**
+         * Completes the index
+         * @param virtualOffsets conversion of uncompressed offsets to virtual offsets
+         * @return index
+         * @throws IOException if the last line is invalid
+         */
+        GTFIndex finish(LongUnaryOperator virtualOffsets) throws IOException {
+            builder.finish(offset);
+            index.convertOffsets(virtualOffsets);
+            return index;
+        }
+    }
+
+    /**
+     * Range of a BGZF file between two virtual offsets
+     */
+    static final class Chunk {
+        final long start;
+        long end;
+
+        Chunk(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Bins and linear index of a single sequence
+     */
+    private static class Reference {
+        private final Map<Integer, List<Chunk>> bins = new TreeMap<>();
+        private long[] linearIndex = new long[0];
+
+        private void add(int begin, int end, long startOffset, long endOffset) {
+            List<Chunk> chunks = bins.computeIfAbsent(reg2bin(begin, end), k -> new ArrayList<>(2));
+            Chunk last = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+            if (last != null && last.end == startOffset) {
+                last.end = endOffset;
+            } else {
+                chunks.add(new Chunk(startOffset, endOffset));
+            }
+            int lastWindow = (end - 1) >> MIN_SHIFT;
+            if (linearIndex.length <= lastWindow) {
+                int length = linearIndex.length;
+                linearIndex = Arrays.copyOf(linearIndex, Math.max(lastWindow + 1, length * 2));
+                Arrays.fill(linearIndex, length, linearIndex.length, -1);
+            }
+            for (int w = begin >> MIN_SHIFT; w <= lastWindow; w++) {
+                if (linearIndex[w] == -1) {
+                    linearIndex[w] = startOffset;
+                }
+            }
+        }
+
+        private void finish(int windows) {
+            linearIndex = Arrays.copyOf(linearIndex, windows);
+            for (int w = linearIndex.length - 2; w >= 0; w--) {
+                if (linearIndex[w] == -1) {
+                    linearIndex[w] = linearIndex[w + 1];
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits the uncompressed data into lines and adds the features to the index
+     */
+    private class IndexBuilder {
+        private byte[] line = new byte[1024];
+        private ByteBuffer lineBuffer = ByteBuffer.wrap(line);
+        private final GTFByteLine byteLine = new GTFByteLine();
+        private int lineLength = 0;
+        private boolean lineStarted = false;
+        private long lineStart = 0;
+        private int lineNumber = 0;
+        private Reference reference = null;
+        private String seqname = null;
+        private int maxEnd = 0;
+        private long previousStart = 0;
+
+        private void add(byte b, long offset, long nextOffset) throws IOException {
+            if (!lineStarted) {
+                lineStart = offset;
+                lineStarted = true;
+            }
+            if (b == '\n') {
+                addLine(nextOffset);
+                return;
+            }
+            if (lineLength == line.length) {
+                line = Arrays.copyOf(line, line.length * 2);
+                lineBuffer = ByteBuffer.wrap(line);
+            }
+            line[lineLength++] = b;
+        }
+
+        private void finish(long endOffset) throws IOException {
+            if (lineStarted && lineLength > 0) {
+                addLine(endOffset);
+            }
+            finishReference();
+        }
+
+        private void addLine(long lineEnd) throws IOException {
+            int length = lineLength;
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            lineLength = 0;
+            lineStarted = false;
+            lineNumber++;
+            byteLine.set(lineBuffer, 0, length);
+            if (GTFLineParser.isIgnored(byteLine)) {
+                return;
+            }
+            int seqnameEnd = indexOf(line, 0, length);
+            int startBegin = seqnameEnd;
+            for (int i = 0; i < 2 && startBegin != -1; i++) {
+                startBegin = indexOf(line, startBegin + 1, length);
+            }
+            int endBegin = startBegin == -1 ? -1 : indexOf(line, startBegin + 1, length);
+            int endEnd = endBegin == -1 ? -1 : indexOf(line, endBegin + 1, length);
+            if (endEnd == -1) {
+                throw new IOException(String.format("invalid gtf line %d", lineNumber));
+            }
+            long start = parsePosition(startBegin + 1, endBegin);
+            long end = parsePosition(endBegin + 1, endEnd);
+            if (start < 1 || end < start || end > MAX_POSITION) {
+                throw new IOException(String.format("invalid feature coordinates in line %d", lineNumber));
+            }
+            if (seqname == null || !matches(seqname, seqnameEnd)) {
+                finishReference();
+                seqname = new String(line, 0, seqnameEnd, StandardCharsets.UTF_8);
+                if (references.containsKey(seqname)) {
+                    throw new IOException(String.format(
+                            "gtf file is not sorted, seqname '%s' is not consecutive in line %d", seqname, lineNumber));
+                }
+                reference = new Reference();
+                references.put(seqname, reference);
+                previousStart = 0;
+                maxEnd = 0;
+            }
+            if (start < previousStart) {
+                throw new IOException(String.format("gtf file is not sorted by start in line %d", lineNumber));
+            }
+            previousStart = start;
+            maxEnd = (int) Math.max(maxEnd, end);
+            reference.add((int) start - 1, (int) end, lineStart, lineEnd);
+        }
+
+        private void finishReference() {
+            if (reference != null) {
+                reference.finish(((maxEnd - 1) >> MIN_SHIFT) + 1);
+            }
+        }
+
+        private boolean matches(String name, int length) {
+            if (name.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (name.charAt(i) != (line[i] & 0xFF)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private long parsePosition(int start, int end) throws IOException {
+            if (start == end || end - start > 18) {
+                throw new IOException(String.format("invalid position in line %d", lineNumber));
+            }
+            long value = 0;
+            for (int i = start; i < end; i++) {
+                int digit = line[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    throw new IOException(String.format("invalid position in line %d", lineNumber));
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+
+        private int indexOf(byte[] bytes, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (bytes[i] == '\t') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the lines within ranges of a BGZF compressed GTF file.
+ * The ranges are given as virtual offsets, e.g. by {@link GTFIndex}. Blocks between the ranges are skipped.
+ */
+class GTFIndexedLineSource implements GTFLineSource {
+    private static final byte[] EMPTY = new byte[0];
+
+    private final GTFBGZFBlockReader reader;
+    private final List<GTFIndex.Chunk> chunks;
+    private int chunkIndex = 0;
+    private byte[] block = EMPTY;
+    private long blockOffset = -1;
+    private int position = 0;
+    private byte[] line = new byte[1024];
+
+    GTFIndexedLineSource(File file, List<GTFIndex.Chunk> chunks) throws IOException {
+        this.reader = new GTFBGZFBlockReader(file);
+        this.chunks = chunks;
+    }
+
+    @Override
+    public CharSequence readLine() throws IOException {
+        while (chunkIndex < chunks.size()) {
+            GTFIndex.Chunk chunk = chunks.get(chunkIndex);
+            if (blockOffset == -1 || getVirtualOffset() < chunk.start) {
+                seek(chunk.start);
+            }
+            if (!fill() || getVirtualOffset() >= chunk.end) {
+                chunkIndex++;
+                continue;
+            }
+            return readLineBytes();
+        }
+        return null;
+    }
+
+    private long getVirtualOffset() {
+        return blockOffset << 16 | position;
+    }
+
+    private void seek(long virtualOffset) throws IOException {
+        long offset = virtualOffset >>> 16;
+        if (offset != blockOffset) {
+            reader.seek(offset);
+            if (!loadBlock()) {
+                return;
+            }
+        }
+        position = (int) (virtualOffset & 0xFFFF);
+    }
+
+    private boolean loadBlock() throws IOException {
+        GTFBGZFBlockReader.Block compressedBlock = reader.read();
+        if (compressedBlock == null) {
+            block = EMPTY;
+            blockOffset = reader.getOffset();
+            position = 0;
+            return false;
+        }
+        block = compressedBlock.inflate();
+        blockOffset = compressedBlock.offset;
+        position = 0;
+        return true;
+    }
+
+    /**
+     * Moves to the next block if the current block is exhausted
+     * @return <tt>false</tt> at the end of the file
+     */
+    private boolean fill() throws IOException {
+        while (position >= block.length) {
+            if (!loadBlock()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readLineBytes() throws IOException {
+        int length = 0;
+        while (fill()) {
+            byte b = block[position++];
+            if (b == '\n') {
+                break;
+            }
+            if (length == line.length) {
+                line = Arrays.copyOf(line, line.length * 2);
+            }
+            line[length++] = b;
+        }
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,410 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import de.unknownreality.dataframe.DataFrame;
+import de.unknownreality.dataframe.DataFrameColumn;
+import de.unknownreality.dataframe.DataFrameRuntimeException;
+import de.unknownreality.dataframe.Values;
+
+import java.util.*;
+import java.util.function.IntConsumer;
+
+/**
+ * Overlap index of the features of a GTF dataframe.
+ * Features are grouped by seqname and sorted by start. Each group is stored in primitive arrays forming an
+ * implicit augmented interval tree: the sorted array is interpreted as a balanced binary tree and each node
+ * stores the maximum end of its subtree.
+ * Queries return the dataframe row indices of overlapping features in the order of their start positions.
+ * The index is immutable and can be queried from multiple threads at once.
+ */
+public class GTFIntervalIndex {
+    private static final int LINEAR_SCAN_LEVEL = 3;
+
+    private final Map<String, Intervals> intervals;
+    private final int size;
+
+    private GTFIntervalIndex(Map<String, Intervals> intervals, int size) {
+        this.intervals = intervals;
+        this.size = size;
+    }
+
+    /**
+     * Creates an index of the features in a dataframe.
+     * The dataframe must contain the <tt>seqname</tt>, <tt>start</tt> and <tt>end</tt> GTF fields.
+     * The <tt>strand</tt> field is used for strand specific queries if present.
+     * Rows with NA coordinates are not indexed.
+     * @param dataFrame GTF dataframe
+     * @return interval index
+     */
+    public static GTFIntervalIndex create(DataFrame dataFrame) {
+        DataFrameColumn seqnameColumn = getColumn(dataFrame, GTFField.SEQNAME);
+        DataFrameColumn startColumn = getColumn(dataFrame, GTFField.START);
+        DataFrameColumn endColumn = getColumn(dataFrame, GTFField.END);
+        DataFrameColumn strandColumn = dataFrame.getHeader().contains(GTFField.STRAND.getName())
+                ? dataFrame.getColumn(GTFField.STRAND.getName()) : null;
+        Map<String, Builder> builders = new LinkedHashMap<>();
+        int size = 0;
+        for (int i = 0; i < dataFrame.size(); i++) {
+            Object seqname = seqnameColumn.get(i);
+            Object start = startColumn.get(i);
+            Object end = endColumn.get(i);
+            if (isNA(seqname) || isNA(start) || isNA(end)) {
+                continue;
+            }
+            Object strand = strandColumn == null ? null : strandColumn.get(i);
+            builders.computeIfAbsent(seqname.toString(), k -> new Builder())
+                    .add(i, ((Number) start).longValue(), ((Number) end).longValue(), toStrand(strand));
+            size++;
+        }
+        Map<String, Intervals> intervals = new HashMap<>();
+        for (Map.Entry<String, Builder> builder : builders.entrySet()) {
+            intervals.put(builder.getKey(), builder.getValue().build());
+        }
+        return new GTFIntervalIndex(intervals, size);
+    }
+
+    /**
+     * Returns the number of indexed features
+     * @return number of features
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the indexed seqnames
+     * @return seqnames
+     */
+    public Set<String> getSeqnames() {
+        return Collections.unmodifiableSet(intervals.keySet());
+    }
+
+    /**
+     * Returns the row indices of all features overlapping a region
+     * @param seqname sequence name
+     * @param start start position (1-based, inclusive)
+     * @param end end position (inclusive)
+     * @return row indices of overlapping features
+     */
+    public int[] overlaps(String seqname, long start, long end) {
+        return overlaps(seqname, start, end, null);
+    }
+
+    /**
+     * Returns the row indices of all features overlapping a region on a strand.
+     * Features without strand (<tt>.</tt>) match both strands.
+     * @param seqname sequence name
+     * @param start start position (1-based, inclusive)
+     * @param end end position (inclusive)
+     * @param strand <tt>+</tt> or <tt>-</tt>, <tt>null</tt> or <tt>.</tt> match features on both strands
+     * @return row indices of overlapping features
+     */
+    public int[] overlaps(String seqname, long start, long end, String strand) {
+        ResultCollector collector = new ResultCollector();
+        forEachOverlap(seqname, start, end, strand, collector);
+        return collector.toArray();
+    }
+
+    /**
+     * Returns the number of features overlapping a region on a strand
+     * @param seqname sequence name
+     * @param start start position (1-based, inclusive)
+     * @param end end position (inclusive)
+     * @param strand <tt>+</tt> or <tt>-</tt>, <tt>null</tt> or <tt>.</tt> match features on both strands
+     * @return number of overlapping features
+     */
+    public int countOverlaps(String seqname, long start, long end, String strand) {
+        return forEachOverlap(seqname, start, end, strand, null);
+    }
+
+    /**
+     * Passes the row indices of all features overlapping a region on a strand to a consumer
+     * @param seqname sequence name
+     * @param start start position (1-based, inclusive)
+     * @param end end position (inclusive)
+     * @param strand <tt>+</tt> or <tt>-</tt>, <tt>null</tt> or <tt>.</tt> match features on both strands
+     * @param consumer row index consumer, may be <tt>null</tt> to only count the overlaps
+     * @return number of overlapping features
+     */
+    public int forEachOverlap(String seqname, long start, long end, String strand, IntConsumer consumer) {
+        Intervals group = intervals.get(seqname);
+        if (group == null || end < start) {
+            return 0;
+        }
+        return group.query(start - 1, end, toStrand(strand), consumer);
+    }
+
+    /**
+     * Returns the overlapping features of multiple regions
+     * @param seqnames sequence names
+     * @param starts start positions (1-based, inclusive)
+     * @param ends end positions (inclusive)
+     * @param strands strands or <tt>null</tt> to match features on both strands
+     * @return row indices of overlapping features for each region
+     */
+    public int[][] overlaps(String[] seqnames, long[] starts, long[] ends, String[] strands) {
+        if (starts.length != seqnames.length || ends.length != seqnames.length
+                || (strands != null && strands.length != seqnames.length)) {
+            throw new IllegalArgumentException("all query arrays must have the same length");
+        }
+        int[][] result = new int[seqnames.length][];
+        ResultCollector collector = new ResultCollector();
+        for (int i = 0; i < seqnames.length; i++) {
+            collector.clear();
+            forEachOverlap(seqnames[i], starts[i], ends[i], strands == null ? null : strands[i], collector);
+            result[i] = collector.toArray();
+        }
+        return result;
+    }
+
+    private static DataFrameColumn getColumn(DataFrame dataFrame, GTFField field) {
+        if (!dataFrame.getHeader().contains(field.getName())) {
+            throw new DataFrameRuntimeException(String.format("dataframe does not contain column '%s'", field.getName()));
+        }
+        return dataFrame.getColumn(field.getName());
+    }
+
+    private static boolean isNA(Object value) {
+        return value == null || Values.NA.isNA(value);
+    }
+
+    private static byte toStrand(Object strand) {
+        if (strand == null) {
+            return '.';
+        }
+        String s = strand.toString();
+        return s.length() == 1 && (s.charAt(0) == '+' || s.charAt(0) == '-') ? (byte) s.charAt(0) : (byte) '.';
+    }
+
+    /**
+     * Features of a single seqname sorted by start.
+     * Starts are 0-based, ends exclusive.
+     */
+    private static class Intervals {
+        private final long[] starts;
+        private final long[] ends;
+        private final long[] maxEnds;
+        private final int[] rows;
+        private final byte[] strands;
+        private final int maxLevel;
+
+        private Intervals(long[] starts, long[] ends, int[] rows, byte[] strands) {
+            this.starts = starts;
+            this.ends = ends;
+            this.rows = rows;
+            this.strands = strands;
+            this.maxEnds = new long[starts.length];
+            this.maxLevel = index();
+        }
+
+        /**
+         * Computes the maximum end of each subtree.
+         * Nodes on level <tt>k</tt> are the indices with <tt>k</tt> trailing one bits.
+         * @return level of the root
+         */
+        private int index() {
+            int n = starts.length;
+            if (n == 0) {
+                return -1;
+            }
+            int lastIndex = 0;
+            long last = 0;
+            for (int i = 0; i < n; i += 2) {
+                lastIndex = i;
+                maxEnds[i] = last = ends[i];
+            }
+            int k;
+            for (k = 1; 1L << k <= n; k++) {
+                int x = 1 << (k - 1);
+                int first = (x << 1) - 1;
+                int step = x << 2;
+                for (int i = first; i < n; i += step) {
+                    long leftMax = maxEnds[i - x];
+                    long rightMax = i + x < n ? maxEnds[i + x] : last;
+                    maxEnds[i] = Math.max(ends[i], Math.max(leftMax, rightMax));
+                }
+                // move to the parent of the rightmost node
+                lastIndex = (lastIndex >> k & 1) != 0 ? lastIndex - x : lastIndex + x;
+                if (lastIndex < n && maxEnds[lastIndex] > last) {
+                    last = maxEnds[lastIndex];
+                }
+            }
+            return k - 1;
+        }
+
+        private int query(long start, long end, byte strand, IntConsumer consumer) {
+            int n = starts.length;
+            if (n == 0) {
+                return 0;
+            }
+            int count = 0;
+            int[] stackNodes = new int[64];
+            int[] stackLevels = new int[64];
+            boolean[] stackLeftDone = new boolean[64];
+            int t = 0;
+            stackNodes[t] = (1 << maxLevel) - 1;
+            stackLevels[t] = maxLevel;
+            stackLeftDone[t++] = false;
+            while (t > 0) {
+                int x = stackNodes[--t];
+                int k = stackLevels[t];
+                boolean leftDone = stackLeftDone[t];
+                if (k <= LINEAR_SCAN_LEVEL) {
+                    int i0 = x >> k << k;
+                    int i1 = (int) Math.min(n, i0 + (1L << (k + 1)) - 1);
+                    for (int i = i0; i < i1 && starts[i] < end; i++) {
+                        if (start < ends[i] && matches(i, strand)) {
+                            count++;
+                            if (consumer != null) {
+                                consumer.accept(rows[i]);
+                            }
+                        }
+                    }
+                } else if (!leftDone) {
+                    int left = x - (1 << (k - 1));
+                    stackNodes[t] = x;
+                    stackLevels[t] = k;
+                    stackLeftDone[t++] = true;
+                    if (left >= n || maxEnds[left] > start) {
+                        stackNodes[t] = left;
+                        stackLevels[t] = k - 1;
+                        stackLeftDone[t++] = false;
+                    }
+                } else if (x < n && starts[x] < end) {
+                    if (start < ends[x] && matches(x, strand)) {
+                        count++;
+                        if (consumer != null) {
+                            consumer.accept(rows[x]);
+                        }
+                    }
+                    stackNodes[t] = x + (1 << (k - 1));
+                    stackLevels[t] = k - 1;
+                    stackLeftDone[t++] = false;
+                }
+            }
+            return count;
+        }
+
+        private boolean matches(int i, byte strand) {
+            return strand == '.' || strands[i] == '.' || strands[i] == strand;
+        }
+    }
+
+    /**
+     * Collects the features of a seqname and sorts them by start
+     */
+    private static class Builder {
+        private long[] starts = new long[16];
+        private long[] ends = new long[16];
+        private int[] rows = new int[16];
+        private byte[] strands = new byte[16];
+        private int size = 0;
+
+        private void add(int row, long start, long end, byte strand) {
+            if (size == starts.length) {
+                int capacity = size * 2;
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                rows = Arrays.copyOf(rows, capacity);
+                strands = Arrays.copyOf(strands, capacity);
+            }
+            starts[size] = start - 1;
+            ends[size] = end;
+            rows[size] = row;
+            strands[size] = strand;
+            size++;
+        }
+
+        private Intervals build() {
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            sort(order, new int[size], 0, size);
+            long[] sortedStarts = new long[size];
+            long[] sortedEnds = new long[size];
+            int[] sortedRows = new int[size];
+            byte[] sortedStrands = new byte[size];
+            for (int i = 0; i < size; i++) {
+                int j = order[i];
+                sortedStarts[i] = starts[j];
+                sortedEnds[i] = ends[j];
+                sortedRows[i] = rows[j];
+                sortedStrands[i] = strands[j];
+            }
+            return new Intervals(sortedStarts, sortedEnds, sortedRows, sortedStrands);
+        }
+
+        /**
+         * Stable merge sort of positions by start
+         */
+        private void sort(int[] order, int[] buffer, int from, int to) {
+            if (to - from < 2) {
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            sort(order, buffer, from, middle);
+            sort(order, buffer, middle, to);
+            if (starts[order[middle - 1]] <= starts[order[middle]]) {
+                return;
+            }
+            System.arraycopy(order, from, buffer, from, to - from);
+            int left = from;
+            int right = middle;
+            for (int i = from; i < to; i++) {
+                if (right >= to || (left < middle && starts[buffer[left]] <= starts[buffer[right]])) {
+                    order[i] = buffer[left++];
+                } else {
+                    order[i] = buffer[right++];
+                }
+            }
+        }
+    }
+
+    /**
+     * Growable array of row indices
+     */
+    private static class ResultCollector implements IntConsumer {
+        private int[] values = new int[16];
+        private int size = 0;
+
+        @Override
+        public void accept(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        private void clear() {
+            size = 0;
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -24,174 +24,212 @@
 
 package de.unknownreality.dataframe.gtf;
 
-import de.unknownreality.dataframe.DataFrameColumn;
 import de.unknownreality.dataframe.DataFrameException;
 import de.unknownreality.dataframe.DataFrameRuntimeException;
-import de.unknownreality.dataframe.Values;
-import de.unknownreality.dataframe.csv.CSVIterator;
-import de.unknownreality.dataframe.filter.FilterPredicate;
-import de.unknownreality.dataframe.io.BufferedStreamIterator;
 import de.unknownreality.dataframe.io.ColumnInformation;
 import de.unknownreality.dataframe.io.DataIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.util.*;
 
 /**
  * Created by Alex on 17.06.2017.
  */
-public class GTFIterator extends BufferedStreamIterator<GTFRow> implements DataIterator<GTFRow> {
-    private static final Logger log = LoggerFactory.getLogger(CSVIterator.class);
-    private static final String[] IGNORE_PREFIXES = new String[]{"#","track","seqname"};
+public class GTFIterator implements DataIterator<GTFRow>, Iterator<GTFRow> {
+    private static final Logger log = LoggerFactory.getLogger(GTFIterator.class);
 
     private int lineNumber = 0;
     private int rowNumber = 0;
-    private GTFSettings settings;
-    private GTFHeader header = new GTFHeader();
+    private long skippedLineCount = 0;
+    private long filteredRowCount = 0;
+    private final GTFLineSource source;
+    private final GTFLineParser parser;
+    private final GTFLineParser decoder;
+    private final GTFSettings settings;
+    private final GTFParseMetrics metrics;
+    private final String[] reusedValues;
+    private final GTFReusableRow reusedRow;
+    private GTFRow next = null;
+    private boolean nextLoaded = false;
 
-    private List<ColumnInformation> columnInformations = new ArrayList<>();
-    private int columnCount;
-    private GTFRow bufferedRow = null;
-    private Set<Integer> gtfFieldIndices = new HashSet<>();
-    private Map<String,Integer> attributeIndexMap = new HashMap<>();
-    private FilterPredicate filter = null;
-
-    @SuppressWarnings("unchecked")
     public GTFIterator(BufferedReader reader, GTFSettings settings) {
-        super(reader);
+        this(new GTFReaderLineSource(reader), settings);
+    }
+
+    GTFIterator(GTFLineSource source, GTFSettings settings) {
         this.settings = settings;
-        this.filter = settings.getPreFilter();
-        List<GTFField> gtfFields;
-        if(settings.isAddAllGTFFields()){
-            gtfFields = Arrays.asList(GTFField.values());
-        }
-        else{
-            gtfFields = settings.getGtfFields();
-        }
-        columnCount = gtfFields.size() + settings.getAttributes().size();
-
-        Collections.sort(gtfFields, Comparator.comparingInt(o -> o.index));
-        int i = 0;
-        for(GTFField gtfField : gtfFields){
-            gtfFieldIndices.add(gtfField.index);
-            header.add(gtfField.name,gtfField.column.getClass(),gtfField.column.getType());
-            columnInformations.add(new ColumnInformation(
-                 i++,
-                 gtfField.name,
-                 gtfField.column.getType()
-            ));
-        }
+        this.metrics = GTFParseMetrics.create(settings);
+        this.source = GTFMeteredLineSource.wrap(source, metrics);
+        this.parser = new GTFLineParser(settings);
+        this.parser.setMetrics(metrics);
+        this.decoder = settings.isLazy() ? new GTFLineParser(settings) : null;
+        boolean reuseRows = settings.isReuseRows() && !settings.isLazy();
+        this.reusedValues = reuseRows ? new String[parser.getColumnCount()] : null;
+        this.reusedRow = reuseRows ? new GTFReusableRow(parser.getHeader(), reusedValues) : null;
+    }
 
-        for(Map.Entry<String, DataFrameColumn> attribute : settings.getAttributes().entrySet()){
-            header.add(attribute.getKey(),
-                    attribute.getValue().getClass(),attribute.getValue().getType());
-            attributeIndexMap.put(attribute.getKey(), i);
-            columnInformations.add(new ColumnInformation(
-                    i++,
-                    attribute.getKey(),
-                    attribute.getValue().getType()
-            ));
+    @Override
+    public boolean hasNext() {
+        if(!nextLoaded){
+            next = getNext();
+            nextLoaded = true;
+            if(next == null && metrics != null){
+                metrics.finish(settings);
+            }
         }
-
-        loadNext();
+        return next != null;
     }
 
-
-
     @Override
     public GTFRow next() {
-        if(bufferedRow != null){
-            GTFRow nextRow = bufferedRow;
-            bufferedRow = null;
-            return nextRow;
+        if(!hasNext()){
+            throw new NoSuchElementException();
         }
-        return super.next();
+        nextLoaded = false;
+        return next;
     }
 
     /**
-     * Reads the gtf input stream and returns a gtf row
+     * Reads the gtf input stream and returns the next gtf row.
+     * Empty lines, comments and rows rejected by the pre-filter are skipped.
      *
      * @return next gtf row
      */
-    @Override
     protected GTFRow getNext() {
-
         try {
-            String line = getLine();
-            while (line != null && "".equals(line.trim())) {
-                line = getLine();
-            }
-            if (line == null) {
-                return null;
-            }
-            for (String prefix : IGNORE_PREFIXES) {
-                if (prefix != null && !"".equals(prefix) && line.startsWith(prefix)) {
-                    return getNext();
+            CharSequence line;
+            while ((line = source.readLine()) != null) {
+                if (GTFLineParser.isIgnored(line)) {
+                    skippedLineCount++;
+                    lineNumber++;
+                    continue;
                 }
-            }
-            String[] values = line.split("\t");
-            String[] rowValues = new String[columnCount];
-            if(values.length < 9){
-                throw new DataFrameRuntimeException(String.format("invalid column count %s < 9",values.length));
-            }
-            int idx = 0;
-            for(int i = 0; i < GTFField.values().length; i++){
-                if(settings.isAddAllGTFFields() || gtfFieldIndices.contains(i)){
-                    String val = values[i];
-                    if(".".equals(val) || "".equals(val)){
-                        rowValues[idx++] = Values.NA.toString();
-                        continue;
+                if (decoder != null) {
+                    GTFRow row = createLazyRow(line);
+                    lineNumber++;
+                    if (row != null) {
+                        return row;
                     }
-                    rowValues[idx++] = values[i];
-                }
-            }
-            if(values[8].isEmpty() || values[8].equals(".")){
-                return new GTFRow(header, rowValues, rowNumber++);
-            }
-            String[] attributeParts = GTFUtil.splitAttributes(values[8]);
-            if (attributeParts.length %2  != 0) {
-                throw new DataFrameException(String.format("error parsing attributes '%s' in line %d", values[8], lineNumber));
-            }
-            String key;
-            Integer attrIdx;
-            Set<String> missingAttributes = new HashSet<>(attributeIndexMap.keySet());
-            for(int i = 0; i < attributeParts.length; i+= 2){
-                key = attributeParts[i];
-                if((attrIdx = attributeIndexMap.get(key)) == null){
+                    filteredRowCount++;
                     continue;
                 }
-                rowValues[attrIdx] = attributeParts[i+1];
-                missingAttributes.remove(key);
-            }
-            for(String missingAttribute : missingAttributes){
-                attrIdx = attributeIndexMap.get(missingAttribute);
-                rowValues[attrIdx] = Values.NA.toString();
-
-            }
-            if(filter != null){
-                GTFRow row = new GTFRow(header, rowValues, rowNumber++);
-                if(!filter.valid(row)){
-                    return getNext();
+                String[] rowValues = reusedValues != null
+                        ? parser.parse(line, lineNumber, reusedValues)
+                        : parser.parse(line, lineNumber);
+                lineNumber++;
+                if (rowValues != null) {
+                    return createRow(rowValues);
                 }
+                filteredRowCount++;
             }
-            return new GTFRow(header, rowValues, rowNumber++);
-
-
+            closeSource();
+            return null;
         } catch (Exception e) {
             log.error("error reading file: {}:{}", lineNumber, e);
             close();
             throw new DataFrameRuntimeException(String.format("error reading gtf row: %d", lineNumber),e);
         }
-        finally {
-            lineNumber++;
+    }
+
+    /**
+     * Adds skipped lines and filtered rows that were read outside of {@link #getNext()}
+     * @param skippedLines number of skipped lines
+     * @param filteredRows number of filtered rows
+     */
+    protected void addSkipped(long skippedLines, long filteredRows) {
+        skippedLineCount += skippedLines;
+        filteredRowCount += filteredRows;
+    }
+
+    /**
+     * Adds the metrics of lines that were parsed outside of {@link #getNext()}
+     * @param parsedMetrics metrics of the parsed lines or <tt>null</tt>
+     */
+    void addMetrics(GTFParseMetrics parsedMetrics) {
+        if (metrics != null && parsedMetrics != null) {
+            metrics.add(parsedMetrics);
+        }
+    }
+
+    /**
+     * Returns the number of lines read so far that contain no data (empty lines, comments and track lines)
+     * @return number of skipped lines
+     */
+    public long getSkippedLineCount() {
+        return skippedLineCount;
+    }
+
+    /**
+     * Returns the number of rows read so far that were rejected by the pre-filter
+     * @return number of filtered rows
+     */
+    public long getFilteredRowCount() {
+        return filteredRowCount;
+    }
+
+    /**
+     * Returns the number of lines read so far by {@link #getNext()}
+     * @return number of read lines
+     */
+    protected int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Creates the next row from parsed row values.
+     * If rows are reused, the values are copied into the reused row unless they were parsed into it.
+     * @param rowValues row values
+     * @return gtf row
+     */
+    protected GTFRow createRow(String[] rowValues) {
+        if (reusedRow != null) {
+            if (rowValues != reusedValues) {
+                System.arraycopy(rowValues, 0, reusedValues, 0, reusedValues.length);
+            }
+            reusedRow.setIndex(rowNumber++);
+            return reusedRow;
+        }
+        return new GTFRow(parser.getHeader(), rowValues, rowNumber++);
+    }
+
+    /**
+     * Creates a lazy row from a data line. Only the values used by the pre-filter are parsed.
+     * @param line data line
+     * @return lazy row or <tt>null</tt> if the line does not pass the pre-filter
+     * @throws DataFrameException if the attributes can not be parsed
+     */
+    private GTFRow createLazyRow(CharSequence line) throws DataFrameException {
+        if (!parser.select(line, lineNumber)) {
+            return null;
+        }
+        return new GTFLazyRow(parser.getHeader(), parser.getSelectedValues(), rowNumber++,
+                line.toString(), parser.getFieldEnds(), lineNumber, decoder);
+    }
+
+    /**
+     * Closes the iterator and the underlying input. Rows that were not read yet are discarded.
+     */
+    public void close() {
+        closeSource();
+    }
+
+    /**
+     * Closes the input read by {@link #getNext()} once it is exhausted
+     */
+    protected void closeSource() {
+        try {
+            source.close();
+        } catch (IOException e) {
+            log.error("error closing gtf input", e);
         }
     }
 
     @Override
     public List<ColumnInformation> getColumnsInformation() {
-        return columnInformations;
+        return parser.getColumnInformations();
     }
 
     @Override
@@ -0,0 +1,116 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import de.unknownreality.dataframe.DataFrameException;
+import de.unknownreality.dataframe.DataFrameRuntimeException;
+
+/**
+ * GTF row that parses its values on first access.
+ * The row keeps the raw line and the positions of the 9 tab separated fields.
+ * A GTF field is converted to a string when it is accessed for the first time,
+ * the attributes are split when the first attribute is accessed.
+ * Values used by the pre-filter are already parsed.
+ * <p>
+ * Rows of one reader share a decoder, values can be accessed from multiple threads.
+ * </p>
+ */
+public class GTFLazyRow extends GTFRow {
+    private final String line;
+    private final int[] fieldEnds;
+    private final int lineNumber;
+    private final String[] values;
+    private final GTFLineParser decoder;
+
+    GTFLazyRow(GTFHeader header, String[] values, int index,
+               String line, int[] fieldEnds, int lineNumber, GTFLineParser decoder) {
+        super(header, values, index);
+        this.values = values;
+        this.line = line;
+        this.fieldEnds = fieldEnds;
+        this.lineNumber = lineNumber;
+        this.decoder = decoder;
+    }
+
+    @Override
+    public String get(int index) {
+        String value = values[index];
+        if (value == null) {
+            try {
+                synchronized (values) {
+                    if ((value = values[index]) == null) {
+                        decoder.decode(line, fieldEnds, lineNumber, values, index);
+                        value = values[index];
+                    }
+                }
+            } catch (DataFrameException e) {
+                throw new DataFrameRuntimeException(String.format("error reading gtf row: %d", lineNumber), e);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Returns the values of all columns. Values that were not accessed yet are parsed.
+     * @return row values
+     */
+    @Override
+    public String[] getValues() {
+        for (int i = 0; i < values.length; i++) {
+            get(i);
+        }
+        return values;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the value of a column was already parsed
+     * @param index column index
+     * @return <tt>true</tt> if the value is parsed
+     */
+    public boolean isParsed(int index) {
+        return values[index] != null;
+    }
+
+    /**
+     * Returns the line number of this row in the input
+     * @return line number
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Returns the raw GTF line of this row
+     * @return GTF line
+     */
+    public String getLine() {
+        return line;
+    }
+
+    @Override
+    public String toString() {
+        return line;
+    }
+}
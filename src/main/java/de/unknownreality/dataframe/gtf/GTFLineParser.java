@@ -0,0 +1,691 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import de.unknownreality.dataframe.DataFrameColumn;
+import de.unknownreality.dataframe.DataFrameException;
+import de.unknownreality.dataframe.DataFrameRuntimeException;
+import de.unknownreality.dataframe.Values;
+import de.unknownreality.dataframe.column.StringColumn;
+import de.unknownreality.dataframe.filter.FilterPredicate;
+import de.unknownreality.dataframe.io.ColumnInformation;
+
+import java.util.*;
+
+/**
+ * Converts single lines of a GTF file into row values according to {@link GTFSettings}.
+ * The header, column information and attribute projection are computed once per parser.
+ * A parser reuses internal buffers and must not be shared between threads.
+ */
+class GTFLineParser {
+    private static final String[] IGNORE_PREFIXES = new String[]{"#","track","seqname"};
+    private static final String NA_VALUE = Values.NA.toString();
+
+    private final GTFSettings settings;
+    private final GTFHeader header = new GTFHeader();
+    private final List<ColumnInformation> columnInformations = new ArrayList<>();
+    private final List<Class<? extends DataFrameColumn>> columnClasses = new ArrayList<>();
+    private final int columnCount;
+    private final int gtfColumnCount;
+    private final GTFAttributeTokenizer attributeTokenizer;
+    private final int[] attributeColumns;
+    private final GTFAttributeSlots attributeSlots;
+    private final GTFStringCache[] dictionaries;
+    private final FilterPredicate filter;
+    private final FilterHeader filterHeader = new FilterHeader();
+    private final int[] columnFields;
+    private final boolean[] filterColumns;
+    private final String[] lineValues;
+    private final int[] fieldStarts = new int[9];
+    private final int[] fieldEnds = new int[9];
+    private final AttributeCollector attributeCollector;
+    private GTFRow filterRow = null;
+    private int parsedRows = 0;
+    private GTFParseMetrics metrics = null;
+
+    @SuppressWarnings("unchecked")
+    GTFLineParser(GTFSettings settings) {
+        this.settings = settings;
+        this.filter = settings.getPreFilter();
+        List<GTFField> gtfFields;
+        if(settings.isAddAllGTFFields()){
+            gtfFields = Arrays.asList(GTFField.values());
+        }
+        else{
+            gtfFields = new ArrayList<>(settings.getGtfFields());
+        }
+        columnCount = gtfFields.size() + settings.getAttributes().size();
+        columnFields = new int[columnCount];
+        filterColumns = new boolean[columnCount];
+        lineValues = new String[columnCount];
+
+        Collections.sort(gtfFields, Comparator.comparingInt(o -> o.index));
+        gtfColumnCount = gtfFields.size();
+        int i = 0;
+        for(GTFField gtfField : gtfFields){
+            columnFields[i] = gtfField.index;
+            header.add(gtfField.name,gtfField.column.getClass(),gtfField.column.getType());
+            filterHeader.add(gtfField.name,gtfField.column.getClass(),gtfField.column.getType());
+            columnClasses.add(gtfField.getColType());
+            columnInformations.add(new ColumnInformation(
+                    i++,
+                    gtfField.name,
+                    gtfField.column.getType()
+            ));
+        }
+
+        attributeTokenizer = new GTFAttributeTokenizer(settings.getAttributes().keySet());
+        attributeColumns = new int[attributeTokenizer.getKeyCount()];
+        attributeSlots = new GTFAttributeSlots(attributeTokenizer.getKeyCount());
+        int slot = 0;
+        for(Map.Entry<String, DataFrameColumn> attribute : settings.getAttributes().entrySet()){
+            header.add(attribute.getKey(),
+                    attribute.getValue().getClass(),attribute.getValue().getType());
+            filterHeader.add(attribute.getKey(),
+                    attribute.getValue().getClass(),attribute.getValue().getType());
+            columnFields[i] = -1;
+            columnClasses.add(attribute.getValue().getClass());
+            attributeColumns[slot++] = i;
+            columnInformations.add(new ColumnInformation(
+                    i++,
+                    attribute.getKey(),
+                    attribute.getValue().getType()
+            ));
+        }
+
+        dictionaries = new GTFStringCache[columnCount];
+        for(int c = 0; c < columnCount; c++){
+            GTFDictionary dictionary = settings.getDictionaries().get(columnInformations.get(c).getName());
+            if(dictionary != null && columnClasses.get(c) == StringColumn.class){
+                dictionaries[c] = new GTFStringCache(dictionary);
+            }
+        }
+        attributeCollector = settings.isAddAllAttributes() ? new AttributeCollector() : null;
+    }
+
+    GTFHeader getHeader() {
+        return header;
+    }
+
+    int getColumnCount() {
+        return columnCount;
+    }
+
+    /**
+     * Sets the metrics that record the timings and counters of the lines parsed by this parser
+     * @param metrics metrics or <tt>null</tt> to disable instrumentation
+     */
+    void setMetrics(GTFParseMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    List<ColumnInformation> getColumnInformations() {
+        return columnInformations;
+    }
+
+    /**
+     * Creates one column builder for each column of the resulting dataframe
+     * @return column builders
+     */
+    GTFColumnBuilder[] createColumnBuilders() {
+        GTFColumnBuilder[] columns = new GTFColumnBuilder[columnCount];
+        for(int i = 0; i < columnCount; i++){
+            columns[i] = GTFColumnBuilder.create(columnInformations.get(i).getName(), columnClasses.get(i),
+                    dictionaries[i]);
+        }
+        return columns;
+    }
+
+    /**
+     * Returns the column builders of attributes that were found by {@link #parse(CharSequence, int, GTFColumnBuilder[])}
+     * but are not contained in the settings. Only used if all attributes are added.
+     * All returned builders contain one value for each parsed row.
+     * @return column builders of found attributes in the order they first appeared
+     */
+    List<? extends GTFColumnBuilder> getFoundAttributeColumnBuilders() {
+        if(attributeCollector == null){
+            return Collections.emptyList();
+        }
+        for(GTFColumnBuilder column : attributeCollector.columns){
+            column.appendNA(parsedRows - column.size());
+        }
+        return attributeCollector.columns;
+    }
+
+    /**
+     * Returns true if a line contains no data and should be skipped (empty lines, comments and track lines)
+     * @param line input line
+     * @return <tt>true</tt> if the line should be skipped
+     */
+    static boolean isIgnored(CharSequence line) {
+        if(isBlank(line)){
+            return true;
+        }
+        for (String prefix : IGNORE_PREFIXES) {
+            if (startsWith(line, prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if a line contains only whitespace characters
+     * @param line input line
+     * @return <tt>true</tt> if the line is blank
+     */
+    static boolean isBlank(CharSequence line) {
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWith(CharSequence line, String prefix) {
+        if (line.length() < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line.charAt(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a data line into the values of the resulting row.
+     * Returns <tt>null</tt> if the row is rejected by the pre-filter.
+     * If a pre-filter is set, only the columns used by the filter are decoded before the filter is evaluated.
+     * @param line data line
+     * @param lineNumber line number used in error messages
+     * @return row values or <tt>null</tt> if the row does not pass the pre-filter
+     * @throws DataFrameException if the attributes can not be parsed
+     */
+    String[] parse(CharSequence line, int lineNumber) throws DataFrameException {
+        return parseValues(line, lineNumber, new String[columnCount]);
+    }
+
+    /**
+     * Parses a data line into an existing array. Values of the previous line are overwritten.
+     * Returns <tt>null</tt> if the row is rejected by the pre-filter.
+     * @param line data line
+     * @param lineNumber line number used in error messages
+     * @param rowValues array for the row values, see {@link #getColumnCount()}
+     * @return <tt>rowValues</tt> or <tt>null</tt> if the row does not pass the pre-filter
+     * @throws DataFrameException if the attributes can not be parsed
+     * @see #parse(CharSequence, int)
+     */
+    String[] parse(CharSequence line, int lineNumber, String[] rowValues) throws DataFrameException {
+        Arrays.fill(rowValues, null);
+        return parseValues(line, lineNumber, rowValues);
+    }
+
+    private String[] parseValues(CharSequence line, int lineNumber, String[] rowValues) throws DataFrameException {
+        long time = metrics != null ? System.nanoTime() : 0;
+        findFields(line);
+        if(metrics != null){
+            time = metrics.addTokenize(time);
+        }
+        if(filter != null){
+            boolean valid = evaluateFilter(line, lineNumber, rowValues);
+            if(metrics != null){
+                time = metrics.addFilter(time);
+            }
+            if(!valid){
+                if(metrics != null){
+                    metrics.addRow(true);
+                }
+                return null;
+            }
+        }
+        for(int column = 0; column < gtfColumnCount; column++){
+            if(rowValues[column] == null){
+                int start = fieldStarts[columnFields[column]];
+                int end = fieldEnds[columnFields[column]];
+                rowValues[column] = isNA(line, start, end) ? NA_VALUE : createString(line, start, end, column);
+            }
+        }
+        if(metrics != null){
+            time = metrics.addBuild(time);
+        }
+        if(attributeColumns.length != 0 && rowValues[attributeColumns[0]] == null){
+            parseAttributes(line, lineNumber, rowValues);
+        }
+        if(metrics != null){
+            metrics.addAttributes(time);
+            metrics.addRow(false);
+        }
+        return rowValues;
+    }
+
+    /**
+     * Selects a data line for lazy access of single values using {@link #getValue(CharSequence, int, int)}.
+     * Only the columns used by the pre-filter are parsed.
+     * @param line data line
+     * @param lineNumber line number used in error messages
+     * @return <tt>true</tt> if the line passes the pre-filter
+     * @throws DataFrameException if the attributes can not be parsed
+     */
+    boolean select(CharSequence line, int lineNumber) throws DataFrameException {
+        if(metrics == null){
+            findFields(line);
+            Arrays.fill(lineValues, null);
+            return filter == null || evaluateFilter(line, lineNumber, lineValues);
+        }
+        long time = System.nanoTime();
+        findFields(line);
+        Arrays.fill(lineValues, null);
+        time = metrics.addTokenize(time);
+        boolean valid = filter == null || evaluateFilter(line, lineNumber, lineValues);
+        if(filter != null){
+            metrics.addFilter(time);
+        }
+        metrics.addRow(!valid);
+        return valid;
+    }
+
+    /**
+     * Returns a value of the line last passed to {@link #select(CharSequence, int)}.
+     * Values are parsed on first access.
+     * @param line selected data line
+     * @param lineNumber line number used in error messages
+     * @param column column index
+     * @return column value
+     * @throws DataFrameException if the attributes can not be parsed
+     */
+    String getValue(CharSequence line, int lineNumber, int column) throws DataFrameException {
+        if(lineValues[column] == null){
+            parseColumn(line, lineNumber, lineValues, column);
+        }
+        return lineValues[column];
+    }
+
+    /**
+     * Returns the end of each of the 9 fields of the line last passed to {@link #select(CharSequence, int)}
+     * @return copy of the field ends
+     */
+    int[] getFieldEnds() {
+        return Arrays.copyOf(fieldEnds, fieldEnds.length);
+    }
+
+    /**
+     * Returns the values of the line last passed to {@link #select(CharSequence, int)} that were parsed so far.
+     * Values that are not parsed yet are <tt>null</tt>.
+     * @return copy of the parsed values
+     */
+    String[] getSelectedValues() {
+        return Arrays.copyOf(lineValues, lineValues.length);
+    }
+
+    /**
+     * Parses a single column of a line whose fields were already located.
+     * If the column is an attribute, all attributes are parsed.
+     * Calls are synchronized, a parser used for decoding should not be used for other lines.
+     * @param line data line
+     * @param lineFieldEnds end of each of the 9 fields, see {@link #getFieldEnds()}
+     * @param lineNumber line number used in error messages
+     * @param values row values, parsed values are set
+     * @param column column index
+     * @throws DataFrameException if the attributes can not be parsed
+     */
+    synchronized void decode(CharSequence line, int[] lineFieldEnds, int lineNumber, String[] values, int column)
+            throws DataFrameException {
+        for(int i = 0; i < 9; i++){
+            fieldStarts[i] = i == 0 ? 0 : lineFieldEnds[i - 1] + 1;
+            fieldEnds[i] = lineFieldEnds[i];
+        }
+        parseColumn(line, lineNumber, values, column);
+    }
+
+    /**
+     * Parses all requested attributes of a line into the row values.
+     */
+    private void parseAttributes(CharSequence line, int lineNumber, String[] rowValues) throws DataFrameException {
+        int attributesStart = fieldStarts[8];
+        int attributesEnd = fieldEnds[8];
+        if(isNA(line, attributesStart, attributesEnd)){
+            for(int attributeColumn : attributeColumns){
+                rowValues[attributeColumn] = NA_VALUE;
+            }
+            return;
+        }
+        int partCount = attributeTokenizer.tokenize(line, attributesStart, attributesEnd, attributeSlots);
+        if (partCount % 2 != 0) {
+            throw new DataFrameException(String.format("error parsing attributes '%s' in line %d",
+                    GTFUtil.substring(line, attributesStart, attributesEnd), lineNumber));
+        }
+        int found = 0;
+        int escaped = 0;
+        for(int slot = 0; slot < attributeColumns.length; slot++){
+            int column = attributeColumns[slot];
+            if(!attributeSlots.isFound(slot)){
+                rowValues[column] = NA_VALUE;
+                continue;
+            }
+            found++;
+            int start = attributeSlots.getStart(slot);
+            int end = attributeSlots.getEnd(slot);
+            if(attributeSlots.isEscaped(slot)){
+                escaped++;
+                String value = GTFAttributeTokenizer.unescape(line, start, end);
+                rowValues[column] = dictionaries[column] != null ? dictionaries[column].get(value) : value;
+            }
+            else{
+                rowValues[column] = createString(line, start, end, column);
+            }
+        }
+        if(metrics != null){
+            metrics.addAttributeSplit(found, escaped);
+        }
+    }
+
+    /**
+     * Parses a single column of a line into the row values.
+     * If the column is an attribute, all attributes are parsed.
+     */
+    private void parseColumn(CharSequence line, int lineNumber, String[] rowValues, int column)
+            throws DataFrameException {
+        int field = columnFields[column];
+        if(field == -1){
+            parseAttributes(line, lineNumber, rowValues);
+        }
+        else{
+            rowValues[column] = isNA(line, fieldStarts[field], fieldEnds[field])
+                    ? NA_VALUE
+                    : createString(line, fieldStarts[field], fieldEnds[field], column);
+        }
+    }
+
+    /**
+     * Evaluates the pre-filter. Only the columns accessed by the filter are parsed.
+     * The filter is evaluated on a row whose header records the accessed columns.
+     * If the filter accessed a column that was not parsed yet, the column is parsed and the filter
+     * is evaluated again. Columns used by the filter are remembered and parsed directly for the following rows.
+     * Filters that do not access columns by name get all columns.
+     * @param line data line
+     * @param lineNumber line number used in error messages
+     * @param rowValues row values, columns that are not parsed are <tt>null</tt>
+     * @return <tt>true</tt> if the row passes the filter
+     * @throws DataFrameException if the attributes can not be parsed
+     */
+    private boolean evaluateFilter(CharSequence line, int lineNumber, String[] rowValues) throws DataFrameException {
+        for(int c = 0; c < columnCount; c++){
+            if(filterColumns[c] && rowValues[c] == null){
+                parseColumn(line, lineNumber, rowValues, c);
+            }
+        }
+        while(true){
+            filterHeader.resetAccessed();
+            boolean valid = false;
+            RuntimeException error = null;
+            try {
+                valid = filter.valid(getFilterRow(rowValues));
+            } catch (RuntimeException e) {
+                error = e;
+            }
+            boolean complete = true;
+            for(int c = 0; c < columnCount; c++){
+                boolean required = filterHeader.isAccessed(c) || !filterHeader.isAnyAccessed();
+                if(required && rowValues[c] == null){
+                    complete = false;
+                    filterColumns[c] = true;
+                    parseColumn(line, lineNumber, rowValues, c);
+                }
+            }
+            if(complete){
+                if(error != null){
+                    throw error;
+                }
+                return valid;
+            }
+        }
+    }
+
+    /**
+     * Returns the row the pre-filter is evaluated on.
+     * The row is reused as long as the values are parsed into the same array.
+     */
+    private GTFRow getFilterRow(String[] rowValues) {
+        if(filterRow == null || filterRow.getValues() != rowValues){
+            // the row index is assigned once the row is accepted
+            filterRow = new GTFRow(filterHeader, rowValues, -1);
+        }
+        return filterRow;
+    }
+
+    /**
+     * Parses a data line and appends the values directly to column builders.
+     * Values of typed columns are parsed from the characters of the line without creating strings.
+     * If a pre-filter is set, the columns used by the filter are created as strings to evaluate the filter.
+     * If all attributes are added, attributes not contained in the settings are appended to sparse column builders
+     * returned by {@link #getFoundAttributeColumnBuilders()}.
+     * @param line data line
+     * @param lineNumber line number used in error messages
+     * @param columns column builders created by {@link #createColumnBuilders()}
+     * @return <tt>true</tt> if the row was added, <tt>false</tt> if it does not pass the pre-filter
+     * @throws DataFrameException if the attributes can not be parsed
+     */
+    boolean parse(CharSequence line, int lineNumber, GTFColumnBuilder[] columns) throws DataFrameException {
+        if(!select(line, lineNumber)){
+            return false;
+        }
+        long time = metrics != null ? System.nanoTime() : 0;
+        int row = parsedRows++;
+        for(int column = 0; column < gtfColumnCount; column++){
+            int start = fieldStarts[columnFields[column]];
+            int end = fieldEnds[columnFields[column]];
+            if(isNA(line, start, end)){
+                columns[column].appendNA();
+            }
+            else{
+                columns[column].append(line, start, end);
+            }
+        }
+        if(metrics != null){
+            time = metrics.addBuild(time);
+        }
+        int attributesStart = fieldStarts[8];
+        int attributesEnd = fieldEnds[8];
+        if(isNA(line, attributesStart, attributesEnd)){
+            for(int attributeColumn : attributeColumns){
+                columns[attributeColumn].appendNA();
+            }
+            if(metrics != null){
+                metrics.addAttributes(time);
+            }
+            return true;
+        }
+        if(attributeCollector != null){
+            attributeCollector.row = row;
+            attributeCollector.escapedValues = 0;
+            int partCount = attributeTokenizer.visit(line, attributesStart, attributesEnd, attributeCollector);
+            if (partCount % 2 != 0) {
+                throw new DataFrameException(String.format("error parsing attributes '%s' in line %d",
+                        GTFUtil.substring(line, attributesStart, attributesEnd), lineNumber));
+            }
+            if(metrics != null){
+                metrics.addAttributeSplit(partCount / 2, attributeCollector.escapedValues);
+            }
+        }
+        if(attributeColumns.length == 0){
+            if(metrics != null){
+                metrics.addAttributes(time);
+            }
+            return true;
+        }
+        int partCount = attributeTokenizer.tokenize(line, attributesStart, attributesEnd, attributeSlots);
+        if (partCount % 2 != 0) {
+            throw new DataFrameException(String.format("error parsing attributes '%s' in line %d",
+                    GTFUtil.substring(line, attributesStart, attributesEnd), lineNumber));
+        }
+        int found = 0;
+        int escaped = 0;
+        for(int slot = 0; slot < attributeColumns.length; slot++){
+            GTFColumnBuilder column = columns[attributeColumns[slot]];
+            if(!attributeSlots.isFound(slot)){
+                column.appendNA();
+                continue;
+            }
+            found++;
+            int start = attributeSlots.getStart(slot);
+            int end = attributeSlots.getEnd(slot);
+            if(attributeSlots.isEscaped(slot)){
+                escaped++;
+                column.appendString(GTFAttributeTokenizer.unescape(line, start, end));
+            }
+            else{
+                column.append(line, start, end);
+            }
+        }
+        if(metrics != null){
+            metrics.addAttributeSplit(found, escaped);
+            metrics.addAttributes(time);
+        }
+        return true;
+    }
+
+    /**
+     * Creates the string value of a column. Values of dictionary encoded columns are looked up in the dictionary.
+     */
+    private String createString(CharSequence line, int start, int end, int column) {
+        GTFStringCache dictionary = dictionaries[column];
+        return dictionary != null ? dictionary.get(line, start, end) : GTFUtil.substring(line, start, end);
+    }
+
+    /**
+     * Finds the start and end of the 9 tab separated fields of a line.
+     * Tabs after the 9th field are ignored.
+     * @param line input line
+     */
+    private void findFields(CharSequence line) {
+        int length = line.length();
+        int field = 0;
+        fieldStarts[0] = 0;
+        for(int i = 0; i < length; i++){
+            if(line.charAt(i) == '\t'){
+                fieldEnds[field++] = i;
+                if(field == 9){
+                    return;
+                }
+                fieldStarts[field] = i + 1;
+            }
+        }
+        if(field < 8){
+            throw new DataFrameRuntimeException(String.format("invalid column count %s < 9", field + 1));
+        }
+        fieldEnds[8] = length;
+    }
+
+    private static boolean isNA(CharSequence line, int start, int end) {
+        return start == end || (end - start == 1 && line.charAt(start) == '.');
+    }
+
+    /**
+     * Appends the values of attributes that are not contained in the settings to sparse column builders.
+     * A column builder is created when an attribute key appears for the first time, previous rows are NA.
+     */
+    private class AttributeCollector implements GTFAttributeTokenizer.AttributeVisitor {
+        private final GTFStringCache keys = new GTFStringCache(new GTFDictionary());
+        private final Map<String, Integer> keyColumns = new HashMap<>();
+        private final List<GTFColumnBuilder.SparseStringColumnBuilder> columns = new ArrayList<>();
+        private int row;
+        private int escapedValues;
+
+        AttributeCollector() {
+            for(String key : settings.getAttributes().keySet()){
+                keyColumns.put(keys.get(key), -1);
+            }
+        }
+
+        @Override
+        public void visit(CharSequence input, int keyStart, int keyEnd, boolean keyEscaped,
+                          int valueStart, int valueEnd, boolean valueEscaped) {
+            String key = keyEscaped
+                    ? keys.get(GTFAttributeTokenizer.unescape(input, keyStart, keyEnd))
+                    : keys.get(input, keyStart, keyEnd);
+            Integer column = keyColumns.get(key);
+            if(column == null){
+                GTFDictionary dictionary = settings.getDictionaries().get(key);
+                columns.add(new GTFColumnBuilder.SparseStringColumnBuilder(key,
+                        dictionary != null ? new GTFStringCache(dictionary) : null));
+                column = columns.size() - 1;
+                keyColumns.put(key, column);
+            }
+            if(column == -1){
+                return;
+            }
+            GTFColumnBuilder.SparseStringColumnBuilder builder = columns.get(column);
+            if(builder.size() > row){
+                // the last value of repeated attributes is used
+                builder.removeLast();
+            }
+            builder.appendNA(row - builder.size());
+            if(valueEscaped){
+                escapedValues++;
+                builder.appendString(GTFAttributeTokenizer.unescape(input, valueStart, valueEnd));
+            }
+            else{
+                builder.append(input, valueStart, valueEnd);
+            }
+        }
+    }
+
+    /**
+     * Header that records which columns are accessed by name
+     */
+    private static class FilterHeader extends GTFHeader {
+        private boolean[] accessed = new boolean[0];
+        private boolean anyAccessed = false;
+
+        @Override
+        public int getIndex(String name) {
+            int index = super.getIndex(name);
+            if(index >= 0 && index < size()){
+                if(accessed.length < size()){
+                    accessed = Arrays.copyOf(accessed, size());
+                }
+                accessed[index] = true;
+                anyAccessed = true;
+            }
+            return index;
+        }
+
+        void resetAccessed() {
+            Arrays.fill(accessed, false);
+            anyAccessed = false;
+        }
+
+        boolean isAccessed(int index) {
+            return index < accessed.length && accessed[index];
+        }
+
+        boolean isAnyAccessed() {
+            return anyAccessed;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads GTF lines from a memory mapped file.
+ * Line breaks are searched directly in the mapped buffer and lines are returned as reusable
+ * {@link GTFByteLine} views, no strings are created.
+ * Large files are mapped in segments that end at line breaks.
+ */
+class GTFMappedLineSource implements GTFLineSource {
+    private static final long MAX_SEGMENT_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+    private final long end;
+    private final GTFByteLine line = new GTFByteLine();
+    private MappedByteBuffer segment = null;
+    private long segmentStart;
+    private int position = 0;
+
+    /**
+     * Creates a line source for a whole file
+     * @param file input file
+     * @throws IOException if the file can not be opened
+     */
+    GTFMappedLineSource(File file) throws IOException {
+        this(file, 0, file.length());
+    }
+
+    /**
+     * Creates a line source for a part of a file. <tt>start</tt> must be the beginning of a line.
+     * @param file input file
+     * @param start start position (inclusive)
+     * @param end end position (exclusive)
+     * @throws IOException if the file can not be opened
+     */
+    GTFMappedLineSource(File file, long start, long end) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.segmentStart = start;
+        this.end = end;
+    }
+
+    @Override
+    public CharSequence readLine() throws IOException {
+        if ((segment == null || position >= segment.limit()) && !mapNextSegment()) {
+            return null;
+        }
+        int limit = segment.limit();
+        int lineStart = position;
+        int i = lineStart;
+        while (i < limit && segment.get(i) != '\n') {
+            i++;
+        }
+        position = i + 1;
+        if (i > lineStart && segment.get(i - 1) == '\r') {
+            i--;
+        }
+        line.set(segment, lineStart, i - lineStart);
+        return line;
+    }
+
+    private boolean mapNextSegment() throws IOException {
+        long next = segment == null ? segmentStart : segmentStart + segment.limit();
+        if (next >= end) {
+            return false;
+        }
+        long size = Math.min(MAX_SEGMENT_SIZE, end - next);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, next, size);
+        int limit = (int) size;
+        if (next + size < end) {
+            while (limit > 0 && buffer.get(limit - 1) != '\n') {
+                limit--;
+            }
+            if (limit == 0) {
+                throw new IOException(String.format("line at position %d exceeds %d bytes", next, MAX_SEGMENT_SIZE));
+            }
+        }
+        buffer.limit(limit);
+        segment = buffer;
+        segmentStart = next;
+        position = 0;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import java.io.IOException;
+
+/**
+ * Line source recording the number of lines, characters and the time spent reading lines in {@link GTFParseMetrics}
+ */
+class GTFMeteredLineSource implements GTFLineSource {
+    private final GTFLineSource source;
+    private final GTFParseMetrics metrics;
+
+    GTFMeteredLineSource(GTFLineSource source, GTFParseMetrics metrics) {
+        this.source = source;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Wraps a line source if metrics are collected
+     * @param source line source
+     * @param metrics metrics or <tt>null</tt>
+     * @return metered line source or <tt>source</tt> if <tt>metrics</tt> is <tt>null</tt>
+     */
+    static GTFLineSource wrap(GTFLineSource source, GTFParseMetrics metrics) {
+        return metrics == null ? source : new GTFMeteredLineSource(source, metrics);
+    }
+
+    @Override
+    public CharSequence readLine() throws IOException {
+        long start = System.nanoTime();
+        CharSequence line = source.readLine();
+        long time = System.nanoTime() - start;
+        if (line != null) {
+            metrics.addLine(line.length(), GTFLineParser.isIgnored(line), time);
+        }
+        return line;
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import de.unknownreality.dataframe.DataFrameRuntimeException;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Counters and per-phase timings of parsing GTF data.
+ * <p>
+ * Each load collects its metrics in its own instance that is passed to the {@link GTFParseListener listeners}
+ * when the load is complete. A metrics instance can itself be added as listener to sum up the metrics of all loads
+ * and can be registered as JMX MBean using {@link #register(String)}.
+ * </p>
+ * Timings are measured per line and only if a listener is added:
+ * <ul>
+ * <li><tt>read</tt>: reading and decoding lines from the input</li>
+ * <li><tt>tokenize</tt>: locating the tab separated fields</li>
+ * <li><tt>filter</tt>: evaluating the pre-filter</li>
+ * <li><tt>attributes</tt>: splitting the attributes field and extracting attribute values</li>
+ * <li><tt>build</tt>: creating field values or appending them to columns</li>
+ * </ul>
+ * Values of lazy rows and record views that are accessed after the load are not included.
+ */
+public class GTFParseMetrics implements GTFParseListener, GTFParseMetricsMBean {
+    private long loads;
+    private long lines;
+    private long characters;
+    private long skippedLines;
+    private long rows;
+    private long filteredRows;
+    private long readNanos;
+    private long tokenizeNanos;
+    private long filterNanos;
+    private long attributeNanos;
+    private long buildNanos;
+    private long attributeSplits;
+    private long attributeValues;
+    private long escapedAttributeValues;
+
+    /**
+     * Creates the metrics of a new load
+     * @param settings gtf settings
+     * @return metrics or <tt>null</tt> if no listener is added to the settings
+     */
+    static GTFParseMetrics create(GTFSettings settings) {
+        return settings.getParseListeners().isEmpty() ? null : new GTFParseMetrics();
+    }
+
+    /**
+     * Completes a load and notifies the listeners of the settings
+     * @param settings gtf settings
+     */
+    void finish(GTFSettings settings) {
+        List<GTFParseListener> listeners = settings.getParseListeners();
+        loads = 1;
+        for (GTFParseListener listener : listeners) {
+            listener.parsed(this);
+        }
+    }
+
+    void addLine(int length, boolean ignored, long nanos) {
+        lines++;
+        characters += length + 1;
+        readNanos += nanos;
+        if (ignored) {
+            skippedLines++;
+        }
+    }
+
+    void addRow(boolean filtered) {
+        if (filtered) {
+            filteredRows++;
+        } else {
+            rows++;
+        }
+    }
+
+    long addTokenize(long start) {
+        long time = System.nanoTime();
+        tokenizeNanos += time - start;
+        return time;
+    }
+
+    long addFilter(long start) {
+        long time = System.nanoTime();
+        filterNanos += time - start;
+        return time;
+    }
+
+    long addAttributes(long start) {
+        long time = System.nanoTime();
+        attributeNanos += time - start;
+        return time;
+    }
+
+    long addBuild(long start) {
+        long time = System.nanoTime();
+        buildNanos += time - start;
+        return time;
+    }
+
+    void addAttributeSplit(int values, int escapedValues) {
+        attributeSplits++;
+        attributeValues += values;
+        escapedAttributeValues += escapedValues;
+    }
+
+    /**
+     * Adds the metrics of a load
+     * @param metrics metrics of a load
+     */
+    @Override
+    public void parsed(GTFParseMetrics metrics) {
+        add(metrics);
+    }
+
+    /**
+     * Adds all counters and timings of other metrics to this metrics
+     * @param metrics other metrics
+     */
+    public synchronized void add(GTFParseMetrics metrics) {
+        synchronized (metrics) {
+            loads += metrics.loads;
+            lines += metrics.lines;
+            characters += metrics.characters;
+            skippedLines += metrics.skippedLines;
+            rows += metrics.rows;
+            filteredRows += metrics.filteredRows;
+            readNanos += metrics.readNanos;
+            tokenizeNanos += metrics.tokenizeNanos;
+            filterNanos += metrics.filterNanos;
+            attributeNanos += metrics.attributeNanos;
+            buildNanos += metrics.buildNanos;
+            attributeSplits += metrics.attributeSplits;
+            attributeValues += metrics.attributeValues;
+            escapedAttributeValues += metrics.escapedAttributeValues;
+        }
+    }
+
+    /**
+     * Resets all counters and timings
+     */
+    @Override
+    public synchronized void reset() {
+        loads = lines = characters = skippedLines = rows = filteredRows = 0;
+        readNanos = tokenizeNanos = filterNanos = attributeNanos = buildNanos = 0;
+        attributeSplits = attributeValues = escapedAttributeValues = 0;
+    }
+
+    /**
+     * Registers these metrics as MBean at the platform MBean server.
+     * The object name is <tt>de.unknownreality.dataframe.gtf:type=GTFParseMetrics,name=<i>name</i></tt>.
+     * @param name name of the metrics
+     * @return object name of the registered MBean
+     */
+    public ObjectName register(String name) {
+        try {
+            ObjectName objectName = getObjectName(name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new DataFrameRuntimeException(String.format("error registering gtf parse metrics '%s'", name), e);
+        }
+    }
+
+    /**
+     * Unregisters the MBean registered by {@link #register(String)}
+     * @param name name of the metrics
+     */
+    public void unregister(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(getObjectName(name));
+        } catch (JMException e) {
+            throw new DataFrameRuntimeException(String.format("error unregistering gtf parse metrics '%s'", name), e);
+        }
+    }
+
+    private static ObjectName getObjectName(String name) throws JMException {
+        return new ObjectName(GTFParseMetrics.class.getPackage().getName()
+                + ":type=GTFParseMetrics,name=" + ObjectName.quote(name));
+    }
+
+    /**
+     * Returns the number of completed loads
+     * @return number of loads
+     */
+    @Override
+    public synchronized long getLoadCount() {
+        return loads;
+    }
+
+    /**
+     * Returns the number of lines read, including comments and filtered rows
+     * @return number of lines
+     */
+    @Override
+    public synchronized long getLineCount() {
+        return lines;
+    }
+
+    /**
+     * Returns the number of characters consumed: the characters of all lines plus one per line terminator.
+     * This is the uncompressed file size only for ASCII files with <tt>\n</tt> line terminators,
+     * multi-byte UTF-8 characters and <tt>\r\n</tt> terminators are counted as one character.
+     * @return number of characters
+     */
+    @Override
+    public synchronized long getCharactersRead() {
+        return characters;
+    }
+
+    /**
+     * Returns the number of lines that contain no data (empty lines, comments and track lines)
+     * @return number of skipped lines
+     */
+    @Override
+    public synchronized long getSkippedLineCount() {
+        return skippedLines;
+    }
+
+    /**
+     * Returns the number of rows that passed the pre-filter
+     * @return number of rows
+     */
+    @Override
+    public synchronized long getRowCount() {
+        return rows;
+    }
+
+    /**
+     * Returns the number of rows rejected by the pre-filter
+     * @return number of filtered rows
+     */
+    @Override
+    public synchronized long getFilteredRowCount() {
+        return filteredRows;
+    }
+
+    @Override
+    public synchronized long getReadNanos() {
+        return readNanos;
+    }
+
+    @Override
+    public synchronized long getTokenizeNanos() {
+        return tokenizeNanos;
+    }
+
+    @Override
+    public synchronized long getFilterNanos() {
+        return filterNanos;
+    }
+
+    @Override
+    public synchronized long getAttributeNanos() {
+        return attributeNanos;
+    }
+
+    @Override
+    public synchronized long getBuildNanos() {
+        return buildNanos;
+    }
+
+    /**
+     * Returns the number of attribute fields that were split into keys and values
+     * @return number of split attribute fields
+     */
+    @Override
+    public synchronized long getAttributeSplitCount() {
+        return attributeSplits;
+    }
+
+    /**
+     * Returns the number of attribute values extracted from split attribute fields
+     * @return number of attribute values
+     */
+    @Override
+    public synchronized long getAttributeValueCount() {
+        return attributeValues;
+    }
+
+    /**
+     * Returns the number of attribute values that contained escape sequences and were copied to unescape them
+     * @return number of escaped attribute values
+     */
+    @Override
+    public synchronized long getEscapedAttributeValueCount() {
+        return escapedAttributeValues;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("lines=%d, characters=%d, skipped=%d, rows=%d, filtered=%d, read=%dms, tokenize=%dms, " +
+                        "filter=%dms, attributes=%dms, build=%dms, attributeSplits=%d, attributeValues=%d, " +
+                        "escapedAttributeValues=%d",
+                lines, characters, skippedLines, rows, filteredRows, readNanos / 1000000, tokenizeNanos / 1000000,
+                filterNanos / 1000000, attributeNanos / 1000000, buildNanos / 1000000,
+                attributeSplits, attributeValues, escapedAttributeValues);
+    }
+}
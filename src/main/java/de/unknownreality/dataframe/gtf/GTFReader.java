@@ -24,10 +24,25 @@
 
 package de.unknownreality.dataframe.gtf;
 
+import de.unknownreality.dataframe.DataFrame;
+import de.unknownreality.dataframe.DataFrameRuntimeException;
 import de.unknownreality.dataframe.io.DataReader;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Created by Alex on 17.06.2017.
@@ -39,8 +54,267 @@ public class GTFReader extends DataReader<GTFRow, GTFIterator> {
         this.settings = settings;
     }
 
+    GTFSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Reads a GTF file. If the parallelism of the settings is greater than 1, the file is parsed in parallel.
+     * If memory mapping is enabled, the file is memory mapped instead of being read by a reader.
+     * Gzip and BGZF compressed files are detected and decompressed. Compressed files are always parsed sequentially,
+     * BGZF blocks are decompressed in parallel if the parallelism is greater than 1.
+     * If a region is set and the file is indexed, only the indexed blocks containing the region are read.
+     * If all attributes are added, the attribute keys of the file are collected before the rows are read.
+     * @param file input file
+     * @return gtf iterator
+     */
+    @Override
+    public GTFIterator load(File file){
+        GTFSettings fileSettings = getRowSettings(file);
+        try {
+            if(fileSettings.getRegion() != null){
+                return new GTFIterator(openLineSource(file), fileSettings);
+            }
+            if(GTFCompression.isCompressed(file)){
+                return new GTFIterator(openCompressed(file), fileSettings);
+            }
+            if(fileSettings.getParallelism() > 1 && !fileSettings.isLazy()){
+                return GTFChunkedIterator.create(file, fileSettings);
+            }
+            return new GTFIterator(openFile(file), fileSettings);
+        } catch (IOException e) {
+            throw new DataFrameRuntimeException(String.format("error reading gtf file '%s'", file), e);
+        }
+    }
+
     @Override
     public GTFIterator load(Reader reader){
-        return new GTFIterator(new BufferedReader(reader), settings);
+        return new GTFIterator(openLineSource(reader), getRowSettings());
+    }
+
+    /**
+     * Loads a GTF file directly into a dataframe.
+     * In contrast to {@link DataFrame#load(File, de.unknownreality.dataframe.io.DataReader)},
+     * no intermediate rows are created. Numeric fields and attributes are parsed directly from the input into
+     * primitive arrays. If memory mapping is enabled, the file is memory mapped.
+     * Gzip and BGZF compressed files are decompressed.
+     * If all attributes are added, a sparse column is created for each attribute when it first appears.
+     * If caching is enabled, the columns are read from the cache file of the GTF file if it is valid,
+     * otherwise the cache file is written after the GTF file was parsed.
+     * @param file input file
+     * @return dataframe containing the selected fields and attributes
+     */
+    public DataFrame loadDataFrame(File file){
+        if(!settings.isCached()){
+            return createDataFrame(parseColumns(openLineSource(file)));
+        }
+        List<GTFColumnBuilder> columns = GTFCache.read(file, settings);
+        if(columns == null){
+            columns = parseColumns(openLineSource(file));
+            GTFCache.write(file, settings, columns);
+        }
+        return createDataFrame(columns);
+    }
+
+    /**
+     * Loads GTF data directly into a dataframe without creating intermediate rows.
+     * @param reader input reader
+     * @return dataframe containing the selected fields and attributes
+     * @see #loadDataFrame(File)
+     */
+    public DataFrame loadDataFrame(Reader reader){
+        return createDataFrame(parseColumns(openLineSource(reader)));
+    }
+
+    /**
+     * Streams the records of a GTF file to a consumer without creating a dataframe or rows.
+     * The selected GTF fields, attributes and the pre-filter of the settings are applied.
+     * The same {@link GTFRecordView} instance is passed for all records.
+     * If memory mapping is enabled, the file is memory mapped.
+     * @param file input file
+     * @param consumer record consumer
+     * @return number of records passed to the consumer
+     */
+    public int stream(File file, Consumer<? super GTFRecordView> consumer){
+        return stream(getRowSettings(file), openLineSource(file), consumer);
+    }
+
+    /**
+     * Streams the records of a reader to a consumer without creating a dataframe or rows.
+     * @param reader input reader
+     * @param consumer record consumer
+     * @return number of records passed to the consumer
+     * @see #stream(File, Consumer)
+     */
+    public int stream(Reader reader, Consumer<? super GTFRecordView> consumer){
+        return stream(getRowSettings(), openLineSource(reader), consumer);
+    }
+
+    /**
+     * Returns a lazy sequential stream of the records of a GTF file.
+     * The same {@link GTFRecordView} instance is returned for all records, use {@link GTFRecordView#toRow()}
+     * to keep records. The file is closed when the stream is exhausted or closed.
+     * @param file input file
+     * @return record stream
+     */
+    public Stream<GTFRecordView> stream(File file){
+        return stream(getRowSettings(file), openLineSource(file));
+    }
+
+    /**
+     * Returns a lazy sequential stream of the records of a reader.
+     * @param reader input reader
+     * @return record stream
+     * @see #stream(File)
+     */
+    public Stream<GTFRecordView> stream(Reader reader){
+        return stream(getRowSettings(), openLineSource(reader));
+    }
+
+    /**
+     * Returns the number of distinct values of all dictionary encoded columns.
+     * Dictionaries are shared by all files loaded with this reader (and by copies of its settings),
+     * the sizes are therefore cumulative over all loads since the reader was created
+     * or {@link #clearDictionaries()} was called.
+     * @return number of distinct values per column
+     */
+    public Map<String, Integer> getDictionarySizes(){
+        Map<String, Integer> sizes = new LinkedHashMap<>();
+        for(Map.Entry<String, GTFDictionary> dictionary : settings.getDictionaries().entrySet()){
+            sizes.put(dictionary.getKey(), dictionary.getValue().size());
+        }
+        return sizes;
+    }
+
+    /**
+     * Removes all values from the dictionaries of this reader.
+     * Interned values are otherwise kept for the lifetime of the reader.
+     * Rows of later loads no longer share instances with rows loaded before.
+     */
+    public void clearDictionaries(){
+        for(GTFDictionary dictionary : settings.getDictionaries().values()){
+            dictionary.clear();
+        }
+    }
+
+    private List<GTFColumnBuilder> parseColumns(GTFLineSource source){
+        GTFLineParser parser = new GTFLineParser(settings);
+        GTFColumnBuilder[] columns = parser.createColumnBuilders();
+        GTFParseMetrics metrics = GTFParseMetrics.create(settings);
+        parser.setMetrics(metrics);
+        int lineNumber = 0;
+        try (GTFLineSource lineSource = GTFMeteredLineSource.wrap(source, metrics)) {
+            CharSequence line;
+            while ((line = lineSource.readLine()) != null) {
+                if (!GTFLineParser.isIgnored(line)) {
+                    parser.parse(line, lineNumber, columns);
+                }
+                lineNumber++;
+            }
+        } catch (Exception e) {
+            throw new DataFrameRuntimeException(String.format("error reading gtf row: %d", lineNumber), e);
+        }
+        List<GTFColumnBuilder> allColumns = new ArrayList<>(Arrays.asList(columns));
+        allColumns.addAll(parser.getFoundAttributeColumnBuilders());
+        if(metrics != null){
+            metrics.finish(settings);
+        }
+        return allColumns;
+    }
+
+    private static DataFrame createDataFrame(List<GTFColumnBuilder> columns){
+        DataFrame dataFrame = DataFrame.create();
+        for (GTFColumnBuilder column : columns) {
+            dataFrame.addColumn(column.build());
+        }
+        return dataFrame;
+    }
+
+    /**
+     * Returns the settings used to read rows of a file.
+     * If all attributes are added, the attribute keys of the file are collected and added as <tt>String</tt> attributes.
+     */
+    private GTFSettings getRowSettings(File file){
+        if(!settings.isAddAllAttributes()){
+            return settings;
+        }
+        GTFSettings fileSettings = settings.copy();
+        fileSettings.setAddAllAttributes(false);
+        for(String key : GTFAttributeProfile.findKeys(file)){
+            if(!fileSettings.getAttributes().containsKey(key)){
+                fileSettings.addAttribute(key);
+            }
+        }
+        return fileSettings;
+    }
+
+    /**
+     * Returns the settings used to read rows of a reader.
+     * Rows of readers can not contain all attributes, since the keys are not known before reading.
+     */
+    private GTFSettings getRowSettings(){
+        if(settings.isAddAllAttributes()){
+            throw new DataFrameRuntimeException(
+                    "all attributes can only be read from files or using loadDataFrame(Reader)");
+        }
+        return settings;
+    }
+
+    private int stream(GTFSettings rowSettings, GTFLineSource source, Consumer<? super GTFRecordView> consumer){
+        GTFRecordSpliterator spliterator = new GTFRecordSpliterator(source, rowSettings);
+        try {
+            while (spliterator.tryAdvance(consumer)) {
+                // records are passed to the consumer
+            }
+        } finally {
+            spliterator.close();
+        }
+        return spliterator.getRecordCount();
+    }
+
+    private Stream<GTFRecordView> stream(GTFSettings rowSettings, GTFLineSource source){
+        GTFRecordSpliterator spliterator = new GTFRecordSpliterator(source, rowSettings);
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+    }
+
+    private GTFLineSource openLineSource(Reader reader){
+        GTFLineSource source = new GTFReaderLineSource(new BufferedReader(reader));
+        return settings.getRegion() == null ? source : new GTFRegionLineSource(source, settings.getRegion());
+    }
+
+    /**
+     * Opens the lines of a file. Compressed files are decompressed, memory mapping and the region are applied.
+     * @param file input file
+     * @return line source
+     */
+    GTFLineSource openLineSource(File file){
+        try {
+            GTFRegion region = settings.getRegion();
+            if(region == null){
+                return openFile(file);
+            }
+            File indexFile = GTFIndex.getIndexFile(file);
+            if(indexFile.exists()){
+                GTFIndex index = GTFIndex.read(indexFile);
+                return new GTFRegionLineSource(new GTFIndexedLineSource(file, index.query(region)), region);
+            }
+            return new GTFRegionLineSource(openFile(file), region);
+        } catch (IOException e) {
+            throw new DataFrameRuntimeException(String.format("error reading gtf file '%s'", file), e);
+        }
+    }
+
+    private GTFLineSource openFile(File file) throws IOException {
+        if(GTFCompression.isCompressed(file)){
+            return new GTFReaderLineSource(openCompressed(file));
+        }
+        return settings.isMemoryMapped()
+                ? new GTFMappedLineSource(file)
+                : new GTFReaderLineSource(new BufferedReader(new FileReader(file)));
+    }
+
+    private BufferedReader openCompressed(File file) throws IOException {
+        return new BufferedReader(new InputStreamReader(
+                GTFCompression.open(file, settings.getParallelism()), StandardCharsets.UTF_8));
     }
 }
@@ -95,6 +95,114 @@ public class GTFReaderBuilder implements ReaderBuilder<GTFRow, GTFReader> {
         return this;
     }
 
+    /**
+     * Enables dictionary encoding of a <tt>String</tt> column.
+     * Each distinct value is stored only once, rows with the same value share one instance.
+     * This is useful for columns with few distinct values like <tt>seqname</tt> or <tt>gene_biotype</tt>.
+     * The number of distinct values can be obtained using {@link GTFReader#getDictionarySizes()},
+     * the dictionaries are shared by all loads of the reader until {@link GTFReader#clearDictionaries()} is called.
+     * @param name name of a GTF field or attribute
+     * @return <tt>self</tt> for method chaining
+     */
+    public GTFReaderBuilder withDictionaryEncoding(String name){
+        settings.addDictionaryEncoding(name);
+        return this;
+    }
+
+    /**
+     * Enables dictionary encoding of a GTF field.
+     * @param field gtf field
+     * @return <tt>self</tt> for method chaining
+     * @see #withDictionaryEncoding(String)
+     */
+    public GTFReaderBuilder withDictionaryEncoding(GTFField field){
+        return withDictionaryEncoding(field.getName());
+    }
+
+    /**
+     * Enables lazy parsing of rows. Each row keeps its raw line and the positions of the 9 fields,
+     * values are parsed when they are accessed for the first time and the attributes are split
+     * when the first attribute is accessed.
+     * This is useful if many columns are selected but only few are accessed.
+     * Lazy rows are always read sequentially, the parallelism is ignored.
+     * @param lazy <tt>true</tt> if rows should be parsed lazily
+     * @return <tt>self</tt> for method chaining
+     * @see GTFLazyRow
+     */
+    public GTFReaderBuilder withLazyParsing(boolean lazy){
+        settings.setLazy(lazy);
+        return this;
+    }
+
+    /**
+     * Enables reuse of rows. The iterator returns a single mutable row whose values are overwritten
+     * by each call of <tt>hasNext()</tt> or <tt>next()</tt>, so no row objects are created while reading.
+     * This is only safe for consumers that copy the values of a row before requesting the next one,
+     * such as {@link de.unknownreality.dataframe.DataFrame#load(java.io.File, de.unknownreality.dataframe.io.DataReader)}.
+     * Combined with dictionary encoding, most values are not created as new strings either.
+     * Consumers that keep rows, for example in collections, only see the values of the last row.
+     * {@link GTFWriter} copies or formats each row before reading the next one,
+     * other consumers must copy kept rows using {@link GTFReusableRow#copy()}.
+     * Lazy rows are not reused.
+     * @param reuseRows <tt>true</tt> if rows should be reused
+     * @return <tt>self</tt> for method chaining
+     * @see GTFReusableRow
+     */
+    public GTFReaderBuilder withRowReuse(boolean reuseRows){
+        settings.setReuseRows(reuseRows);
+        return this;
+    }
+
+    /**
+     * Adds a listener that is notified with the {@link GTFParseMetrics} of each completed load
+     * (lines read, skipped lines, filtered rows, bytes, per-phase timings and attribute counters).
+     * Parsing is only instrumented if at least one listener is added.
+     * A {@link GTFParseMetrics} instance can be added to sum up all loads and registered as JMX MBean.
+     * @param listener parse listener
+     * @return <tt>self</tt> for method chaining
+     */
+    public GTFReaderBuilder withParseListener(GTFParseListener listener){
+        settings.addParseListener(listener);
+        return this;
+    }
+
+    /**
+     * Enables the binary cache of GTF files loaded by {@link GTFReader#loadDataFrame(java.io.File)}.
+     * After a file was parsed, its columns are written to a cache file next to it (<tt>annotation.gtf.*.gtfcache</tt>).
+     * Following loads with the same fields, attributes, pre-filter and region read the cache file
+     * instead of parsing the GTF file, as long as the GTF file does not change.
+     * @param cached <tt>true</tt> if loaded files should be cached
+     * @return <tt>self</tt> for method chaining
+     */
+    public GTFReaderBuilder withCache(boolean cached){
+        settings.setCached(cached);
+        return this;
+    }
+
+    /**
+     * Adds all attributes found in the input as <tt>String</tt> columns.
+     * Attributes added using {@link #withAttribute(String, Class)} keep their column types.
+     * {@link GTFReader#loadDataFrame(java.io.File)} creates the columns while reading, rows without an attribute are NA.
+     * Reading rows from a file first collects the attribute keys of the file.
+     * @return <tt>self</tt> for method chaining
+     */
+    public GTFReaderBuilder withAllAttributes(){
+        settings.setAddAllAttributes(true);
+        return this;
+    }
+
+    /**
+     * Adds all attributes of a profile with the profiled column types.
+     * Low cardinality string attributes are dictionary encoded.
+     * @param profile attribute profile
+     * @return <tt>self</tt> for method chaining
+     * @see GTFAttributeProfile#applyTo(GTFSettings)
+     */
+    public GTFReaderBuilder withProfile(GTFAttributeProfile profile){
+        profile.applyTo(settings);
+        return this;
+    }
+
     public GTFReaderBuilder withPreFilter(String predicate){
         settings.setPreFilter(FilterPredicate.compile(predicate));
         return this;
@@ -105,6 +213,55 @@ public class GTFReaderBuilder implements ReaderBuilder<GTFRow, GTFReader> {
         return this;
     }
 
+    /**
+     * Sets the number of threads used to parse GTF files.
+     * Files are split into chunks at line boundaries that are parsed in parallel.
+     * The order of rows is the same as in the file. Streams are always read sequentially.
+     * @param parallelism number of threads
+     * @return <tt>self</tt> for method chaining
+     */
+    public GTFReaderBuilder withParallelism(int parallelism){
+        settings.setParallelism(parallelism);
+        return this;
+    }
+
+    /**
+     * Enables memory mapping of GTF files.
+     * Lines and fields are located directly in the mapped bytes and only selected fields are decoded.
+     * GTF files are expected to be ASCII encoded. Streams are always read using a reader.
+     * @param memoryMapped <tt>true</tt> if files should be memory mapped
+     * @return <tt>self</tt> for method chaining
+     */
+    public GTFReaderBuilder withMemoryMapping(boolean memoryMapped){
+        settings.setMemoryMapped(memoryMapped);
+        return this;
+    }
+
+    /**
+     * Only reads features overlapping a region.
+     * If a BGZF compressed file has a tabix index ({@link GTFIndex}), only the indexed blocks containing the
+     * region are read. Otherwise all lines are scanned.
+     * @param seqname name of the sequence
+     * @param start start position (1-based, inclusive)
+     * @param end end position (inclusive)
+     * @return <tt>self</tt> for method chaining
+     */
+    public GTFReaderBuilder withRegion(String seqname, long start, long end){
+        settings.setRegion(new GTFRegion(seqname, start, end));
+        return this;
+    }
+
+    /**
+     * Only reads features overlapping a region like <tt>chr7:55,000,000-55,300,000</tt>.
+     * @param region region string
+     * @return <tt>self</tt> for method chaining
+     * @see #withRegion(String, long, long)
+     */
+    public GTFReaderBuilder withRegion(String region){
+        settings.setRegion(GTFRegion.parse(region));
+        return this;
+    }
+
 
     @Override
     public GTFReader build() {
@@ -0,0 +1,109 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import de.unknownreality.dataframe.DataFrameException;
+import de.unknownreality.dataframe.DataFrameRuntimeException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator passing a reusable {@link GTFRecordView} for each record of a line source.
+ * Records are read sequentially, the line source is closed once all records are read.
+ */
+class GTFRecordSpliterator extends Spliterators.AbstractSpliterator<GTFRecordView> implements Closeable {
+    private final GTFLineSource source;
+    private final GTFLineParser parser;
+    private final GTFRecordView view;
+    private final GTFSettings settings;
+    private final GTFParseMetrics metrics;
+    private int lineNumber = 0;
+    private int index = 0;
+    private boolean closed = false;
+
+    GTFRecordSpliterator(GTFLineSource source, GTFSettings settings) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.settings = settings;
+        this.metrics = GTFParseMetrics.create(settings);
+        this.source = GTFMeteredLineSource.wrap(source, metrics);
+        this.parser = new GTFLineParser(settings);
+        this.parser.setMetrics(metrics);
+        this.view = new GTFRecordView(parser);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super GTFRecordView> action) {
+        if (closed) {
+            return false;
+        }
+        try {
+            CharSequence line;
+            while ((line = source.readLine()) != null) {
+                int currentLine = lineNumber++;
+                if (!GTFLineParser.isIgnored(line) && parser.select(line, currentLine)) {
+                    view.set(line, currentLine, index++);
+                    action.accept(view);
+                    return true;
+                }
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        } catch (IOException | DataFrameException e) {
+            close();
+            throw new DataFrameRuntimeException(String.format("error reading gtf row: %d", lineNumber - 1), e);
+        }
+        close();
+        if (metrics != null) {
+            metrics.finish(settings);
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of records passed to consumers
+     * @return number of records
+     */
+    int getRecordCount() {
+        return index;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            source.close();
+        } catch (IOException e) {
+            throw new DataFrameRuntimeException("error closing gtf input", e);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import de.unknownreality.dataframe.DataFrameException;
+import de.unknownreality.dataframe.DataFrameRuntimeException;
+import de.unknownreality.dataframe.Values;
+
+/**
+ * Reusable view on the current record of a streamed GTF file.
+ * The view only references the current line. Values are parsed on first access according to the
+ * {@link GTFSettings} of the reader.
+ * The same view instance is passed for all records and is only valid until the next record is read.
+ * Use {@link #toRow()} to keep the values of a record.
+ */
+public class GTFRecordView {
+    private final GTFLineParser parser;
+    private CharSequence line;
+    private int lineNumber;
+    private int index;
+
+    GTFRecordView(GTFLineParser parser) {
+        this.parser = parser;
+    }
+
+    void set(CharSequence line, int lineNumber, int index) {
+        this.line = line;
+        this.lineNumber = lineNumber;
+        this.index = index;
+    }
+
+    /**
+     * Returns the header containing the selected GTF fields and attributes
+     * @return header
+     */
+    public GTFHeader getHeader() {
+        return parser.getHeader();
+    }
+
+    /**
+     * Returns the number of selected columns
+     * @return number of columns
+     */
+    public int size() {
+        return parser.getHeader().size();
+    }
+
+    /**
+     * Returns the index of this record. Only records that pass the pre-filter are counted.
+     * @return record index
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the line number of this record in the input
+     * @return line number
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Returns the value of a column
+     * @param column column index
+     * @return column value
+     */
+    public String get(int column) {
+        try {
+            return parser.getValue(line, lineNumber, column);
+        } catch (DataFrameException e) {
+            throw new DataFrameRuntimeException(String.format("error reading gtf row: %d", lineNumber), e);
+        }
+    }
+
+    /**
+     * Returns the value of a GTF field or attribute
+     * @param name name of the GTF field or attribute
+     * @return column value
+     */
+    public String get(String name) {
+        return get(parser.getHeader().getIndex(name));
+    }
+
+    /**
+     * Returns the value of a GTF field
+     * @param field GTF field
+     * @return field value
+     */
+    public String get(GTFField field) {
+        return get(field.getName());
+    }
+
+    /**
+     * Returns <tt>true</tt> if a GTF field or attribute is NA
+     * @param name name of the GTF field or attribute
+     * @return <tt>true</tt> if the value is NA
+     */
+    public boolean isNA(String name) {
+        return Values.NA.isNA(get(name));
+    }
+
+    /**
+     * Returns <tt>true</tt> if a GTF field is NA
+     * @param field GTF field
+     * @return <tt>true</tt> if the value is NA
+     */
+    public boolean isNA(GTFField field) {
+        return isNA(field.getName());
+    }
+
+    /**
+     * Creates a row containing the values of this record
+     * @return new row
+     */
+    public GTFRow toRow() {
+        String[] values = new String[size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = get(i);
+        }
+        return new GTFRow(parser.getHeader(), values, index);
+    }
+
+    @Override
+    public String toString() {
+        return line == null ? "" : line.toString();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+/**
+ * Genomic region on a sequence. Coordinates are 1-based and inclusive, as in GTF files.
+ */
+public class GTFRegion {
+    private final String seqname;
+    private final long start;
+    private final long end;
+
+    /**
+     * Creates a region
+     * @param seqname name of the sequence
+     * @param start start position (1-based, inclusive)
+     * @param end end position (inclusive)
+     */
+    public GTFRegion(String seqname, long start, long end) {
+        if (start < 1 || end < start) {
+            throw new IllegalArgumentException(String.format("invalid region %s:%d-%d", seqname, start, end));
+        }
+        this.seqname = seqname;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Parses a region string like <tt>chr7:55,000,000-55,300,000</tt> or <tt>chr7</tt>.
+     * @param region region string
+     * @return parsed region
+     */
+    public static GTFRegion parse(String region) {
+        int colon = region.lastIndexOf(':');
+        if (colon == -1) {
+            return new GTFRegion(region, 1, Long.MAX_VALUE);
+        }
+        String seqname = region.substring(0, colon);
+        String range = region.substring(colon + 1).replace(",", "");
+        int dash = range.indexOf('-');
+        try {
+            if (dash == -1) {
+                return new GTFRegion(seqname, Long.parseLong(range), Long.MAX_VALUE);
+            }
+            return new GTFRegion(seqname, Long.parseLong(range.substring(0, dash)),
+                    Long.parseLong(range.substring(dash + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("invalid region '%s'", region), e);
+        }
+    }
+
+    public String getSeqname() {
+        return seqname;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * Returns <tt>true</tt> if a feature overlaps this region
+     * @param featureSeqname sequence of the feature
+     * @param featureStart start of the feature (inclusive)
+     * @param featureEnd end of the feature (inclusive)
+     * @return <tt>true</tt> if the feature overlaps this region
+     */
+    public boolean overlaps(String featureSeqname, long featureStart, long featureEnd) {
+        return seqname.equals(featureSeqname) && featureStart <= end && featureEnd >= start;
+    }
+
+    @Override
+    public String toString() {
+        return end == Long.MAX_VALUE ? seqname + ":" + start : seqname + ":" + start + "-" + end;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import java.io.IOException;
+
+/**
+ * Returns only the lines of a line source containing features that overlap a region.
+ * Ignored and malformed lines are passed to the parser.
+ */
+class GTFRegionLineSource implements GTFLineSource {
+    private final GTFLineSource source;
+    private final GTFRegion region;
+
+    GTFRegionLineSource(GTFLineSource source, GTFRegion region) {
+        this.source = source;
+        this.region = region;
+    }
+
+    @Override
+    public CharSequence readLine() throws IOException {
+        CharSequence line;
+        while ((line = source.readLine()) != null) {
+            if (GTFLineParser.isIgnored(line) || overlaps(line)) {
+                return line;
+            }
+        }
+        return null;
+    }
+
+    private boolean overlaps(CharSequence line) {
+        String seqname = region.getSeqname();
+        int seqnameEnd = indexOf(line, 0);
+        if (seqnameEnd != seqname.length()) {
+            return seqnameEnd == -1;
+        }
+        for (int i = 0; i < seqnameEnd; i++) {
+            if (line.charAt(i) != seqname.charAt(i)) {
+                return false;
+            }
+        }
+        int startBegin = seqnameEnd;
+        for (int i = 0; i < 2 && startBegin != -1; i++) {
+            startBegin = indexOf(line, startBegin + 1);
+        }
+        int endBegin = startBegin == -1 ? -1 : indexOf(line, startBegin + 1);
+        int endEnd = endBegin == -1 ? -1 : indexOf(line, endBegin + 1);
+        if (endEnd == -1) {
+            return true;
+        }
+        long start = parsePosition(line, startBegin + 1, endBegin);
+        long end = parsePosition(line, endBegin + 1, endEnd);
+        return start == -1 || end == -1 || (start <= region.getEnd() && end >= region.getStart());
+    }
+
+    private static long parsePosition(CharSequence line, int start, int end) {
+        if (start == end || end - start > 18) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = line.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int indexOf(CharSequence line, int from) {
+        for (int i = from; i < line.length(); i++) {
+            if (line.charAt(i) == '\t') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
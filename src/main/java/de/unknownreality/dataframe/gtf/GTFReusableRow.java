@@ -0,0 +1,66 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import java.util.Arrays;
+
+/**
+ * Mutable GTF row returned for all rows of a {@link GTFIterator} if row reuse is enabled.
+ * The values of the next row are parsed into the same array, so the row and its values are only valid
+ * until the next call of {@link GTFIterator#hasNext()} or {@link GTFIterator#next()}.
+ * Rows that are kept must be copied using {@link #copy()}.
+ *
+ * @see GTFReaderBuilder#withRowReuse(boolean)
+ */
+public class GTFReusableRow extends GTFRow {
+    private int index;
+
+    GTFReusableRow(GTFHeader header, String[] values) {
+        super(header, values, -1);
+        this.index = -1;
+    }
+
+    /**
+     * Sets the index of the current row. The values are parsed into the array passed to the constructor.
+     * @param index row index
+     */
+    void setIndex(int index) {
+        this.index = index;
+    }
+
+    @Override
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns an immutable copy of the current row
+     * @return copy of the row
+     */
+    public GTFRow copy() {
+        String[] values = getValues();
+        return new GTFRow(getHeader(), Arrays.copyOf(values, values.length), index);
+    }
+}
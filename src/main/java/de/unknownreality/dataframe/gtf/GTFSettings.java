@@ -41,7 +41,9 @@ import java.util.Map;
 public class GTFSettings implements FormatSettings {
     private List<GTFField> gtfFields = new ArrayList<>();
     private Map<String, DataFrameColumn> attributes = new LinkedHashMap<>();
+    private Map<String, GTFDictionary> dictionaries = new LinkedHashMap<>();
     private boolean addAllGTFFields = true;
+    private boolean addAllAttributes = false;
 
     public boolean isAddAllGTFFields() {
         return addAllGTFFields;
@@ -51,6 +53,20 @@ public class GTFSettings implements FormatSettings {
         this.addAllGTFFields = addAllGTFFields;
     }
 
+    public boolean isAddAllAttributes() {
+        return addAllAttributes;
+    }
+
+    /**
+     * Adds all attributes found in the input as <tt>String</tt> columns.
+     * Attributes added explicitly keep their column types, all other attributes are added in the order
+     * they first appear.
+     * @param addAllAttributes <tt>true</tt> if all attributes should be added
+     */
+    public void setAddAllAttributes(boolean addAllAttributes) {
+        this.addAllAttributes = addAllAttributes;
+    }
+
     public List<GTFField> getGtfFields() {
         return gtfFields;
     }
@@ -59,7 +75,27 @@ public class GTFSettings implements FormatSettings {
         return attributes;
     }
 
+    public Map<String, GTFDictionary> getDictionaries() {
+        return dictionaries;
+    }
+
+    /**
+     * Enables dictionary encoding of a <tt>String</tt> column (GTF field or attribute).
+     * Each distinct value of the column is stored only once.
+     * @param name column name
+     */
+    public void addDictionaryEncoding(String name){
+        dictionaries.computeIfAbsent(name, k -> new GTFDictionary());
+    }
+
     private FilterPredicate preFilter = null;
+    private int parallelism = 1;
+    private boolean memoryMapped = false;
+    private GTFRegion region = null;
+    private boolean cached = false;
+    private boolean lazy = false;
+    private boolean reuseRows = false;
+    private List<GTFParseListener> parseListeners = new ArrayList<>();
 
 
     public FilterPredicate getPreFilter() {
@@ -70,6 +106,121 @@ public class GTFSettings implements FormatSettings {
         this.preFilter = preFilter;
     }
 
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used to parse GTF files. Values greater than 1 enable parallel reading of files.
+     * Streams are always read sequentially.
+     * @param parallelism number of threads
+     */
+    public void setParallelism(int parallelism) {
+        if(parallelism < 1){
+            throw new IllegalArgumentException(String.format("invalid parallelism %d < 1", parallelism));
+        }
+        this.parallelism = parallelism;
+    }
+
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * Enables memory mapping of GTF files. Streams are always read using a reader.
+     * @param memoryMapped <tt>true</tt> if files should be memory mapped
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    public GTFRegion getRegion() {
+        return region;
+    }
+
+    /**
+     * Restricts reading to features overlapping a region. Indexed BGZF files are only read within the region.
+     * @param region region or <tt>null</tt> to read all features
+     */
+    public void setRegion(GTFRegion region) {
+        this.region = region;
+    }
+
+    public boolean isCached() {
+        return cached;
+    }
+
+    /**
+     * Enables the binary cache of GTF files loaded by {@link GTFReader#loadDataFrame(java.io.File)}.
+     * The cache is written next to the GTF file and used by following loads with the same settings
+     * as long as the GTF file does not change.
+     * @param cached <tt>true</tt> if loaded files should be cached
+     */
+    public void setCached(boolean cached) {
+        this.cached = cached;
+    }
+
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * Enables lazy parsing of rows. Rows returned by {@link GTFIterator} keep the raw line
+     * and parse values on first access (see {@link GTFLazyRow}). Lazy rows are always read sequentially.
+     * @param lazy <tt>true</tt> if rows should be parsed lazily
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    public boolean isReuseRows() {
+        return reuseRows;
+    }
+
+    /**
+     * Enables reuse of rows. {@link GTFIterator} returns the same {@link GTFReusableRow} for all rows,
+     * which is only valid until the next row is read. Lazy rows are not reused.
+     * @param reuseRows <tt>true</tt> if rows should be reused
+     */
+    public void setReuseRows(boolean reuseRows) {
+        this.reuseRows = reuseRows;
+    }
+
+    public List<GTFParseListener> getParseListeners() {
+        return parseListeners;
+    }
+
+    /**
+     * Adds a listener that is notified with the {@link GTFParseMetrics} of each completed load.
+     * Parsing is only instrumented if at least one listener is added.
+     * @param listener parse listener
+     */
+    public void addParseListener(GTFParseListener listener) {
+        parseListeners.add(listener);
+    }
+
+    /**
+     * Creates a copy of these settings. Dictionaries and parse listeners are shared with the copy.
+     * @return settings copy
+     */
+    GTFSettings copy() {
+        GTFSettings copy = new GTFSettings();
+        copy.gtfFields = new ArrayList<>(gtfFields);
+        copy.attributes = new LinkedHashMap<>(attributes);
+        copy.dictionaries = dictionaries;
+        copy.addAllGTFFields = addAllGTFFields;
+        copy.addAllAttributes = addAllAttributes;
+        copy.preFilter = preFilter;
+        copy.parallelism = parallelism;
+        copy.memoryMapped = memoryMapped;
+        copy.region = region;
+        copy.cached = cached;
+        copy.lazy = lazy;
+        copy.reuseRows = reuseRows;
+        copy.parseListeners = parseListeners;
+        return copy;
+    }
+
     /**
      * Adds a GTF field. If no GTF field is specified, all fields will be added to the resulting dataframe
      * @param field gtf field
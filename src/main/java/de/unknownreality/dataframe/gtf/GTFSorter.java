@@ -0,0 +1,562 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+import de.unknownreality.dataframe.DataFrameRuntimeException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Sorts GTF files by seqname, start and end using a bounded amount of memory.
+ * <p>
+ * Lines are collected in runs until the memory budget is reached. The key of each line (seqname ordinal, start,
+ * end and the position of the line within the run) is stored in a primitive array, the lines are stored as
+ * UTF-8 bytes. Full runs are sorted, in parallel if the parallelism is greater than 1, and spilled to temporary
+ * files that are merged into the output. If all lines fit into a single run, no temporary files are written.
+ * </p>
+ * Seqnames are sorted in the order they first appear in the input unless an order is specified.
+ * Features with equal coordinates keep their input order. Comment and track lines are written before the
+ * sorted features, empty lines are removed. Lines are written unchanged using a {@link GTFWriter},
+ * so the output can be BGZF compressed and indexed.
+ */
+public class GTFSorter {
+    public static final long DEFAULT_MEMORY_BUDGET = 256L * 1024 * 1024;
+    private static final int KEY_SIZE = 3;
+    private static final int MAX_ORDINAL = (1 << 23) - 1;
+    private static final long MAX_START = (1L << 40) - 1;
+
+    private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+    private int parallelism = 1;
+    private File tempDirectory = null;
+    private List<String> seqnameOrder = new ArrayList<>();
+    private GTFWriter writer = GTFWriterBuilder.create().build();
+
+    public static GTFSorter create() {
+        return new GTFSorter();
+    }
+
+    /**
+     * Sets the memory used for the lines and keys of runs.
+     * If the parallelism is greater than 1, the budget is shared by the run being read and the runs being sorted.
+     * Default is {@value #DEFAULT_MEMORY_BUDGET} bytes.
+     * @param memoryBudget memory budget in bytes
+     * @return <tt>self</tt> for method chaining
+     */
+    public GTFSorter withMemoryBudget(long memoryBudget) {
+        if (memoryBudget < 1) {
+            throw new IllegalArgumentException(String.format("invalid memory budget %d < 1", memoryBudget));
+        }
+        this.memoryBudget = memoryBudget;
+        return this;
+    }
+
+    /**
+     * Sets the number of threads sorting and spilling runs
+     * @param parallelism number of threads
+     * @return <tt>self</tt> for method chaining
+     */
+    public GTFSorter withParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException(String.format("invalid parallelism %d < 1", parallelism));
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Sets the directory for run files. Default is the system temp directory.
+     * @param tempDirectory directory for run files
+     * @return <tt>self</tt> for method chaining
+     */
+    public GTFSorter withTempDirectory(File tempDirectory) {
+        this.tempDirectory = tempDirectory;
+        return this;
+    }
+
+    /**
+     * Sets the order of seqnames. Seqnames that are not contained follow in the order they first appear in the input.
+     * @param seqnameOrder seqnames in output order
+     * @return <tt>self</tt> for method chaining
+     */
+    public GTFSorter withSeqnameOrder(List<String> seqnameOrder) {
+        this.seqnameOrder = new ArrayList<>(seqnameOrder);
+        return this;
+    }
+
+    /**
+     * Sets the writer of the sorted output. The output is BGZF compressed and indexed if enabled in the writer.
+     * @param writer gtf writer
+     * @return <tt>self</tt> for method chaining
+     * @see GTFWriterBuilder#withIndex(boolean)
+     */
+    public GTFSorter withWriter(GTFWriter writer) {
+        this.writer = writer;
+        return this;
+    }
+
+    /**
+     * Sorts a GTF file. Gzip and BGZF compressed input files are decompressed.
+     * @param input input file
+     * @param output sorted output file
+     * @return number of written lines
+     */
+    public long sort(File input, File output) {
+        Sort sort = new Sort();
+        try {
+            sort.read(input);
+            return writer.writeLines(output, sort::writeTo);
+        } finally {
+            sort.close();
+        }
+    }
+
+    /**
+     * State of a single sort
+     */
+    private class Sort {
+        private final long runBudget = parallelism > 1 ? Math.max(1, memoryBudget / (parallelism + 1)) : memoryBudget;
+        private final Map<String, Integer> ordinals = new HashMap<>();
+        private final List<String> comments = new ArrayList<>();
+        private final List<File> runFiles = new ArrayList<>();
+        private final Deque<Future<File>> pendingRuns = new ArrayDeque<>();
+        private final ExecutorService executor = parallelism > 1
+                ? Executors.newFixedThreadPool(parallelism, GTFUtil.createThreadFactory("gtf-sort"))
+                : null;
+        private Run run = null;
+        private String seqname = null;
+        private int ordinal = -1;
+
+        Sort() {
+            for (String name : seqnameOrder) {
+                ordinals.putIfAbsent(name, ordinals.size());
+            }
+        }
+
+        void read(File input) {
+            run = new Run();
+            int lineNumber = 0;
+            try (GTFLineSource source = GTFReaderBuilder.create().build().openLineSource(input)) {
+                CharSequence line;
+                while ((line = source.readLine()) != null) {
+                    lineNumber++;
+                    if (GTFLineParser.isIgnored(line)) {
+                        if (!GTFLineParser.isBlank(line)) {
+                            comments.add(line.toString());
+                        }
+                        continue;
+                    }
+                    add(line, lineNumber);
+                }
+                if (!runFiles.isEmpty() || !pendingRuns.isEmpty()) {
+                    spill();
+                    awaitRuns(0);
+                }
+            } catch (IOException e) {
+                throw new DataFrameRuntimeException(String.format("error reading gtf file '%s'", input), e);
+            }
+        }
+
+        private void add(CharSequence line, int lineNumber) throws IOException {
+            int seqnameEnd = indexOf(line, 0);
+            int startBegin = seqnameEnd;
+            for (int i = 0; i < 2 && startBegin != -1; i++) {
+                startBegin = indexOf(line, startBegin + 1);
+            }
+            int endBegin = startBegin == -1 ? -1 : indexOf(line, startBegin + 1);
+            int endEnd = endBegin == -1 ? -1 : indexOf(line, endBegin + 1);
+            if (endEnd == -1) {
+                throw new DataFrameRuntimeException(String.format("invalid gtf line %d", lineNumber));
+            }
+            long start = parsePosition(line, startBegin + 1, endBegin, lineNumber);
+            long end = parsePosition(line, endBegin + 1, endEnd, lineNumber);
+            if (start > MAX_START) {
+                throw new DataFrameRuntimeException(String.format("invalid start position in line %d", lineNumber));
+            }
+            if (seqname == null || !startsWithSeqname(line, seqname, seqnameEnd)) {
+                seqname = GTFUtil.substring(line, 0, seqnameEnd);
+                Integer seqnameOrdinal = ordinals.get(seqname);
+                if (seqnameOrdinal == null) {
+                    seqnameOrdinal = ordinals.size();
+                    if (seqnameOrdinal > MAX_ORDINAL) {
+                        throw new DataFrameRuntimeException("too many seqnames");
+                    }
+                    ordinals.put(seqname, seqnameOrdinal);
+                }
+                ordinal = seqnameOrdinal;
+            }
+            if (!run.isEmpty() && run.getSize() + line.length() + KEY_SIZE * 8 > runBudget) {
+                spill();
+                run = new Run();
+            }
+            run.add(line, (long) ordinal << 40 | start, end);
+        }
+
+        /**
+         * Sorts the current run and writes it to a run file
+         */
+        private void spill() throws IOException {
+            final Run full = run;
+            final File runFile = File.createTempFile("gtf-sort-", ".run", tempDirectory);
+            runFile.deleteOnExit();
+            runFiles.add(runFile);
+            if (executor == null) {
+                full.sort();
+                full.write(runFile);
+                return;
+            }
+            awaitRuns(parallelism - 1);
+            pendingRuns.add(executor.submit(() -> {
+                full.sort();
+                full.write(runFile);
+                return runFile;
+            }));
+        }
+
+        private void awaitRuns(int maxPending) throws IOException {
+            while (pendingRuns.size() > maxPending) {
+                try {
+                    pendingRuns.poll().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new DataFrameRuntimeException("interrupted while sorting gtf file", e);
+                } catch (ExecutionException e) {
+                    throw new IOException("error writing sorted run", e.getCause());
+                }
+            }
+        }
+
+        void writeTo(GTFWriter.LineWriter lineWriter) throws IOException {
+            for (String comment : comments) {
+                byte[] bytes = comment.getBytes(StandardCharsets.UTF_8);
+                lineWriter.write(bytes, 0, bytes.length);
+            }
+            if (runFiles.isEmpty()) {
+                run.sort();
+                run.writeTo(lineWriter);
+                return;
+            }
+            run = null;
+            merge(lineWriter);
+        }
+
+        /**
+         * Merges all run files. Lines with equal keys are taken from the earlier run first.
+         */
+        private void merge(GTFWriter.LineWriter lineWriter) throws IOException {
+            PriorityQueue<RunReader> queue = new PriorityQueue<>(runFiles.size());
+            List<RunReader> readers = new ArrayList<>(runFiles.size());
+            try {
+                for (int i = 0; i < runFiles.size(); i++) {
+                    RunReader reader = new RunReader(runFiles.get(i), i);
+                    readers.add(reader);
+                    if (reader.next()) {
+                        queue.add(reader);
+                    }
+                }
+                RunReader reader;
+                while ((reader = queue.poll()) != null) {
+                    lineWriter.write(reader.line, 0, reader.length);
+                    if (reader.next()) {
+                        queue.add(reader);
+                    }
+                }
+            } finally {
+                for (RunReader reader : readers) {
+                    reader.close();
+                }
+            }
+        }
+
+        void close() {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            for (File runFile : runFiles) {
+                runFile.delete();
+            }
+        }
+    }
+
+    private static int indexOf(CharSequence line, int from) {
+        for (int i = from; i < line.length(); i++) {
+            if (line.charAt(i) == '\t') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWithSeqname(CharSequence line, String seqname, int seqnameEnd) {
+        if (seqname.length() != seqnameEnd) {
+            return false;
+        }
+        for (int i = seqnameEnd - 1; i >= 0; i--) {
+            if (line.charAt(i) != seqname.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long parsePosition(CharSequence line, int start, int end, int lineNumber) {
+        if (start == end || end - start > 18) {
+            throw new DataFrameRuntimeException(String.format("invalid position in line %d", lineNumber));
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = line.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new DataFrameRuntimeException(String.format("invalid position in line %d", lineNumber));
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Lines of a run with their keys.
+     * Each key consists of 3 longs: seqname ordinal and start, end, offset and length of the line.
+     * The offset of the line orders lines with equal coordinates by input order.
+     */
+    private static class Run {
+        private byte[] data = new byte[64 * 1024];
+        private int dataLength = 0;
+        private long[] keys = new long[1024 * KEY_SIZE];
+        private int size = 0;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Returns the memory used by the lines and keys
+         */
+        long getSize() {
+            return (long) dataLength + (long) size * KEY_SIZE * 8;
+        }
+
+        void add(CharSequence line, long ordinalStart, long end) {
+            int offset = dataLength;
+            int length = line.length();
+            ensureData(length);
+            for (int i = 0; i < length; i++) {
+                char c = line.charAt(i);
+                if (c >= 0x80) {
+                    byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+                    dataLength = offset;
+                    ensureData(bytes.length);
+                    System.arraycopy(bytes, 0, data, offset, bytes.length);
+                    dataLength = offset + bytes.length;
+                    length = bytes.length;
+                    break;
+                }
+                data[dataLength++] = (byte) c;
+            }
+            if ((size + 1) * KEY_SIZE > keys.length) {
+                keys = Arrays.copyOf(keys, keys.length * 2);
+            }
+            int k = size++ * KEY_SIZE;
+            keys[k] = ordinalStart;
+            keys[k + 1] = end;
+            keys[k + 2] = (long) offset << 32 | length;
+        }
+
+        private void ensureData(int length) {
+            if (dataLength + length > data.length) {
+                long capacity = Math.max((long) data.length * 2, (long) dataLength + length);
+                if (capacity > Integer.MAX_VALUE - 8) {
+                    throw new DataFrameRuntimeException("sort run exceeds 2GB, reduce the memory budget");
+                }
+                data = Arrays.copyOf(data, (int) capacity);
+            }
+        }
+
+        void sort() {
+            sort(0, size - 1);
+        }
+
+        /**
+         * Quicksort of the keys with insertion sort for small ranges
+         */
+        private void sort(int low, int high) {
+            while (high - low > 16) {
+                int middle = (low + high) >>> 1;
+                if (compare(middle, low) < 0) {
+                    swap(middle, low);
+                }
+                if (compare(high, low) < 0) {
+                    swap(high, low);
+                }
+                if (compare(high, middle) < 0) {
+                    swap(high, middle);
+                }
+                swap(middle, high - 1);
+                int pivot = high - 1;
+                int i = low;
+                int j = high - 1;
+                while (true) {
+                    while (compare(++i, pivot) < 0) {
+                        // find element not smaller than the pivot
+                    }
+                    while (compare(--j, pivot) > 0) {
+                        // find element not greater than the pivot
+                    }
+                    if (i >= j) {
+                        break;
+                    }
+                    swap(i, j);
+                }
+                swap(i, high - 1);
+                if (i - low < high - i) {
+                    sort(low, i - 1);
+                    low = i + 1;
+                } else {
+                    sort(i + 1, high);
+                    high = i - 1;
+                }
+            }
+            for (int i = low + 1; i <= high; i++) {
+                for (int j = i; j > low && compare(j, j - 1) < 0; j--) {
+                    swap(j, j - 1);
+                }
+            }
+        }
+
+        private int compare(int a, int b) {
+            int ka = a * KEY_SIZE;
+            int kb = b * KEY_SIZE;
+            for (int i = 0; i < KEY_SIZE; i++) {
+                int c = Long.compare(keys[ka + i], keys[kb + i]);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return 0;
+        }
+
+        private void swap(int a, int b) {
+            int ka = a * KEY_SIZE;
+            int kb = b * KEY_SIZE;
+            for (int i = 0; i < KEY_SIZE; i++) {
+                long key = keys[ka + i];
+                keys[ka + i] = keys[kb + i];
+                keys[kb + i] = key;
+            }
+        }
+
+        void writeTo(GTFWriter.LineWriter lineWriter) throws IOException {
+            for (int k = 0; k < size * KEY_SIZE; k += KEY_SIZE) {
+                lineWriter.write(data, (int) (keys[k + 2] >>> 32), (int) keys[k + 2]);
+            }
+        }
+
+        /**
+         * Writes the sorted keys and lines to a run file
+         */
+        void write(File file) throws IOException {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file), 1024 * 1024))) {
+                for (int k = 0; k < size * KEY_SIZE; k += KEY_SIZE) {
+                    int length = (int) keys[k + 2];
+                    out.writeLong(keys[k]);
+                    out.writeLong(keys[k + 1]);
+                    out.writeInt(length);
+                    out.write(data, (int) (keys[k + 2] >>> 32), length);
+                }
+            }
+            data = null;
+            keys = null;
+        }
+    }
+
+    /**
+     * Reads the lines of a run file in order
+     */
+    private static class RunReader implements Comparable<RunReader> {
+        private final DataInputStream in;
+        private final int run;
+        private long ordinalStart;
+        private long end;
+        private byte[] line = new byte[1024];
+        private int length;
+
+        RunReader(File file, int run) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 256 * 1024));
+            this.run = run;
+        }
+
+        boolean next() throws IOException {
+            try {
+                ordinalStart = in.readLong();
+            } catch (EOFException e) {
+                return false;
+            }
+            end = in.readLong();
+            length = in.readInt();
+            if (line.length < length) {
+                line = new byte[Math.max(length, line.length * 2)];
+            }
+            in.readFully(line, 0, length);
+            return true;
+        }
+
+        @Override
+        public int compareTo(RunReader other) {
+            int c = Long.compare(ordinalStart, other.ordinalStart);
+            if (c == 0) {
+                c = Long.compare(end, other.end);
+            }
+            return c != 0 ? c : Integer.compare(run, other.run);
+        }
+
+        void close() {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+/**
+ * Local cache of a {@link GTFDictionary}.
+ * Values are looked up by comparing the characters of the input, a string is only created for values
+ * that are not yet in the cache. A cache must not be shared between threads.
+ */
+class GTFStringCache {
+    private final GTFDictionary dictionary;
+    private String[] entries = new String[64];
+    private int[] hashes = new int[64];
+    private int size = 0;
+
+    GTFStringCache(GTFDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Returns the canonical string of the characters between <tt>start</tt> and <tt>end</tt>
+     * @param input input sequence
+     * @param start start index (inclusive)
+     * @param end end index (exclusive)
+     * @return canonical string
+     */
+    String get(CharSequence input, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + input.charAt(i);
+        }
+        int mask = entries.length - 1;
+        int pos = hash & mask;
+        String entry;
+        while ((entry = entries[pos]) != null) {
+            if (hashes[pos] == hash && matches(entry, input, start, end)) {
+                return entry;
+            }
+            pos = (pos + 1) & mask;
+        }
+        String value = dictionary.intern(GTFUtil.substring(input, start, end));
+        // values that were decoded from multi-byte characters are not cached
+        return matches(value, input, start, end) ? add(value, hash) : value;
+    }
+
+    /**
+     * Returns the canonical instance of a string
+     * @param value input string
+     * @return canonical string
+     */
+    String get(String value) {
+        return get(value, 0, value.length());
+    }
+
+    private String add(String value, int hash) {
+        if ((size + 1) * 2 > entries.length) {
+            grow();
+        }
+        int mask = entries.length - 1;
+        int pos = hash & mask;
+        while (entries[pos] != null) {
+            pos = (pos + 1) & mask;
+        }
+        entries[pos] = value;
+        hashes[pos] = hash;
+        size++;
+        return value;
+    }
+
+    private void grow() {
+        String[] oldEntries = entries;
+        int[] oldHashes = hashes;
+        entries = new String[oldEntries.length * 2];
+        hashes = new int[oldEntries.length * 2];
+        size = 0;
+        for (int i = 0; i < oldEntries.length; i++) {
+            if (oldEntries[i] != null) {
+                add(oldEntries[i], oldHashes[i]);
+            }
+        }
+    }
+
+    private static boolean matches(String entry, CharSequence input, int start, int end) {
+        if (entry.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < entry.length(); i++) {
+            if (entry.charAt(i) != input.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ *
+ *  * Copyright (c) 2017 Alexander Grün
+ *  *
+ *  * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  * of this software and associated documentation files (the "Software"), to deal
+ *  * in the Software without restriction, including without limitation the rights
+ *  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  * copies of the Software, and to permit persons to whom the Software is
+ *  * furnished to do so, subject to the following conditions:
+ *  *
+ *  * The above copyright notice and this permission notice shall be included in all
+ *  * copies or substantial portions of the Software.
+ *  *
+ *  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  * SOFTWARE.
+ *
+ */
+
+package de.unknownreality.dataframe.gtf;
+
+/**
+ * Transcript of a {@link GTFGene} with its exons and coding regions (CDS).
+ * Exon and CDS coordinates are stored in primitive arrays sorted by start position, coordinates are 1-based
+ * and inclusive as in GTF files.
+ * Lengths are computed once, introns are derived from the gaps between exons.
+ */
+public class GTFTranscript {
+    private final String id;
+    private final String geneId;
+    private final String seqname;
+    private final char strand;
+    private final long start;
+    private final long end;
+    private final long[] exonStarts;
+    private final long[] exonEnds;
+    private final long[] cdsStarts;
+    private final long[] cdsEnds;
+    private final long length;
+    private final long codingLength;
+
+    GTFTranscript(String id, String geneId, String seqname, char strand, long start, long end,
+                  long[] exonStarts, long[] exonEnds, long[] cdsStarts, long[] cdsEnds) {
+        this.id = id;
+        this.geneId = geneId;
+        this.seqname = seqname;
+        this.strand = strand;
+        this.start = start;
+        this.end = end;
+        this.exonStarts = exonStarts;
+        this.exonEnds = exonEnds;
+        this.cdsStarts = cdsStarts;
+        this.cdsEnds = cdsEnds;
+        this.length = sumLengths(exonStarts, exonEnds);
+        this.codingLength = sumLengths(cdsStarts, cdsEnds);
+    }
+
+    private static long sumLengths(long[] starts, long[] ends) {
+        long sum = 0;
+        for (int i = 0; i < starts.length; i++) {
+            sum += ends[i] - starts[i] + 1;
+        }
+        return sum;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getGeneId() {
+        return geneId;
+    }
+
+    public String getSeqname() {
+        return seqname;
+    }
+
+    /**
+     * Returns the strand of the transcript (<tt>+</tt>, <tt>-</tt> or <tt>.</tt>)
+     * @return strand
+     */
+    public char getStrand() {
+        return strand;
+    }
+
+    /**
+     * Returns the start of the transcript. If the input contains no transcript feature,
+     * the start of the first exon or CDS is returned.
+     * @return start position
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Returns the end of the transcript. If the input contains no transcript feature,
+     * the end of the last exon or CDS is returned.
+     * @return end position
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * Returns the sum of the exon lengths
+     * @return transcript length
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the sum of the CDS lengths
+     * @return coding length, <tt>0</tt> for non-coding transcripts
+     */
+    public long getCodingLength() {
+        return codingLength;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the transcript contains at least one CDS
+     * @return <tt>true</tt> if the transcript is coding
+     */
+    public boolean isCoding() {
+        return cdsStarts.length != 0;
+    }
+
+    public int getExonCount() {
+        return exonStarts.length;
+    }
+
+    /**
+     * Returns the start of an exon. Exons are sorted by start position regardless of the strand.
+     * @param exon exon index
+     * @return exon start
+     */
+    public long getExonStart(int exon) {
+        return exonStarts[exon];
+    }
+
+    /**
+     * Returns the end of an exon
+     * @param exon exon index
+     * @return exon end
+     */
+    public long getExonEnd(int exon) {
+        return exonEnds[exon];
+    }
+
+    public int getCDSCount() {
+        return cdsStarts.length;
+    }
+
+    /**
+     * Returns the start of a CDS. CDS are sorted by start position regardless of the strand.
+     * @param cds CDS index
+     * @return CDS start
+     */
+    public long getCDSStart(int cds) {
+        return cdsStarts[cds];
+    }
+
+    /**
+     * Returns the end of a CDS
+     * @param cds CDS index
+     * @return CDS end
+     */
+    public long getCDSEnd(int cds) {
+        return cdsEnds[cds];
+    }
+
+    /**
+     * Returns the number of introns (gaps between consecutive exons)
+     * @return number of introns
+     */
+    public int getIntronCount() {
+        return Math.max(0, exonStarts.length - 1);
+    }
+
+    /**
+     * Returns the start of an intron, the position after the end of exon <tt>intron</tt>
+     * @param intron intron index
+     * @return intron start
+     */
+    public long getIntronStart(int intron) {
+        return exonEnds[intron] + 1;
+    }
+
+    /**
+     * Returns the end of an intron, the position before the start of exon <tt>intron + 1</tt>
+     * @param intron intron index
+     * @return intron end
+     */
+    public long getIntronEnd(int intron) {
+        return exonStarts[intron + 1] - 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s:%d-%d(%s) exons=%d", id, seqname, start, end, strand, exonStarts.length);
+    }
+}
@@ -25,8 +25,12 @@ package de.unknownreality.dataframe.gtf;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class GTFUtil {
+    private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
     /**
      * Splits the attributes part of a row in a GTF file into separate parts.
      * <tt> gene_id "ENSG00000223972"; gene_name "DDX11L1";" </tt> &rarr; <code>["gene_id","ENSG00000223972","gene_name","DDX11L1"]</code>
@@ -112,4 +116,35 @@ public class GTFUtil {
         }
         return parts.toArray(new String[parts.size()]);
     }
+
+    /**
+     * Returns a part of a character sequence as string.
+     * Lines read from memory mapped files are decoded directly from the mapped bytes.
+     * @param input input sequence
+     * @param start start index (inclusive)
+     * @param end end index (exclusive)
+     * @return string containing the characters between start and end
+     */
+    static String substring(CharSequence input, int start, int end) {
+        if (input instanceof GTFByteLine) {
+            return ((GTFByteLine) input).toString(start, end);
+        }
+        return input.subSequence(start, end).toString();
+    }
+
+    /**
+     * Creates a factory for daemon worker threads.
+     * Threads are named <tt>prefix-pool-thread</tt>.
+     * @param prefix thread name prefix
+     * @return thread factory
+     */
+    static ThreadFactory createThreadFactory(String prefix) {
+        final int pool = POOL_COUNT.incrementAndGet();
+        final AtomicInteger threadCount = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, String.format("%s-%d-%d", prefix, pool, threadCount.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
 }
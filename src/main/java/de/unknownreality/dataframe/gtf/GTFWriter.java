@@ -29,83 +29,612 @@ import de.unknownreality.dataframe.DataFrameColumn;
 import de.unknownreality.dataframe.DataFrameRuntimeException;
 import de.unknownreality.dataframe.Values;
 import de.unknownreality.dataframe.common.DataContainer;
+import de.unknownreality.dataframe.common.Header;
 import de.unknownreality.dataframe.common.Row;
 import de.unknownreality.dataframe.io.DataWriter;
 import de.unknownreality.dataframe.io.ReadFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
 
 /**
  * Created by Alex on 17.06.2017.
  */
 public class GTFWriter extends DataWriter {
+    private static final Logger log = LoggerFactory.getLogger(GTFWriter.class);
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+    private static final String NA_VALUE = ".";
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private boolean flushEachRow = false;
+    private int parallelism = 1;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private boolean bgzf = false;
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private boolean indexed = false;
 
     protected GTFWriter() {
     }
 
+    /**
+     * Creates a writer using a specified buffer size
+     * @param bufferSize size of the output buffer in characters
+     * @param flushEachRow flush the output after each row
+     */
+    protected GTFWriter(int bufferSize, boolean flushEachRow) {
+        this.bufferSize = bufferSize;
+        this.flushEachRow = flushEachRow;
+    }
+
+    /**
+     * Creates a writer using a specified buffer size, parallelism, batch size and compression
+     * @param bufferSize size of the output buffer in characters
+     * @param flushEachRow flush the output after each row
+     * @param parallelism number of threads formatting rows written from iterators and compressing BGZF blocks
+     * @param batchSize number of rows formatted per batch
+     * @param bgzf write BGZF compressed output
+     * @param compressionLevel deflate compression level of BGZF blocks
+     * @param indexed write the index of BGZF compressed files
+     */
+    protected GTFWriter(int bufferSize, boolean flushEachRow, int parallelism, int batchSize,
+                        boolean bgzf, int compressionLevel, boolean indexed) {
+        this(bufferSize, flushEachRow);
+        this.parallelism = parallelism;
+        this.batchSize = batchSize;
+        this.bgzf = bgzf;
+        this.compressionLevel = compressionLevel;
+        this.indexed = indexed;
+    }
+
 
     /**
      * Writes a GTF file based on an input {@link DataContainer}.
      * GTF fields are always added. <tt>null</tt> or <tt>NA</tt> are represented as '.'.
-     * All columns not matching GTF fields are added as attributes
+     * All columns not matching GTF fields are added as attributes.
+     * The column layout is determined once per container. Rows are written to the buffered writer,
+     * which is flushed after the last row.
      * @param bufferedWriter target writer
      * @param dataContainer input container
      */
     @Override
     public void write(BufferedWriter bufferedWriter, DataContainer<?, ?> dataContainer) {
         try {
-            String[] headerNames = new String[dataContainer.getHeader().size()];
-            Set<String> headerNameSet = new HashSet<>();
-            for(int i = 0; i < headerNames.length; i++){
-                headerNames[i] = (String)dataContainer.getHeader().get(i);
-                headerNameSet.add(headerNames[i]);
-            }
-            String fieldsString;
-            String attrString;
+            Layout layout = new Layout(dataContainer.getHeader());
             for (Row row : dataContainer) {
-                StringBuilder gtfFields = new StringBuilder();
-                StringBuilder attributes = new StringBuilder();
-                for(GTFField gtfField : GTFField.values()){
-                    Object v = null;
-                    if(headerNameSet.contains(gtfField.name)){
-                        v = row.get(gtfField.name);
-                    }
-                    String s = (v == null || Values.NA.isNA(v)) ? "." : row.getString(gtfField.name);
-                    gtfFields.append(s).append('\t');
+                layout.format(bufferedWriter, row);
+                bufferedWriter.newLine();
+                if(flushEachRow){
+                    bufferedWriter.flush();
                 }
-                for (int i = 0; i < row.size(); i++) {
-                    Object v = row.get(i);
-                    String s = (v == null || Values.NA.isNA(v)) ? "." : row.getString(i);
-                    if(GTFField.isGTFField(headerNames[i])){
-                        continue;
-                    }
-                    else{
-                        attributes
-                                .append(headerNames[i])
-                                .append(" \"")
-                                .append(s)
-                                .append("\"; ");
-                    }
+            }
+            bufferedWriter.flush();
+        } catch (IOException e) {
+            throw new DataFrameRuntimeException("error writing gtf", e);
+        }
+    }
+
+    /**
+     * Writes a GTF file based on an input {@link DataContainer}.
+     * Writers that are not buffered are wrapped in a buffer of the buffer size.
+     * @param writer target writer
+     * @param dataContainer input container
+     */
+    @Override
+    public void write(Writer writer, DataContainer<?, ?> dataContainer) {
+        write(writer instanceof BufferedWriter ? (BufferedWriter) writer : new BufferedWriter(writer, bufferSize),
+                dataContainer);
+    }
+
+    /**
+     * Writes a GTF file based on an input {@link DataContainer}.
+     * Uncompressed files are written using a buffer of the buffer size.
+     * If BGZF compression is enabled, the file is compressed and indexed as in
+     * {@link #write(File, Header, Iterator)}.
+     * @param file target file
+     * @param dataContainer input container
+     */
+    @Override
+    public void write(File file, DataContainer<?, ?> dataContainer) {
+        if (!bgzf) {
+            try (Writer writer = new FileWriter(file)) {
+                write(writer, dataContainer);
+            } catch (IOException e) {
+                throw new DataFrameRuntimeException(String.format("error writing gtf file '%s'", file), e);
+            }
+            return;
+        }
+        write(file, dataContainer.getHeader(), dataContainer.iterator());
+    }
+
+    /**
+     * Writes the rows of a stream to a GTF file without collecting them in a dataframe.
+     * The column layout is taken from the header of the first row.
+     * The values of each row are used before the next row is read, so reused rows ({@link GTFReusableRow}) can be written.
+     * Records of {@link GTFReader#stream(File)} are converted to rows using {@link GTFRecordView#toRow()}.
+     * @param file target file
+     * @param rows input rows
+     * @return number of written rows
+     * @see #write(OutputStream, Header, Iterator)
+     */
+    public long write(File file, Stream<? extends GTFRow> rows) {
+        return write(file, rows.iterator());
+    }
+
+    /**
+     * Writes the rows of an iterator to a GTF file without collecting them in a dataframe.
+     * The column layout is taken from the header of the first row.
+     * The values of each row are used before the next row is read, so reused rows ({@link GTFReusableRow}) can be written.
+     * @param file target file
+     * @param rows input rows
+     * @return number of written rows
+     * @see #write(OutputStream, Header, Iterator)
+     */
+    public long write(File file, Iterator<? extends GTFRow> rows) {
+        if (!rows.hasNext()) {
+            return write(file, new GTFHeader(), rows);
+        }
+        GTFRow first = copyReused(rows.next());
+        return write(file, first.getHeader(), new FirstRowIterator<>(first, rows));
+    }
+
+    /**
+     * Writes the rows of an iterator to a GTF file without collecting them in a dataframe.
+     * If BGZF compression is enabled, blocks are compressed in parallel if the parallelism is greater than 1.
+     * If indexing is enabled, the index of the file is built while the file is written and written to
+     * {@link GTFIndex#getIndexFile(File)}. Indexing requires rows sorted by seqname and start,
+     * if the rows are not sorted no index is written.
+     * @param file target file
+     * @param header column names of the rows
+     * @param rows input rows
+     * @return number of written rows
+     * @see #write(OutputStream, Header, Iterator)
+     */
+    public long write(File file, Header<?> header, Iterator<? extends Row> rows) {
+        return write(file, sink -> write(sink, header, rows));
+    }
+
+    /**
+     * Writes raw GTF lines to a file using the compression and index settings of this writer.
+     * Lines are passed without line separator and written as they are.
+     * @param file target file
+     * @param lines producer of the lines
+     * @return number of written lines
+     */
+    long writeLines(File file, LineProducer lines) {
+        return write(file, sink -> {
+            LineBuffer buffer = new LineBuffer(sink, bufferSize);
+            lines.writeTo(buffer);
+            buffer.flush();
+            return buffer.lineCount;
+        });
+    }
+
+    private long write(File file, SinkWriter body) {
+        try {
+            if (bgzf) {
+                return writeBGZF(file, body);
+            }
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                return body.write(buffer -> writeFully(channel, buffer));
+            }
+        } catch (IOException e) {
+            throw new DataFrameRuntimeException(String.format("error writing gtf file '%s'", file), e);
+        }
+    }
+
+    private long writeBGZF(File file, SinkWriter body) throws IOException {
+        File indexFile = GTFIndex.getIndexFile(file);
+        GTFIndex index = null;
+        long count;
+        try (GTFBGZFOutputStream out = new GTFBGZFOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), DEFAULT_BUFFER_SIZE), compressionLevel,
+                parallelism)) {
+            BGZFSink sink = new BGZFSink(out, indexed ? new GTFIndex.Indexer() : null);
+            count = body.write(sink);
+            out.finish();
+            if (sink.indexer != null) {
+                try {
+                    index = sink.indexer.finish(out::getVirtualOffset);
+                } catch (IOException e) {
+                    log.warn("gtf file '{}' is not indexed: {}", file, e.getMessage());
+                }
+            }
+        }
+        if (index != null) {
+            index.write(indexFile);
+        } else if (indexed && indexFile.exists() && !indexFile.delete()) {
+            throw new IOException(String.format("error deleting outdated index file '%s'", indexFile));
+        }
+        return count;
+    }
+
+    /**
+     * Writes the rows of an iterator in GTF format without collecting them in a dataframe.
+     * GTF fields and attributes are determined from the header as in {@link #write(BufferedWriter, DataContainer)}.
+     * Rows are processed in batches of the batch size. Rows are not kept, so iterators may reuse row instances.
+     * If the parallelism is greater than 1, the values of each row are copied when it is taken from the iterator
+     * and the batches are formatted by a pool of threads. Formatted batches are written in the order of the rows,
+     * BGZF blocks are compressed in parallel.
+     * At most two batches per thread are held in memory. The output is flushed but not closed.
+     * @param output target output
+     * @param header column names of the rows
+     * @param rows input rows
+     * @return number of written rows
+     */
+    public long write(OutputStream output, Header<?> header, Iterator<? extends Row> rows) {
+        try {
+            if (bgzf) {
+                GTFBGZFOutputStream out = new GTFBGZFOutputStream(output, compressionLevel, parallelism);
+                try {
+                    return write(new BGZFSink(out, null), header, rows);
+                } finally {
+                    out.finish();
+                }
+            }
+            WritableByteChannel channel = Channels.newChannel(output);
+            long count = write(buffer -> writeFully(channel, buffer), header, rows);
+            output.flush();
+            return count;
+        } catch (IOException e) {
+            throw new DataFrameRuntimeException("error writing gtf", e);
+        }
+    }
+
+    private long write(BufferSink sink, Header<?> header, Iterator<? extends Row> rows)
+            throws IOException {
+        Layout layout = new Layout(header);
+        long count = 0;
+        if (parallelism <= 1) {
+            while (rows.hasNext()) {
+                StringBuilder batch = new StringBuilder(batchSize * 256);
+                count += formatBatch(layout, rows, batch);
+                sink.write(encode(batch));
+            }
+            return count;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                GTFUtil.createThreadFactory("gtf-writer"));
+        Deque<Future<ByteBuffer>> pending = new ArrayDeque<>();
+        try {
+            while (rows.hasNext()) {
+                Object[] batch = new Object[batchSize * layout.getValueCount()];
+                int batchRows = copyBatch(layout, rows, batch);
+                count += batchRows;
+                pending.add(executor.submit(() -> encode(layout.format(batch, batchRows))));
+                if (pending.size() >= parallelism * 2) {
+                    sink.write(await(pending.poll()));
+                }
+            }
+            while (!pending.isEmpty()) {
+                sink.write(await(pending.poll()));
+            }
+            return count;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Formats the next rows of an iterator until the batch size is reached.
+     * Each row is formatted when it is taken from the iterator, so rows may be reused by the iterator.
+     * @return number of formatted rows
+     */
+    private int formatBatch(Layout layout, Iterator<? extends Row> rows, StringBuilder batch) throws IOException {
+        int count = 0;
+        while (count < batchSize && rows.hasNext()) {
+            layout.format(batch, rows.next());
+            batch.append(LINE_SEPARATOR);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Copies the values of the next rows of an iterator until the batch size is reached
+     * @return number of copied rows
+     */
+    private int copyBatch(Layout layout, Iterator<? extends Row> rows, Object[] batch) {
+        int count = 0;
+        while (count < batchSize && rows.hasNext()) {
+            layout.copy(rows.next(), batch, count * layout.getValueCount());
+            count++;
+        }
+        return count;
+    }
+
+    private static ByteBuffer encode(CharSequence batch) {
+        return StandardCharsets.UTF_8.encode(CharBuffer.wrap(batch));
+    }
+
+    /**
+     * Copies reused rows ({@link GTFReusableRow}) that are held while the output is opened
+     */
+    private static <T extends Row> T copyReused(T row) {
+        if (row instanceof GTFReusableRow) {
+            @SuppressWarnings("unchecked")
+            T copy = (T) ((GTFReusableRow) row).copy();
+            return copy;
+        }
+        return row;
+    }
+
+    private static ByteBuffer await(Future<ByteBuffer> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataFrameRuntimeException("interrupted while writing gtf", e);
+        } catch (ExecutionException e) {
+            throw new DataFrameRuntimeException("error writing gtf", e.getCause());
+        }
+    }
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void writeValue(Appendable writer, Row row, int column) throws IOException {
+        Object v = column == -1 ? null : row.get(column);
+        writer.append((v == null || Values.NA.isNA(v)) ? NA_VALUE : row.getString(column));
+    }
+
+    private static void writeValue(Appendable writer, Object value) throws IOException {
+        writer.append((value == null || Values.NA.isNA(value)) ? NA_VALUE : value.toString());
+    }
+
+    /**
+     * Target of formatted batches
+     */
+    private interface BufferSink {
+        void write(ByteBuffer buffer) throws IOException;
+    }
+
+    /**
+     * Writes all data of an output to a sink
+     */
+    private interface SinkWriter {
+        long write(BufferSink sink) throws IOException;
+    }
+
+    /**
+     * Target of raw lines written by {@link #writeLines(File, LineProducer)}
+     */
+    interface LineWriter {
+        /**
+         * Writes a line, the line separator is added
+         * @param data UTF-8 encoded line
+         * @param offset start of the line
+         * @param length length of the line
+         * @throws IOException if the line can not be written
+         */
+        void write(byte[] data, int offset, int length) throws IOException;
+    }
+
+    /**
+     * Producer of raw lines written by {@link #writeLines(File, LineProducer)}
+     */
+    interface LineProducer {
+        void writeTo(LineWriter writer) throws IOException;
+    }
+
+    /**
+     * Collects raw lines into buffers that are passed to a sink
+     */
+    private static class LineBuffer implements LineWriter {
+        private static final byte[] SEPARATOR = LINE_SEPARATOR.getBytes(StandardCharsets.UTF_8);
+        private final BufferSink sink;
+        private final ByteBuffer buffer;
+        private long lineCount = 0;
+
+        LineBuffer(BufferSink sink, int bufferSize) {
+            this.sink = sink;
+            this.buffer = ByteBuffer.allocate(Math.max(bufferSize, 1024));
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            if (buffer.remaining() < length + SEPARATOR.length) {
+                flush();
+                if (buffer.remaining() < length + SEPARATOR.length) {
+                    ByteBuffer line = ByteBuffer.allocate(length + SEPARATOR.length);
+                    line.put(data, offset, length).put(SEPARATOR).flip();
+                    sink.write(line);
+                    lineCount++;
+                    return;
                 }
-                fieldsString = gtfFields.toString();
-                attrString = attributes.toString();
-                if(attrString.isEmpty()){
-                    fieldsString = fieldsString + ".";
-                    bufferedWriter.write(fieldsString);
+            }
+            buffer.put(data, offset, length).put(SEPARATOR);
+            lineCount++;
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            if (buffer.hasRemaining()) {
+                sink.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Writes formatted batches to a BGZF stream and adds them to the index until the rows are found to be unsorted
+     */
+    private static class BGZFSink implements BufferSink {
+        private final GTFBGZFOutputStream out;
+        private GTFIndex.Indexer indexer;
+
+        BGZFSink(GTFBGZFOutputStream out, GTFIndex.Indexer indexer) {
+            this.out = out;
+            this.indexer = indexer;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer) throws IOException {
+            byte[] data = buffer.array();
+            int offset = buffer.arrayOffset() + buffer.position();
+            int length = buffer.remaining();
+            if (indexer != null) {
+                try {
+                    indexer.add(data, offset, length);
+                } catch (IOException e) {
+                    log.warn("gtf output is not indexed: {}", e.getMessage());
+                    indexer = null;
+                }
+            }
+            out.write(data, offset, length);
+        }
+    }
+
+    /**
+     * Positions of the GTF fields and attributes within the columns of a header
+     */
+    private static class Layout {
+        private final int[] fieldColumns = new int[GTFField.values().length];
+        private final int[] attributeColumns;
+        private final String[] attributePrefixes;
+        private int attributeCount = 0;
+
+        Layout(Header<?> header) {
+            int columnCount = header.size();
+            Arrays.fill(fieldColumns, -1);
+            attributeColumns = new int[columnCount];
+            attributePrefixes = new String[columnCount];
+            for(int i = 0; i < columnCount; i++){
+                String headerName = (String)header.get(i);
+                if(GTFField.isGTFField(headerName)){
+                    int fieldIndex = GTFField.fromString(headerName).getIndex();
+                    if(fieldColumns[fieldIndex] == -1){
+                        fieldColumns[fieldIndex] = i;
+                    }
                 }
                 else{
-                    attrString = attrString.substring(0, attrString.length() - 1);
-                    bufferedWriter.write(fieldsString);
-                    bufferedWriter.write(attrString);
+                    attributeColumns[attributeCount] = i;
+                    attributePrefixes[attributeCount] = headerName + " \"";
+                    attributeCount++;
                 }
-                bufferedWriter.newLine();
-                bufferedWriter.flush();
+            }
+        }
 
+        /**
+         * Returns the number of values copied per row, the GTF fields followed by the attributes
+         */
+        int getValueCount() {
+            return fieldColumns.length + attributeCount;
+        }
+
+        /**
+         * Copies the values of a row that are written
+         */
+        void copy(Row row, Object[] target, int offset) {
+            for(int f = 0; f < fieldColumns.length; f++){
+                target[offset++] = fieldColumns[f] == -1 ? null : row.get(fieldColumns[f]);
             }
-        } catch (IOException e) {
-            throw new DataFrameRuntimeException("error writing gtf", e);
+            for(int a = 0; a < attributeCount; a++){
+                target[offset++] = row.get(attributeColumns[a]);
+            }
+        }
+
+        /**
+         * Formats rows copied by {@link #copy(Row, Object[], int)}
+         */
+        CharSequence format(Object[] values, int rowCount) throws IOException {
+            StringBuilder sb = new StringBuilder(rowCount * 256);
+            int offset = 0;
+            for(int r = 0; r < rowCount; r++){
+                for(int f = 0; f < fieldColumns.length; f++){
+                    writeValue(sb, values[offset++]);
+                    sb.append('\t');
+                }
+                if(attributeCount == 0){
+                    sb.append(NA_VALUE);
+                }
+                for(int a = 0; a < attributeCount; a++){
+                    if(a != 0){
+                        sb.append(' ');
+                    }
+                    sb.append(attributePrefixes[a]);
+                    writeValue(sb, values[offset++]);
+                    sb.append("\";");
+                }
+                sb.append(LINE_SEPARATOR);
+            }
+            return sb;
+        }
+
+        /**
+         * Formats a row without line separator
+         */
+        void format(Appendable writer, Row row) throws IOException {
+            for(int f = 0; f < fieldColumns.length; f++){
+                writeValue(writer, row, fieldColumns[f]);
+                writer.append('\t');
+            }
+            if(attributeCount == 0){
+                writer.append(NA_VALUE);
+            }
+            for(int a = 0; a < attributeCount; a++){
+                if(a != 0){
+                    writer.append(' ');
+                }
+                writer.append(attributePrefixes[a]);
+                writeValue(writer, row, attributeColumns[a]);
+                writer.append("\";");
+            }
+        }
+    }
+
+    /**
+     * Iterator returning a row that was already taken from an iterator before the remaining rows
+     */
+    private static class FirstRowIterator<T> implements Iterator<T> {
+        private T first;
+        private final Iterator<? extends T> rows;
+
+        FirstRowIterator(T first, Iterator<? extends T> rows) {
+            this.first = first;
+            this.rows = rows;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return first != null || rows.hasNext();
+        }
+
+        @Override
+        public T next() {
+            if (first != null) {
+                T row = first;
+                first = null;
+                return row;
+            }
+            return rows.next();
         }
     }
 
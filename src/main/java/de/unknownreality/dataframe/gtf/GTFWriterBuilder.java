@@ -26,10 +26,19 @@ package de.unknownreality.dataframe.gtf;
 
 import de.unknownreality.dataframe.io.WriterBuilder;
 
+import java.util.zip.Deflater;
+
 /**
  * Created by Alex on 17.06.2017.
  */
 public class GTFWriterBuilder implements WriterBuilder<GTFWriter> {
+    private int bufferSize = GTFWriter.DEFAULT_BUFFER_SIZE;
+    private boolean flushEachRow = false;
+    private int parallelism = 1;
+    private int batchSize = GTFWriter.DEFAULT_BATCH_SIZE;
+    private boolean bgzf = false;
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private boolean indexed = false;
 
     private GTFWriterBuilder(){}
 
@@ -37,9 +46,104 @@ public class GTFWriterBuilder implements WriterBuilder<GTFWriter> {
         return new GTFWriterBuilder();
     }
 
+    /**
+     * Sets the size of the output buffer used for files and writers that are not buffered.
+     * The output is flushed when the buffer is full and after the last row.
+     * The default size is {@value GTFWriter#DEFAULT_BUFFER_SIZE} characters.
+     * @param bufferSize buffer size in characters
+     * @return <tt>self</tt> for method chaining
+     */
+    public GTFWriterBuilder withBufferSize(int bufferSize){
+        if(bufferSize < 1){
+            throw new IllegalArgumentException(String.format("invalid buffer size %d < 1", bufferSize));
+        }
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    /**
+     * Flushes the output after each row.
+     * This is only useful if the output is consumed while it is written.
+     * @param flushEachRow flush after each row
+     * @return <tt>self</tt> for method chaining
+     */
+    public GTFWriterBuilder withFlushEachRow(boolean flushEachRow){
+        this.flushEachRow = flushEachRow;
+        return this;
+    }
+
+    /**
+     * Sets the number of threads formatting rows written from iterators or streams and compressing BGZF blocks
+     * (see {@link GTFWriter#write(java.io.OutputStream, de.unknownreality.dataframe.common.Header, java.util.Iterator)}).
+     * The values of rows are copied as they are read, batches of rows are formatted in parallel and written in order.
+     * @param parallelism number of threads
+     * @return <tt>self</tt> for method chaining
+     */
+    public GTFWriterBuilder withParallelism(int parallelism){
+        if(parallelism < 1){
+            throw new IllegalArgumentException(String.format("invalid parallelism %d < 1", parallelism));
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Sets the number of rows formatted per batch when writing from iterators or streams.
+     * At most two batches per thread are held in memory.
+     * The default size is {@value GTFWriter#DEFAULT_BATCH_SIZE} rows.
+     * @param batchSize rows per batch
+     * @return <tt>self</tt> for method chaining
+     */
+    public GTFWriterBuilder withBatchSize(int batchSize){
+        if(batchSize < 1){
+            throw new IllegalArgumentException(String.format("invalid batch size %d < 1", batchSize));
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Writes BGZF (blocked gzip) compressed output that can be read by <tt>bgzip</tt>, <tt>tabix</tt> and {@link GTFReader}.
+     * Blocks are compressed in parallel if the parallelism is greater than 1.
+     * @param bgzf <tt>true</tt> if the output should be BGZF compressed
+     * @return <tt>self</tt> for method chaining
+     * @see #withParallelism(int)
+     */
+    public GTFWriterBuilder withBGZFCompression(boolean bgzf){
+        this.bgzf = bgzf;
+        return this;
+    }
+
+    /**
+     * Sets the deflate compression level of BGZF blocks (0-9)
+     * @param compressionLevel compression level
+     * @return <tt>self</tt> for method chaining
+     */
+    public GTFWriterBuilder withCompressionLevel(int compressionLevel){
+        if(compressionLevel < 0 || compressionLevel > 9){
+            throw new IllegalArgumentException(String.format("invalid compression level %d", compressionLevel));
+        }
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    /**
+     * Builds the index of BGZF compressed files while they are written and writes it next to the file
+     * (see {@link GTFIndex#getIndexFile(java.io.File)}), so the file can be queried by region without a second read.
+     * Enables BGZF compression. The rows must be sorted by seqname and start, otherwise no index is written.
+     * @param indexed <tt>true</tt> if written files should be indexed
+     * @return <tt>self</tt> for method chaining
+     */
+    public GTFWriterBuilder withIndex(boolean indexed){
+        this.indexed = indexed;
+        if(indexed){
+            this.bgzf = true;
+        }
+        return this;
+    }
 
     @Override
     public GTFWriter build() {
-        return new GTFWriter();
+        return new GTFWriter(bufferSize, flushEachRow, parallelism, batchSize, bgzf, compressionLevel, indexed);
     }
 }
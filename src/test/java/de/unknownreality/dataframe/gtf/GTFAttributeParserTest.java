@@ -2,7 +2,12 @@ package de.unknownreality.dataframe.gtf;
 
 import org.junit.Test;
 
+import java.util.Arrays;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class GTFAttributeParserTest {
     @Test
@@ -80,4 +85,71 @@ public class GTFAttributeParserTest {
         assertEquals("21", parts[5]);
 
     }
+
+    @Test
+    public void testAttributeTokenizer(){
+        GTFAttributeTokenizer tokenizer = new GTFAttributeTokenizer(
+                Arrays.asList("gene_name", "gene_id", "transcript_id"));
+        String[] values = new String[tokenizer.getKeyCount()];
+
+        String attr ="gene_id \"ENSG00000223972\"; " +
+                "gene_name \"DDX11L1\"; " +
+                "gene_source \"havana\"; " +
+                "gene_biotype \"transcribed_unprocessed_pseudogene\"; ";
+        assertEquals(8, tokenizer.tokenize(attr, 0, attr.length(), values));
+        assertEquals("DDX11L1", values[0]);
+        assertEquals("ENSG00000223972", values[1]);
+        assertNull(values[2]);
+
+        attr ="gene_id \"ENSG00000223972\"; " +
+                "gene_name \"DDX11L1\\\"; ABC\"; ";
+        assertEquals(4, tokenizer.tokenize(attr, 0, attr.length(), values));
+        assertEquals("DDX11L1\"; ABC", values[0]);
+        assertEquals("ENSG00000223972", values[1]);
+
+        attr ="gene_name \"DDX11L1 ABC\";;transcript_id 'ENST00000456328'";
+        assertEquals(4, tokenizer.tokenize(attr, 0, attr.length(), values));
+        assertEquals("DDX11L1 ABC", values[0]);
+        assertNull(values[1]);
+        assertEquals("ENST00000456328", values[2]);
+
+        attr = "\tgene_id=\"A\"; gene_name\t";
+        assertEquals(3, tokenizer.tokenize(attr, 1, attr.length(), values));
+        assertEquals("A", values[1]);
+    }
+
+    @Test
+    public void testAttributeTokenizerMatchesSplit(){
+        String attr ="hid=trf; hstart=1; hend=21";
+        String[] parts = GTFUtil.splitAttributes(attr);
+        GTFAttributeTokenizer tokenizer = new GTFAttributeTokenizer(
+                Arrays.asList(parts[0], parts[2], parts[4]));
+        String[] values = new String[tokenizer.getKeyCount()];
+        assertEquals(parts.length, tokenizer.tokenize(attr, 0, attr.length(), values));
+        assertEquals(parts[1], values[0]);
+        assertEquals(parts[3], values[1]);
+        assertEquals(parts[5], values[2]);
+    }
+
+    @Test
+    public void testAttributeSlots(){
+        GTFAttributeTokenizer tokenizer = new GTFAttributeTokenizer(
+                Arrays.asList("gene_name", "gene_id", "transcript_id"));
+        GTFAttributeSlots slots = new GTFAttributeSlots(tokenizer.getKeyCount());
+
+        String attr ="gene_id \"ENSG00000223972\"; gene_name \"DDX11L1\\\"; ABC\"; transcript_id \"T1\"";
+        assertEquals(6, tokenizer.tokenize(attr, 0, attr.length(), slots));
+        assertTrue(slots.isFound(0));
+        assertTrue(slots.isEscaped(0));
+        assertEquals("DDX11L1\"; ABC", GTFAttributeTokenizer.unescape(attr, slots.getStart(0), slots.getEnd(0)));
+        assertEquals("ENSG00000223972", attr.substring(slots.getStart(1), slots.getEnd(1)));
+        assertFalse(slots.isEscaped(1));
+        assertTrue(slots.isFound(2));
+
+        attr ="gene_id \"A\"; gene_id \"B\"";
+        assertEquals(4, tokenizer.tokenize(attr, 0, attr.length(), slots));
+        assertFalse(slots.isFound(0));
+        assertEquals("B", attr.substring(slots.getStart(1), slots.getEnd(1)));
+        assertFalse(slots.isFound(2));
+    }
 }
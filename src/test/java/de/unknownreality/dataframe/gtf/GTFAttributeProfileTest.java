@@ -0,0 +1,115 @@
+package de.unknownreality.dataframe.gtf;
+
+import de.unknownreality.dataframe.DataFrame;
+import de.unknownreality.dataframe.column.DoubleColumn;
+import de.unknownreality.dataframe.column.IntegerColumn;
+import de.unknownreality.dataframe.column.LongColumn;
+import de.unknownreality.dataframe.column.StringColumn;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+
+public class GTFAttributeProfileTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String createData(int rows) {
+        StringBuilder sb = new StringBuilder("#!genome-build test\n");
+        for (int i = 0; i < rows; i++) {
+            sb.append("chr1\ttest\texon\t").append(i + 1).append('\t').append(i + 100)
+                    .append("\t.\t+\t.\t")
+                    .append("gene_id \"G").append(i).append("\"; ")
+                    .append("gene_biotype \"").append(i % 3 == 0 ? "protein_coding" : "lncRNA").append("\"; ")
+                    .append("exon_number \"").append(i % 20).append("\"; ")
+                    .append("position \"").append(10000000000L + i).append("\"; ")
+                    .append("score \"").append(i % 2 == 0 ? "NA" : (i % 500) + ".5").append("\";");
+            if (i % 10 == 0) {
+                sb.append(" tag \"basic\";");
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void profileTest() {
+        GTFAttributeProfile profile = GTFAttributeProfile.create(
+                new InputStreamReader(getClass().getClassLoader().getResourceAsStream("test.gtf")), 0);
+        Assert.assertEquals(4, profile.getRowCount());
+        Assert.assertEquals(4, profile.getAttribute("gene_id").getCount());
+        Assert.assertEquals(1, profile.getAttribute("gene_id").getDistinctCount());
+        Assert.assertEquals(3, profile.getAttribute("transcript_id").getDistinctCount());
+        Assert.assertEquals(StringColumn.class, profile.getAttribute("gene_id").getColumnType());
+        Assert.assertEquals(IntegerColumn.class, profile.getAttribute("exon_number").getColumnType());
+        Assert.assertEquals(DoubleColumn.class, profile.getAttribute("test_value").getColumnType());
+        Assert.assertEquals(2, profile.getAttribute("test_value").getCount());
+        Assert.assertNull(profile.getAttribute("unknown"));
+        Assert.assertEquals("gene_id", profile.getAttributes().get(0).getKey());
+    }
+
+    @Test
+    public void cardinalityTest() {
+        int rows = 50000;
+        GTFAttributeProfile profile = GTFAttributeProfile.create(new StringReader(createData(rows)), 0);
+        Assert.assertEquals(rows, profile.getRowCount());
+
+        GTFAttributeProfile.AttributeStatistics geneId = profile.getAttribute("gene_id");
+        Assert.assertEquals(rows, geneId.getCount());
+        Assert.assertEquals(rows, geneId.getDistinctCount(), rows * 0.05);
+        Assert.assertEquals(StringColumn.class, geneId.getColumnType());
+
+        Assert.assertEquals(2, profile.getAttribute("gene_biotype").getDistinctCount());
+        Assert.assertEquals(20, profile.getAttribute("exon_number").getDistinctCount());
+        Assert.assertEquals(IntegerColumn.class, profile.getAttribute("exon_number").getColumnType());
+        Assert.assertEquals(LongColumn.class, profile.getAttribute("position").getColumnType());
+
+        GTFAttributeProfile.AttributeStatistics score = profile.getAttribute("score");
+        Assert.assertEquals(DoubleColumn.class, score.getColumnType());
+        Assert.assertEquals(rows / 2, score.getNACount());
+        Assert.assertEquals(250, score.getDistinctCount(), 250 * 0.05);
+
+        Assert.assertEquals(rows / 10, profile.getAttribute("tag").getCount());
+        Assert.assertEquals(Arrays.asList("gene_id", "gene_biotype", "exon_number", "position", "score", "tag"),
+                Arrays.asList(profile.getAttributes().stream()
+                        .map(GTFAttributeProfile.AttributeStatistics::getKey).toArray()));
+    }
+
+    @Test
+    public void sampleTest() {
+        GTFAttributeProfile profile = GTFAttributeProfile.create(new StringReader(createData(1000)), 5);
+        Assert.assertEquals(5, profile.getRowCount());
+        Assert.assertEquals(5, profile.getAttribute("gene_id").getCount());
+        Assert.assertEquals(1, profile.getAttribute("tag").getCount());
+    }
+
+    @Test
+    public void applyProfileTest() throws IOException {
+        File file = folder.newFile("profile.gtf");
+        Files.write(file.toPath(), createData(1000).getBytes(StandardCharsets.UTF_8));
+        GTFAttributeProfile profile = GTFAttributeProfile.create(file);
+        GTFReader reader = GTFReaderBuilder.create()
+                .withProfile(profile)
+                .build();
+        DataFrame dataFrame = DataFrame.load(file, reader);
+        Assert.assertEquals(1000, dataFrame.size());
+        Assert.assertTrue(dataFrame.getColumn("exon_number") instanceof IntegerColumn);
+        Assert.assertTrue(dataFrame.getColumn("position") instanceof LongColumn);
+        Assert.assertTrue(dataFrame.getColumn("score") instanceof DoubleColumn);
+        Assert.assertTrue(dataFrame.getColumn("gene_id") instanceof StringColumn);
+
+        Map<String, Integer> dictionarySizes = reader.getDictionarySizes();
+        Assert.assertEquals(Integer.valueOf(2), dictionarySizes.get("gene_biotype"));
+        Assert.assertEquals(Integer.valueOf(1), dictionarySizes.get("tag"));
+        Assert.assertFalse(dictionarySizes.containsKey("gene_id"));
+    }
+}
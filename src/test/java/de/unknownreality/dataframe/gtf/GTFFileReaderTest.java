@@ -0,0 +1,651 @@
+package de.unknownreality.dataframe.gtf;
+
+import de.unknownreality.dataframe.DataFrame;
+import de.unknownreality.dataframe.DataFrameRuntimeException;
+import de.unknownreality.dataframe.Values;
+import de.unknownreality.dataframe.column.DoubleColumn;
+import de.unknownreality.dataframe.common.Row;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.management.ObjectName;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+public class GTFFileReaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File createFile(int lines) throws IOException {
+        File file = folder.newFile("test.gtf");
+        String[] features = new String[]{"gene", "transcript", "exon", "CDS"};
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            writer.write("#!genome-build GRCh38");
+            writer.newLine();
+            for (int i = 0; i < lines; i++) {
+                if (i % 1000 == 0) {
+                    writer.write("#comment " + i);
+                    writer.newLine();
+                }
+                writer.write("chr" + (i / 10000 + 1) + "\tensembl\t" + features[i % features.length]
+                        + "\t" + (i * 10 + 1) + "\t" + (i * 10 + 100)
+                        + "\t" + (i % 3 == 0 ? "." : Double.toString(i / 10.0))
+                        + "\t" + (i % 2 == 0 ? "+" : "-") + "\t" + (i % 4 == 0 ? "." : "0") + "\t");
+                if (i % 7 == 0) {
+                    writer.write(".");
+                } else {
+                    writer.write("gene_id \"G" + i + "\"; gene_name \"name " + i + "\";");
+                    if (i % 5 == 0) {
+                        writer.write(" test_value \"" + (i / 2.0) + "\";");
+                    }
+                }
+                writer.newLine();
+            }
+        }
+        return file;
+    }
+
+    @Test
+    public void parallelReaderTest() throws IOException {
+        File file = createFile(40000);
+        Assert.assertTrue(file.length() > 2 * 1024 * 1024);
+
+        GTFReaderBuilder builder = GTFReaderBuilder.create()
+                .withAttribute("gene_id")
+                .withAttribute("test_value", DoubleColumn.class)
+                .withPreFilter("start > '20000'");
+        DataFrame sequential = DataFrame.load(file, builder.build());
+        DataFrame parallel = DataFrame.load(file, builder.withParallelism(4).build());
+
+        Assert.assertEquals(40000 - 2000, sequential.size());
+        assertEquals(sequential, parallel);
+    }
+
+    @Test
+    public void parallelRowNumberTest() throws IOException {
+        File file = createFile(40000);
+        GTFIterator iterator = GTFReaderBuilder.create()
+                .withGTFField(GTFField.FEATURE)
+                .withPreFilter("feature == 'exon'")
+                .withParallelism(3)
+                .build()
+                .load(file);
+        int index = 0;
+        for (GTFRow row : iterator) {
+            Assert.assertEquals(index++, row.getIndex());
+            Assert.assertEquals("exon", row.get(GTFField.FEATURE.getName()));
+        }
+        Assert.assertEquals(10000, index);
+    }
+
+    @Test
+    public void parallelCloseTest() throws IOException, InterruptedException {
+        File file = createFile(40000);
+        GTFReader reader = GTFReaderBuilder.create()
+                .withGTFField(GTFField.START)
+                .withParallelism(3)
+                .build();
+        Set<Thread> before = readerThreads();
+        GTFIterator iterator = reader.load(file);
+        Assert.assertTrue(iterator.hasNext());
+        iterator.next();
+        Set<Thread> workers = readerThreads();
+        workers.removeAll(before);
+        Assert.assertFalse(workers.isEmpty());
+        iterator.close();
+        for (Thread worker : workers) {
+            worker.join(5000);
+            Assert.assertFalse(worker.isAlive());
+        }
+        Assert.assertFalse(iterator.hasNext());
+
+        File invalid = folder.newFile("invalid.gtf");
+        Files.write(invalid.toPath(), ("chr1\tensembl\texon\tinvalid\n").getBytes(StandardCharsets.UTF_8));
+        Files.write(invalid.toPath(), Files.readAllBytes(file.toPath()), StandardOpenOption.APPEND);
+        before = readerThreads();
+        iterator = reader.load(invalid);
+        workers = readerThreads();
+        workers.removeAll(before);
+        Assert.assertFalse(workers.isEmpty());
+        try {
+            iterator.hasNext();
+            Assert.fail("invalid first line not detected");
+        } catch (DataFrameRuntimeException e) {
+            // expected
+        }
+        for (Thread worker : workers) {
+            worker.join(5000);
+            Assert.assertFalse(worker.isAlive());
+        }
+    }
+
+    @Test
+    public void parallelErrorLineTest() throws IOException {
+        File file = createFile(40000);
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        lines.set(30000, "chr1\tensembl\texon\tinvalid");
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+        GTFReaderBuilder builder = GTFReaderBuilder.create().withGTFField(GTFField.START);
+        DataFrameRuntimeException sequential = readUntilError(builder.build().load(file));
+        DataFrameRuntimeException parallel = readUntilError(builder.withParallelism(3).build().load(file));
+        Assert.assertEquals("error reading gtf row: 30000", sequential.getMessage());
+        Assert.assertEquals(sequential.getMessage(), parallel.getMessage());
+    }
+
+    private static DataFrameRuntimeException readUntilError(GTFIterator iterator) {
+        int rows = 0;
+        try {
+            while (iterator.hasNext()) {
+                iterator.next();
+                rows++;
+            }
+        } catch (DataFrameRuntimeException e) {
+            // all rows before the invalid line are returned, except the header and one comment line per 1000 rows
+            Assert.assertEquals(30000 - 31, rows);
+            return e;
+        }
+        Assert.fail("invalid line not detected");
+        return null;
+    }
+
+    private static Set<Thread> readerThreads() {
+        Set<Thread> threads = new HashSet<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("gtf-reader") && thread.isAlive()) {
+                threads.add(thread);
+            }
+        }
+        return threads;
+    }
+
+    @Test
+    public void rowReuseTest() throws IOException {
+        File file = createFile(40000);
+        GTFReaderBuilder builder = GTFReaderBuilder.create()
+                .withGTFField(GTFField.FEATURE)
+                .withGTFField(GTFField.START)
+                .withAttribute("gene_id")
+                .withPreFilter("feature == 'exon'");
+        List<GTFRow> expected = new ArrayList<>();
+        for (GTFRow row : builder.build().load(file)) {
+            expected.add(row);
+        }
+        DataFrame expectedDataFrame = DataFrame.load(file, builder.build());
+        // toString() is only compared if rows print their values
+        GTFRow firstRow = expected.get(0);
+        boolean valueToString = firstRow.toString().equals(new GTFRow(firstRow.getHeader(),
+                firstRow.getValues().clone(), firstRow.getIndex()).toString());
+        for (int parallelism : new int[]{1, 3}) {
+            GTFReader reader = builder.withRowReuse(true).withParallelism(parallelism).build();
+            GTFRow first = null;
+            int index = 0;
+            List<GTFRow> copies = new ArrayList<>();
+            for (GTFRow row : reader.load(file)) {
+                if (first == null) {
+                    first = row;
+                }
+                Assert.assertSame(first, row);
+                Assert.assertEquals(index, row.getIndex());
+                GTFRow expectedRow = expected.get(index++);
+                Assert.assertArrayEquals(expectedRow.getValues(), row.getValues());
+                Assert.assertEquals(expectedRow.get("gene_id"), row.get("gene_id"));
+                Assert.assertEquals(expectedRow.getString(GTFField.START.getName()),
+                        row.getString(GTFField.START.getName()));
+                Assert.assertEquals(expectedRow.isNA("gene_id"), row.isNA("gene_id"));
+                if (valueToString) {
+                    Assert.assertEquals(expectedRow.toString(), row.toString());
+                }
+                copies.add(((GTFReusableRow) row).copy());
+            }
+            Assert.assertEquals(expected.size(), index);
+            for (int i = 0; i < copies.size(); i++) {
+                Assert.assertArrayEquals(expected.get(i).getValues(), copies.get(i).getValues());
+            }
+            assertEquals(expectedDataFrame, DataFrame.load(file, reader));
+        }
+    }
+
+    @Test
+    public void memoryMappedReaderTest() throws IOException {
+        File file = createFile(40000);
+        GTFReaderBuilder builder = GTFReaderBuilder.create()
+                .withGTFField(GTFField.SEQNAME)
+                .withGTFField(GTFField.START)
+                .withGTFField(GTFField.SCORE)
+                .withGTFField(GTFField.STRAND)
+                .withAttribute("gene_name")
+                .withAttribute("test_value", DoubleColumn.class)
+                .withPreFilter("strand == '+'");
+        DataFrame expected = DataFrame.load(file, builder.build());
+        DataFrame mapped = DataFrame.load(file, builder.withMemoryMapping(true).build());
+        DataFrame mappedParallel = DataFrame.load(file, builder.withParallelism(4).build());
+
+        Assert.assertEquals(20000, expected.size());
+        assertEquals(expected, mapped);
+        assertEquals(expected, mappedParallel);
+    }
+
+    @Test
+    public void memoryMappedLineBreakTest() throws IOException {
+        File file = folder.newFile("crlf.gtf");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            writer.write("#comment\r\n");
+            writer.write("1\tensembl\tgene\t1\t100\t.\t+\t.\tgene_id \"A\";\r\n");
+            writer.write("\r\n");
+            writer.write("1\tensembl\texon\t10\t20\t.\t-\t.\tgene_id \"B\"");
+        }
+        DataFrame dataFrame = DataFrame.load(file, GTFReaderBuilder.create()
+                .withAttribute("gene_id")
+                .withMemoryMapping(true)
+                .build());
+        Assert.assertEquals(2, dataFrame.size());
+        Assert.assertEquals("A", dataFrame.getRow(0).get("gene_id"));
+        Assert.assertEquals("B", dataFrame.getRow(1).get("gene_id"));
+        Assert.assertEquals("-", dataFrame.getRow(1).get(GTFField.STRAND.getName()));
+    }
+
+    @Test
+    public void columnLoaderTest() throws IOException {
+        File file = createFile(40000);
+        GTFReaderBuilder builder = GTFReaderBuilder.create()
+                .withAttribute("gene_id")
+                .withAttribute("test_value", DoubleColumn.class);
+        DataFrame expected = DataFrame.load(file, builder.build());
+        assertEquals(expected, builder.build().loadDataFrame(file));
+        assertEquals(expected, builder.withMemoryMapping(true).build().loadDataFrame(file));
+
+        builder.withPreFilter("start > '20000'");
+        expected = DataFrame.load(file, builder.build());
+        Assert.assertEquals(38000, expected.size());
+        assertEquals(expected, builder.build().loadDataFrame(file));
+    }
+
+    @Test
+    public void gzipReaderTest() throws IOException {
+        File file = createFile(20000);
+        File gzipFile = folder.newFile("test.gtf.gz");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gzipFile))) {
+            Files.copy(file.toPath(), out);
+        }
+        GTFReaderBuilder builder = GTFReaderBuilder.create()
+                .withAttribute("gene_id")
+                .withAttribute("test_value", DoubleColumn.class);
+        DataFrame expected = DataFrame.load(file, builder.build());
+        assertEquals(expected, DataFrame.load(gzipFile, builder.build()));
+        assertEquals(expected, builder.build().loadDataFrame(gzipFile));
+        assertEquals(expected, DataFrame.load(gzipFile, builder.withParallelism(4).withMemoryMapping(true).build()));
+    }
+
+    @Test
+    public void bgzfReaderTest() throws IOException {
+        File file = createFile(40000);
+        File bgzfFile = folder.newFile("test.gtf.bgz");
+        writeBGZF(file, bgzfFile);
+        GTFReaderBuilder builder = GTFReaderBuilder.create()
+                .withAttribute("gene_id")
+                .withAttribute("gene_name")
+                .withAttribute("test_value", DoubleColumn.class)
+                .withPreFilter("start > '20000'");
+        DataFrame expected = DataFrame.load(file, builder.build());
+        assertEquals(expected, DataFrame.load(bgzfFile, builder.build()));
+        assertEquals(expected, DataFrame.load(bgzfFile, builder.withParallelism(4).build()));
+        assertEquals(expected, builder.build().loadDataFrame(bgzfFile));
+    }
+
+    @Test
+    public void allAttributesTest() throws IOException {
+        File file = createFile(20000);
+        DataFrame expected = DataFrame.load(file, GTFReaderBuilder.create()
+                .withAttribute("test_value", DoubleColumn.class)
+                .withAttribute("gene_id")
+                .withAttribute("gene_name")
+                .build());
+        GTFReaderBuilder builder = GTFReaderBuilder.create()
+                .withAttribute("test_value", DoubleColumn.class)
+                .withAllAttributes();
+        DataFrame dataFrame = builder.build().loadDataFrame(file);
+        assertEquals(expected, dataFrame);
+        Assert.assertTrue(dataFrame.getColumn("test_value") instanceof DoubleColumn);
+        assertEquals(expected, DataFrame.load(file, builder.build()));
+        assertEquals(expected, DataFrame.load(file, builder.withParallelism(4).build()));
+    }
+
+    @Test
+    public void sparseAttributesTest() throws IOException {
+        File file = folder.newFile("sparse.gtf");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            for (int i = 0; i < 5000; i++) {
+                writer.write("chr1\tensembl\texon\t" + (i + 1) + "\t" + (i + 10) + "\t.\t+\t.\t");
+                writer.write(i % 100 == 0 ? "." : "gene_id \"G" + i + "\";");
+                if (i == 1234) {
+                    writer.write(" tag \"first\"; tag \"basic\";");
+                }
+                if (i > 4990) {
+                    writer.write(" note \"a\\\"b\";");
+                }
+                writer.newLine();
+            }
+        }
+        GTFReader reader = GTFReaderBuilder.create()
+                .withGTFField(GTFField.START)
+                .withAllAttributes()
+                .build();
+        DataFrame dataFrame = reader.loadDataFrame(file);
+        Assert.assertEquals(5000, dataFrame.size());
+        Assert.assertEquals(4, dataFrame.getColumns().size());
+        Assert.assertEquals("G1", dataFrame.getColumn("gene_id").get(1));
+        Assert.assertNull(dataFrame.getColumn("gene_id").get(100));
+        Assert.assertEquals("basic", dataFrame.getColumn("tag").get(1234));
+        Assert.assertNull(dataFrame.getColumn("tag").get(1233));
+        Assert.assertNull(dataFrame.getColumn("tag").get(1235));
+        Assert.assertNull(dataFrame.getColumn("note").get(4990));
+        Assert.assertEquals("a\"b", dataFrame.getColumn("note").get(4999));
+        assertEquals(dataFrame, DataFrame.load(file, reader));
+    }
+
+    @Test(expected = DataFrameRuntimeException.class)
+    public void allAttributesReaderTest() {
+        GTFReaderBuilder.create()
+                .withAllAttributes()
+                .build()
+                .load(new StringReader("chr1\tensembl\texon\t1\t10\t.\t+\t.\tgene_id \"G1\";"));
+    }
+
+    @Test
+    public void cacheTest() throws IOException {
+        File file = createFile(20000);
+        GTFReaderBuilder builder = GTFReaderBuilder.create()
+                .withAttribute("gene_id")
+                .withAttribute("test_value", DoubleColumn.class)
+                .withDictionaryEncoding(GTFField.SEQNAME);
+        DataFrame expected = builder.build().loadDataFrame(file);
+
+        GTFReader reader = builder.withCache(true).build();
+        File cacheFile = GTFCache.getCacheFile(file, reader.getSettings());
+        Assert.assertFalse(cacheFile.exists());
+        assertEquals(expected, reader.loadDataFrame(file));
+        Assert.assertTrue(cacheFile.exists());
+        Assert.assertNotNull(GTFCache.read(file, reader.getSettings()));
+        assertEquals(expected, reader.loadDataFrame(file));
+        Assert.assertEquals(Integer.valueOf(2), reader.getDictionarySizes().get(GTFField.SEQNAME.getName()));
+
+        GTFReader allAttributesReader = GTFReaderBuilder.create()
+                .withAllAttributes()
+                .withCache(true)
+                .build();
+        DataFrame allAttributes = allAttributesReader.loadDataFrame(file);
+        Assert.assertNotEquals(cacheFile, GTFCache.getCacheFile(file, allAttributesReader.getSettings()));
+        assertEquals(allAttributes, allAttributesReader.loadDataFrame(file));
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, true))) {
+            writer.write("chr9\tensembl\tgene\t1\t2\t.\t+\t.\tgene_id \"X\";");
+            writer.newLine();
+        }
+        Assert.assertNull(GTFCache.read(file, reader.getSettings()));
+        DataFrame changed = reader.loadDataFrame(file);
+        Assert.assertEquals(expected.size() + 1, changed.size());
+        Assert.assertNotNull(GTFCache.read(file, reader.getSettings()));
+        assertEquals(changed, reader.loadDataFrame(file));
+    }
+
+    @Test
+    public void parseMetricsTest() throws Exception {
+        File file = createFile(40000);
+        int attributeSplits = 0;
+        for (int i = 2; i < 40000; i += 4) {
+            if (i % 7 != 0) {
+                attributeSplits++;
+            }
+        }
+        GTFParseMetrics total = new GTFParseMetrics();
+        List<GTFParseMetrics> loads = new ArrayList<>();
+        GTFReaderBuilder builder = GTFReaderBuilder.create()
+                .withAttribute("gene_id")
+                .withPreFilter("feature == 'exon'")
+                .withParseListener(total)
+                .withParseListener(loads::add);
+
+        Assert.assertEquals(10000, DataFrame.load(file, builder.build()).size());
+        Assert.assertEquals(10000, builder.build().loadDataFrame(file).size());
+        Assert.assertEquals(10000, builder.build().stream(file, record -> record.get("gene_id")));
+        Assert.assertEquals(10000, DataFrame.load(file, builder.withParallelism(4).build()).size());
+
+        Assert.assertEquals(4, loads.size());
+        for (GTFParseMetrics metrics : loads) {
+            Assert.assertEquals(1, metrics.getLoadCount());
+            Assert.assertEquals(40041, metrics.getLineCount());
+            Assert.assertEquals(41, metrics.getSkippedLineCount());
+            // the test file is ASCII with \n line terminators
+            Assert.assertEquals(file.length(), metrics.getCharactersRead());
+            Assert.assertEquals(10000, metrics.getRowCount());
+            Assert.assertEquals(30000, metrics.getFilteredRowCount());
+            Assert.assertEquals(attributeSplits, metrics.getAttributeSplitCount());
+            Assert.assertEquals(attributeSplits, metrics.getAttributeValueCount());
+            Assert.assertTrue(metrics.getReadNanos() > 0);
+            Assert.assertTrue(metrics.getTokenizeNanos() > 0);
+            Assert.assertTrue(metrics.getFilterNanos() > 0);
+        }
+        Assert.assertEquals(4, total.getLoadCount());
+        Assert.assertEquals(4 * 40041, total.getLineCount());
+
+        ObjectName name = total.register("parseMetricsTest");
+        try {
+            Assert.assertEquals(4L * 10000,
+                    ManagementFactory.getPlatformMBeanServer().getAttribute(name, "RowCount"));
+        } finally {
+            total.unregister("parseMetricsTest");
+        }
+        Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    @Test
+    public void streamWriterTest() throws IOException {
+        File file = createFile(20000);
+        GTFReader reader = GTFReaderBuilder.create()
+                .withAttribute("gene_id")
+                .withAttribute("test_value", DoubleColumn.class)
+                .withPreFilter("feature != 'gene'")
+                .build();
+        DataFrame dataFrame = DataFrame.load(file, reader);
+        File expected = folder.newFile("expected.gtf");
+        dataFrame.write(expected, GTFFormat.GTF);
+        byte[] expectedBytes = Files.readAllBytes(expected.toPath());
+
+        File parallel = folder.newFile("parallel.gtf");
+        GTFWriter parallelWriter = GTFWriterBuilder.create()
+                .withParallelism(4)
+                .withBatchSize(100)
+                .build();
+        Assert.assertEquals(15000, parallelWriter.write(parallel, reader.load(file)));
+        Assert.assertArrayEquals(expectedBytes, Files.readAllBytes(parallel.toPath()));
+
+        File records = folder.newFile("records.gtf");
+        Assert.assertEquals(15000, parallelWriter.write(records, reader.stream(file).map(GTFRecordView::toRow)));
+        Assert.assertArrayEquals(expectedBytes, Files.readAllBytes(records.toPath()));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Assert.assertEquals(15000, GTFWriterBuilder.create().build()
+                .write(output, dataFrame.getHeader(), dataFrame.iterator()));
+        Assert.assertArrayEquals(expectedBytes, output.toByteArray());
+    }
+
+    @Test
+    public void reusedRowWriterTest() throws IOException {
+        File file = createFile(5000);
+        GTFReaderBuilder builder = GTFReaderBuilder.create()
+                .withAttribute("gene_id")
+                .withPreFilter("feature != 'gene'");
+        File expected = folder.newFile("expected.gtf");
+        Assert.assertEquals(3750, GTFWriterBuilder.create().build().write(expected, builder.build().load(file)));
+        byte[] expectedBytes = Files.readAllBytes(expected.toPath());
+
+        GTFReader reader = builder.withRowReuse(true).build();
+        for (int parallelism : new int[]{1, 3}) {
+            File reused = folder.newFile("reused" + parallelism + ".gtf");
+            GTFWriter writer = GTFWriterBuilder.create()
+                    .withParallelism(parallelism)
+                    .withBatchSize(100)
+                    .build();
+            Assert.assertEquals(3750, writer.write(reused, reader.load(file)));
+            Assert.assertArrayEquals(expectedBytes, Files.readAllBytes(reused.toPath()));
+        }
+    }
+
+    @Test
+    public void flyweightRowWriterTest() throws IOException {
+        File file = createFile(5000);
+        GTFReader reader = GTFReaderBuilder.create()
+                .withAttribute("gene_id")
+                .build();
+        List<GTFRow> rows = new ArrayList<>();
+        for (GTFRow row : reader.load(file)) {
+            rows.add(row);
+        }
+        GTFHeader header = rows.get(0).getHeader();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        GTFWriterBuilder.create().build().write(expected, header, rows.iterator());
+
+        String[] values = new String[header.size()];
+        GTFRow flyweight = new GTFRow(header, values, 0);
+        Iterator<GTFRow> source = rows.iterator();
+        Iterator<GTFRow> flyweights = new Iterator<GTFRow>() {
+            @Override
+            public boolean hasNext() {
+                return source.hasNext();
+            }
+
+            @Override
+            public GTFRow next() {
+                System.arraycopy(source.next().getValues(), 0, values, 0, values.length);
+                return flyweight;
+            }
+        };
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Assert.assertEquals(5000, GTFWriterBuilder.create()
+                .withParallelism(3)
+                .withBatchSize(100)
+                .build()
+                .write(output, header, flyweights));
+        Assert.assertArrayEquals(expected.toByteArray(), output.toByteArray());
+    }
+
+    @Test
+    public void parallelFormatTest() throws IOException {
+        File file = createFile(5000);
+        GTFReader reader = GTFReaderBuilder.create()
+                .withAttribute("gene_id")
+                .build();
+        List<GTFRow> rows = new ArrayList<>();
+        for (GTFRow row : reader.load(file)) {
+            rows.add(row);
+        }
+        GTFHeader header = rows.get(0).getHeader();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        GTFWriterBuilder.create().build().write(expected, header, rows.iterator());
+
+        Set<String> formatThreads = Collections.synchronizedSet(new HashSet<>());
+        Iterator<GTFRow> source = rows.iterator();
+        Iterator<GTFRow> recording = new Iterator<GTFRow>() {
+            @Override
+            public boolean hasNext() {
+                return source.hasNext();
+            }
+
+            @Override
+            public GTFRow next() {
+                GTFRow row = source.next();
+                return new GTFRow(header, row.getValues(), row.getIndex()) {
+                    @Override
+                    public Object get(int index) {
+                        String value = row.getValues()[index];
+                        if (Values.NA.isNA(value)) {
+                            return value;
+                        }
+                        return new Object() {
+                            @Override
+                            public String toString() {
+                                formatThreads.add(Thread.currentThread().getName());
+                                return value;
+                            }
+                        };
+                    }
+                };
+            }
+        };
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Assert.assertEquals(5000, GTFWriterBuilder.create()
+                .withParallelism(3)
+                .withBatchSize(100)
+                .build()
+                .write(output, header, recording));
+        Assert.assertArrayEquals(expected.toByteArray(), output.toByteArray());
+        Assert.assertFalse(formatThreads.isEmpty());
+        for (String thread : formatThreads) {
+            Assert.assertTrue(thread, thread.startsWith("gtf-writer"));
+        }
+    }
+
+    private static void writeBGZF(File source, File target) throws IOException {
+        byte[] data = Files.readAllBytes(source.toPath());
+        byte[] compressed = new byte[70000];
+        try (OutputStream out = new FileOutputStream(target)) {
+            for (int offset = 0; offset <= data.length; offset += 60000) {
+                int length = Math.min(60000, data.length - offset);
+                Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+                deflater.setInput(data, offset, length);
+                deflater.finish();
+                int compressedLength = deflater.deflate(compressed);
+                deflater.end();
+                CRC32 crc = new CRC32();
+                crc.update(data, offset, length);
+                int blockSize = compressedLength + 26;
+                out.write(new byte[]{0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0,
+                        (byte) (blockSize - 1), (byte) ((blockSize - 1) >> 8)});
+                out.write(compressed, 0, compressedLength);
+                writeInt(out, (int) crc.getValue());
+                writeInt(out, length);
+            }
+        }
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        out.write(value);
+        out.write(value >> 8);
+        out.write(value >> 16);
+        out.write(value >> 24);
+    }
+
+    private static void assertEquals(DataFrame expected, DataFrame actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        Assert.assertEquals(expected.getColumns().size(), actual.getColumns().size());
+        Iterator<? extends Row> actualRows = actual.iterator();
+        for (Row expectedRow : expected) {
+            Row actualRow = actualRows.next();
+            for (int i = 0; i < expectedRow.size(); i++) {
+                Assert.assertEquals(expectedRow.get(i), actualRow.get(i));
+            }
+        }
+    }
+}
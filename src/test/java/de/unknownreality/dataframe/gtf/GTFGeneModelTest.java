@@ -0,0 +1,164 @@
+package de.unknownreality.dataframe.gtf;
+
+import de.unknownreality.dataframe.DataFrameRuntimeException;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+public class GTFGeneModelTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String DATA = "#!genome-build test\n" +
+            line("chr1", "gene", 100, 1000, "+", "G1", null) +
+            line("chr1", "transcript", 100, 1000, "+", "G1", "T1") +
+            line("chr1", "exon", 100, 200, "+", "G1", "T1") +
+            line("chr1", "CDS", 150, 200, "+", "G1", "T1") +
+            line("chr1", "exon", 801, 1000, "+", "G1", "T1") +
+            line("chr1", "CDS", 801, 900, "+", "G1", "T1") +
+            line("chr1", "exon", 301, 400, "+", "G1", "T1") +
+            line("chr1", "CDS", 301, 400, "+", "G1", "T1") +
+            line("chr1", "gene", 500, 3000, "-", "G2", null) +
+            line("chr1", "exon", 2001, 3000, "-", "G2", "T2") +
+            line("chr1", "exon", 500, 600, "-", "G2", "T2") +
+            line("chr1", "exon", 5000, 5100, "+", "G3", "T3") +
+            line("chr2", "exon", 10, 20, "+", "G4", "T4") +
+            line("chr2", "exon", 40, 50, "+", "G4", "T4") +
+            line("chr2", "exon", 30, 60, "+", "G4", "T5");
+
+    private static String line(String seqname, String feature, long start, long end, String strand,
+                               String geneId, String transcriptId) {
+        return seqname + "\ttest\t" + feature + "\t" + start + "\t" + end + "\t.\t" + strand + "\t.\t" +
+                "gene_id \"" + geneId + "\"; gene_name \"" + geneId + "-name\";" +
+                (transcriptId == null ? "" : " transcript_id \"" + transcriptId + "\";") + "\n";
+    }
+
+    private void assertModel(GTFGeneModel model) {
+        Assert.assertEquals(4, model.size());
+        Assert.assertEquals(5, model.getTranscriptCount());
+
+        GTFGene g1 = model.getGene("G1");
+        Assert.assertEquals("G1-name", g1.getName());
+        Assert.assertEquals("chr1", g1.getSeqname());
+        Assert.assertEquals('+', g1.getStrand());
+        Assert.assertEquals(100, g1.getStart());
+        Assert.assertEquals(1000, g1.getEnd());
+        Assert.assertEquals(1, g1.getTranscripts().size());
+
+        GTFTranscript t1 = g1.getTranscript("T1");
+        Assert.assertEquals(3, t1.getExonCount());
+        Assert.assertEquals(100, t1.getExonStart(0));
+        Assert.assertEquals(301, t1.getExonStart(1));
+        Assert.assertEquals(1000, t1.getExonEnd(2));
+        Assert.assertEquals(101 + 100 + 200, t1.getLength());
+        Assert.assertTrue(t1.isCoding());
+        Assert.assertEquals(3, t1.getCDSCount());
+        Assert.assertEquals(51 + 100 + 100, t1.getCodingLength());
+        Assert.assertEquals(2, t1.getIntronCount());
+        Assert.assertEquals(201, t1.getIntronStart(0));
+        Assert.assertEquals(300, t1.getIntronEnd(0));
+        Assert.assertEquals(401, t1.getIntronStart(1));
+        Assert.assertEquals(800, t1.getIntronEnd(1));
+
+        GTFTranscript t2 = model.getTranscript("T2");
+        Assert.assertEquals("G2", t2.getGeneId());
+        Assert.assertEquals('-', t2.getStrand());
+        Assert.assertEquals(500, t2.getExonStart(0));
+        Assert.assertEquals(2001, t2.getExonStart(1));
+        Assert.assertEquals(601, t2.getIntronStart(0));
+        Assert.assertEquals(2000, t2.getIntronEnd(0));
+        Assert.assertFalse(t2.isCoding());
+        Assert.assertEquals(500, t2.getStart());
+        Assert.assertEquals(3000, t2.getEnd());
+
+        GTFGene g4 = model.getGene("G4");
+        Assert.assertEquals(10, g4.getStart());
+        Assert.assertEquals(60, g4.getEnd());
+        Assert.assertEquals(2, g4.getTranscripts().size());
+        Assert.assertEquals(0, model.getTranscript("T5").getIntronCount());
+        Assert.assertNull(model.getGene("G5"));
+    }
+
+    @Test
+    public void unsortedTest() {
+        GTFGeneModel model = GTFGeneModelBuilder.create().build(new StringReader(DATA));
+        assertModel(model);
+        Assert.assertEquals("G1", model.getGenes().get(0).getId());
+    }
+
+    @Test
+    public void spillTest() throws IOException {
+        File tempDirectory = folder.newFolder();
+        GTFGeneModel model = GTFGeneModelBuilder.create()
+                .withMaxBufferedFeatures(3)
+                .withTempDirectory(tempDirectory)
+                .build(new StringReader(DATA));
+        assertModel(model);
+        String[] files = tempDirectory.list();
+        Assert.assertNotNull(files);
+        Assert.assertEquals(0, files.length);
+    }
+
+    @Test
+    public void sortedTest() {
+        List<String> completed = new ArrayList<>();
+        List<GTFGene> genes = new ArrayList<>();
+        int count = GTFGeneModelBuilder.create()
+                .withSortedInput(true)
+                .stream(new StringReader(DATA), gene -> {
+                    completed.add(gene.getId());
+                    genes.add(gene);
+                });
+        Assert.assertEquals(4, count);
+        // G1 and G2 end before G3 starts, G3 is completed by the change of the sequence
+        Assert.assertEquals("G1", completed.get(0));
+        Assert.assertEquals("G2", completed.get(1));
+        Assert.assertEquals("G3", completed.get(2));
+        Assert.assertEquals("G4", completed.get(3));
+        assertModel(new GTFGeneModel(genes));
+    }
+
+    @Test
+    public void sortedNestedGeneTest() {
+        // G2 lies in the intron of G1, without gene records the end of G1 is not known before the end of chr1
+        String data = line("chr1", "exon", 100, 200, "+", "G1", "T1") +
+                line("chr1", "exon", 300, 400, "-", "G2", "T2") +
+                line("chr1", "exon", 500, 600, "+", "G1", "T1") +
+                line("chr2", "exon", 10, 20, "+", "G3", "T3");
+        List<String> completed = new ArrayList<>();
+        List<GTFGene> genes = new ArrayList<>();
+        GTFGeneModelBuilder.create()
+                .withSortedInput(true)
+                .stream(new StringReader(data), gene -> {
+                    completed.add(gene.getId());
+                    genes.add(gene);
+                });
+        Assert.assertEquals(3, completed.size());
+        Assert.assertEquals("G3", completed.get(2));
+        GTFGeneModel model = new GTFGeneModel(genes);
+        GTFGene g1 = model.getGene("G1");
+        Assert.assertEquals(100, g1.getStart());
+        Assert.assertEquals(600, g1.getEnd());
+        Assert.assertEquals(2, model.getTranscript("T1").getExonCount());
+        Assert.assertEquals(1, model.getTranscript("T1").getIntronCount());
+        Assert.assertEquals(300, model.getGene("G2").getStart());
+        Assert.assertEquals(400, model.getGene("G2").getEnd());
+    }
+
+    @Test(expected = DataFrameRuntimeException.class)
+    public void sortedInputErrorTest() {
+        String data = line("chr1", "gene", 100, 200, "+", "G1", null) +
+                line("chr1", "exon", 100, 200, "+", "G1", "T1") +
+                line("chr1", "gene", 300, 400, "+", "G2", null) +
+                line("chr1", "exon", 300, 400, "+", "G2", "T2") +
+                line("chr1", "exon", 500, 600, "+", "G1", "T1");
+        GTFGeneModelBuilder.create().withSortedInput(true).build(new StringReader(data));
+    }
+}
@@ -0,0 +1,206 @@
+package de.unknownreality.dataframe.gtf;
+
+import de.unknownreality.dataframe.DataFrame;
+import de.unknownreality.dataframe.common.Row;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class GTFIndexTest {
+    private static final String[] SEQNAMES = new String[]{"chr1", "chr2", "chrX"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private void writeSortedGTF(Writer writer, int featuresPerSeqname) throws IOException {
+        Random random = new Random(1);
+        writer.write("#!genome-build GRCh38\n");
+        int id = 0;
+        for (String seqname : SEQNAMES) {
+            long start = 1;
+            for (int i = 0; i < featuresPerSeqname; i++) {
+                start += random.nextInt(2000);
+                long length = random.nextInt(100) == 0 ? random.nextInt(2000000) : random.nextInt(5000);
+                writer.write(seqname + "\tensembl\texon\t" + start + "\t" + (start + length)
+                        + "\t.\t+\t.\tgene_id \"G" + (id++) + "\";\n");
+            }
+        }
+    }
+
+    private File createBGZF(int featuresPerSeqname) throws IOException {
+        File file = folder.newFile("sorted.gtf.gz");
+        try (Writer writer = new OutputStreamWriter(
+                new GTFBGZFOutputStream(new FileOutputStream(file)), StandardCharsets.UTF_8)) {
+            writeSortedGTF(writer, featuresPerSeqname);
+        }
+        return file;
+    }
+
+    @Test
+    public void regionQueryTest() throws IOException {
+        File file = createBGZF(20000);
+        File plainFile = folder.newFile("sorted.gtf");
+        try (Writer writer = new FileWriter(plainFile)) {
+            writeSortedGTF(writer, 20000);
+        }
+        GTFIndex index = GTFIndex.create(file);
+        Assert.assertTrue(GTFIndex.getIndexFile(file).exists());
+        Assert.assertEquals(3, index.getSeqnames().size());
+
+        DataFrame all = DataFrame.load(plainFile, GTFReaderBuilder.create()
+                .withGTFField(GTFField.SEQNAME)
+                .withGTFField(GTFField.START)
+                .withGTFField(GTFField.END)
+                .withAttribute("gene_id")
+                .build());
+        Random random = new Random(2);
+        for (int q = 0; q < 30; q++) {
+            String seqname = SEQNAMES[random.nextInt(SEQNAMES.length)];
+            long start = 1 + random.nextInt(20000000);
+            long end = start + (q % 3 == 0 ? random.nextInt(100) : random.nextInt(3000000));
+            List<String> expected = new ArrayList<>();
+            for (Row row : all) {
+                if (row.get(GTFField.SEQNAME.getName()).equals(seqname)
+                        && (Long) row.get(GTFField.START.getName()) <= end
+                        && (Long) row.get(GTFField.END.getName()) >= start) {
+                    expected.add((String) row.get("gene_id"));
+                }
+            }
+            GTFReaderBuilder builder = GTFReaderBuilder.create()
+                    .withAttribute("gene_id")
+                    .withRegion(seqname, start, end);
+            Assert.assertEquals(expected, geneIds(DataFrame.load(file, builder.build())));
+            Assert.assertEquals(expected, geneIds(builder.build().loadDataFrame(file)));
+            Assert.assertEquals(expected, geneIds(DataFrame.load(plainFile, builder.build())));
+        }
+
+        DataFrame empty = DataFrame.load(file, GTFReaderBuilder.create()
+                .withRegion("chrY:1-1000000")
+                .build());
+        Assert.assertEquals(0, empty.size());
+    }
+
+    @Test
+    public void indexFileTest() throws IOException {
+        File file = createBGZF(5000);
+        GTFIndex index = GTFIndex.build(file);
+        File indexFile = folder.newFile("index.tbi");
+        index.write(indexFile);
+        GTFIndex read = GTFIndex.read(indexFile);
+        Assert.assertEquals(index.getSeqnames(), read.getSeqnames());
+        GTFRegion region = new GTFRegion("chr2", 1000000, 1200000);
+        List<GTFIndex.Chunk> expected = index.query(region);
+        List<GTFIndex.Chunk> actual = read.query(region);
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i).start, actual.get(i).start);
+            Assert.assertEquals(expected.get(i).end, actual.get(i).end);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void unsortedTest() throws IOException {
+        File file = folder.newFile("unsorted.gtf.gz");
+        try (Writer writer = new OutputStreamWriter(
+                new GTFBGZFOutputStream(new FileOutputStream(file)), StandardCharsets.UTF_8)) {
+            writer.write("chr1\tensembl\texon\t100\t200\t.\t+\t.\tgene_id \"A\";\n");
+            writer.write("chr1\tensembl\texon\t50\t200\t.\t+\t.\tgene_id \"B\";\n");
+        }
+        GTFIndex.build(file);
+    }
+
+    @Test
+    public void binTest() {
+        Assert.assertEquals(4681, GTFIndex.reg2bin(0, 1));
+        Assert.assertEquals(585, GTFIndex.reg2bin(0, 1 << 14 + 1));
+        Assert.assertEquals(0, GTFIndex.reg2bin(0, 1 << 29));
+        Assert.assertTrue(GTFIndex.reg2bins(100, 200).contains(GTFIndex.reg2bin(150, 160)));
+    }
+
+    @Test
+    public void writeIndexTest() throws IOException {
+        File plainFile = folder.newFile("sorted.gtf");
+        try (Writer writer = new FileWriter(plainFile)) {
+            writeSortedGTF(writer, 20000);
+        }
+        GTFReader reader = GTFReaderBuilder.create()
+                .withAttribute("gene_id")
+                .build();
+        for (int parallelism : new int[]{1, 4}) {
+            File file = folder.newFile("written" + parallelism + ".gtf.gz");
+            GTFWriter writer = GTFWriterBuilder.create()
+                    .withIndex(true)
+                    .withParallelism(parallelism)
+                    .withBatchSize(1000)
+                    .build();
+            Assert.assertEquals(60000, writer.write(file, reader.load(plainFile)));
+            Assert.assertTrue(GTFCompression.isCompressed(file));
+            File indexFile = GTFIndex.getIndexFile(file);
+            Assert.assertTrue(indexFile.exists());
+
+            GTFIndex written = GTFIndex.read(indexFile);
+            GTFIndex built = GTFIndex.build(file);
+            Assert.assertEquals(built.getSeqnames(), written.getSeqnames());
+            Random random = new Random(3);
+            for (int q = 0; q < 20; q++) {
+                long start = 1 + random.nextInt(20000000);
+                GTFRegion region = new GTFRegion(SEQNAMES[q % SEQNAMES.length], start, start + random.nextInt(1000000));
+                List<GTFIndex.Chunk> expected = built.query(region);
+                List<GTFIndex.Chunk> actual = written.query(region);
+                Assert.assertEquals(expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    Assert.assertEquals(expected.get(i).start, actual.get(i).start);
+                    Assert.assertEquals(expected.get(i).end, actual.get(i).end);
+                }
+                GTFReaderBuilder builder = GTFReaderBuilder.create()
+                        .withAttribute("gene_id")
+                        .withRegion(region.toString());
+                Assert.assertEquals(geneIds(DataFrame.load(plainFile, builder.build())),
+                        geneIds(DataFrame.load(file, builder.build())));
+            }
+        }
+    }
+
+    @Test
+    public void writeUnsortedTest() throws IOException {
+        File plainFile = folder.newFile("unsorted.gtf");
+        try (Writer writer = new FileWriter(plainFile)) {
+            writer.write("chr1\tensembl\texon\t100\t200\t.\t+\t.\tgene_id \"A\";\n");
+            writer.write("chr1\tensembl\texon\t50\t200\t.\t+\t.\tgene_id \"B\";\n");
+        }
+        File file = folder.newFile("unsorted.gtf.gz");
+        File indexFile = GTFIndex.getIndexFile(file);
+        Assert.assertTrue(indexFile.createNewFile());
+        GTFReader reader = GTFReaderBuilder.create()
+                .withAttribute("gene_id")
+                .build();
+        GTFWriterBuilder.create()
+                .withIndex(true)
+                .build()
+                .write(file, reader.load(plainFile));
+        Assert.assertFalse(indexFile.exists());
+        Assert.assertEquals(Arrays.asList("A", "B"), geneIds(DataFrame.load(file, reader)));
+    }
+
+    private static List<String> geneIds(DataFrame dataFrame) {
+        List<String> geneIds = new ArrayList<>();
+        for (Row row : dataFrame) {
+            geneIds.add((String) row.get("gene_id"));
+        }
+        return geneIds;
+    }
+}
@@ -0,0 +1,115 @@
+package de.unknownreality.dataframe.gtf;
+
+import de.unknownreality.dataframe.DataFrame;
+import de.unknownreality.dataframe.column.LongColumn;
+import de.unknownreality.dataframe.column.StringColumn;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+public class GTFIntervalIndexTest {
+    private static final String[] SEQNAMES = new String[]{"chr1", "chr2", "chr3"};
+    private static final String[] STRANDS = new String[]{"+", "-", "."};
+
+    private final StringColumn seqnames = new StringColumn(GTFField.SEQNAME.getName());
+    private final LongColumn starts = new LongColumn(GTFField.START.getName());
+    private final LongColumn ends = new LongColumn(GTFField.END.getName());
+    private final StringColumn strands = new StringColumn(GTFField.STRAND.getName());
+
+    private DataFrame createDataFrame(int rows) {
+        Random random = new Random(3);
+        for (int i = 0; i < rows; i++) {
+            long start = 1 + random.nextInt(1000000);
+            seqnames.append(SEQNAMES[random.nextInt(SEQNAMES.length)]);
+            starts.append(start);
+            ends.append(start + (random.nextInt(50) == 0 ? random.nextInt(200000) : random.nextInt(2000)));
+            strands.append(STRANDS[random.nextInt(STRANDS.length)]);
+        }
+        return DataFrame.create()
+                .addColumn(seqnames)
+                .addColumn(starts)
+                .addColumn(ends)
+                .addColumn(strands);
+    }
+
+    private int[] scan(String seqname, long start, long end, String strand) {
+        List<Integer> rows = new ArrayList<>();
+        for (int i = 0; i < seqnames.size(); i++) {
+            if (seqnames.get(i).equals(seqname) && starts.get(i) <= end && ends.get(i) >= start
+                    && (strand == null || strands.get(i).equals(".") || strands.get(i).equals(strand))) {
+                rows.add(i);
+            }
+        }
+        return rows.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int[] sorted(int[] values) {
+        int[] copy = values.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    @Test
+    public void overlapTest() {
+        GTFIntervalIndex index = GTFIntervalIndex.create(createDataFrame(20000));
+        Assert.assertEquals(20000, index.size());
+        Assert.assertEquals(3, index.getSeqnames().size());
+        Random random = new Random(4);
+        for (int q = 0; q < 500; q++) {
+            String seqname = SEQNAMES[random.nextInt(SEQNAMES.length)];
+            long start = 1 + random.nextInt(1100000);
+            long end = start + random.nextInt(q % 2 == 0 ? 10 : 50000);
+            String strand = q % 3 == 0 ? null : STRANDS[random.nextInt(2)];
+            int[] expected = scan(seqname, start, end, strand);
+            int[] actual = index.overlaps(seqname, start, end, strand);
+            Assert.assertArrayEquals(expected, sorted(actual));
+            Assert.assertEquals(expected.length, index.countOverlaps(seqname, start, end, strand));
+        }
+        Assert.assertEquals(0, index.overlaps("chrY", 1, 1000000).length);
+    }
+
+    @Test
+    public void boundaryTest() {
+        seqnames.append("chr1");
+        starts.append(100L);
+        ends.append(200L);
+        strands.append("+");
+        GTFIntervalIndex index = GTFIntervalIndex.create(DataFrame.create()
+                .addColumn(seqnames)
+                .addColumn(starts)
+                .addColumn(ends)
+                .addColumn(strands));
+        Assert.assertEquals(1, index.overlaps("chr1", 200, 300).length);
+        Assert.assertEquals(1, index.overlaps("chr1", 50, 100).length);
+        Assert.assertEquals(0, index.overlaps("chr1", 201, 300).length);
+        Assert.assertEquals(0, index.overlaps("chr1", 50, 99).length);
+        Assert.assertEquals(0, index.overlaps("chr1", 50, 150, "-").length);
+    }
+
+    @Test
+    public void batchTest() {
+        GTFIntervalIndex index = GTFIntervalIndex.create(createDataFrame(5000));
+        int queries = 2000;
+        Random random = new Random(5);
+        String[] querySeqnames = new String[queries];
+        long[] queryStarts = new long[queries];
+        long[] queryEnds = new long[queries];
+        for (int i = 0; i < queries; i++) {
+            querySeqnames[i] = SEQNAMES[random.nextInt(SEQNAMES.length)];
+            queryStarts[i] = 1 + random.nextInt(1000000);
+            queryEnds[i] = queryStarts[i] + random.nextInt(5000);
+        }
+        int[][] batch = index.overlaps(querySeqnames, queryStarts, queryEnds, null);
+        IntStream.range(0, queries).parallel().forEach(i ->
+                Assert.assertArrayEquals(batch[i],
+                        index.overlaps(querySeqnames[i], queryStarts[i], queryEnds[i])));
+        for (int i = 0; i < queries; i++) {
+            Assert.assertArrayEquals(scan(querySeqnames[i], queryStarts[i], queryEnds[i], null), sorted(batch[i]));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package de.unknownreality.dataframe.gtf;
+
+import de.unknownreality.dataframe.DataFrame;
+import de.unknownreality.dataframe.DataFrameRuntimeException;
+import de.unknownreality.dataframe.common.Row;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+public class GTFSorterTest {
+    private static final String[] SEQNAMES = new String[]{"chr2", "chr1", "chrX"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<String> writeUnsortedGTF(File file, int features) throws IOException {
+        Random random = new Random(1);
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < features; i++) {
+            String seqname = SEQNAMES[random.nextInt(SEQNAMES.length)];
+            long start = 1 + random.nextInt(i % 10 == 0 ? 100 : 10000000);
+            long end = start + random.nextInt(5000);
+            lines.add(seqname + "\tensembl\texon\t" + start + "\t" + end
+                    + "\t.\t+\t.\tgene_id \"G" + i + "\";");
+        }
+        try (Writer writer = new FileWriter(file)) {
+            writer.write("#!genome-build GRCh38\n");
+            for (String line : lines) {
+                writer.write(line);
+                writer.write("\n");
+            }
+        }
+        return lines;
+    }
+
+    private static List<String> sorted(List<String> lines, List<String> seqnameOrder) {
+        List<String> sorted = new ArrayList<>(lines);
+        sorted.sort(Comparator.<String>comparingInt(line -> seqnameOrder.indexOf(line.split("\t")[0]))
+                .thenComparingLong(line -> Long.parseLong(line.split("\t")[3]))
+                .thenComparingLong(line -> Long.parseLong(line.split("\t")[4])));
+        return sorted;
+    }
+
+    @Test
+    public void sortTest() throws IOException {
+        File input = folder.newFile("unsorted.gtf");
+        List<String> lines = writeUnsortedGTF(input, 20000);
+        List<String> expected = new ArrayList<>();
+        expected.add("#!genome-build GRCh38");
+        expected.addAll(sorted(lines, Arrays.asList("chr1", "chr2", "chrX")));
+        for (int parallelism : new int[]{1, 3}) {
+            for (long memoryBudget : new long[]{GTFSorter.DEFAULT_MEMORY_BUDGET, 64 * 1024}) {
+                File output = folder.newFile("sorted" + parallelism + "-" + memoryBudget + ".gtf");
+                long written = GTFSorter.create()
+                        .withParallelism(parallelism)
+                        .withMemoryBudget(memoryBudget)
+                        .withTempDirectory(folder.getRoot())
+                        .withSeqnameOrder(Arrays.asList("chr1", "chr2"))
+                        .sort(input, output);
+                Assert.assertEquals(expected.size(), written);
+                Assert.assertEquals(expected, Files.readAllLines(output.toPath(), StandardCharsets.UTF_8));
+            }
+        }
+        File[] runFiles = folder.getRoot().listFiles((dir, name) -> name.endsWith(".run"));
+        Assert.assertNotNull(runFiles);
+        Assert.assertEquals(0, runFiles.length);
+    }
+
+    @Test
+    public void sortIndexTest() throws IOException {
+        File input = folder.newFile("unsorted.gtf");
+        List<String> lines = writeUnsortedGTF(input, 5000);
+        File output = folder.newFile("sorted.gtf.gz");
+        GTFSorter.create()
+                .withMemoryBudget(32 * 1024)
+                .withWriter(GTFWriterBuilder.create().withIndex(true).build())
+                .sort(input, output);
+        Assert.assertTrue(GTFCompression.isCompressed(output));
+        Assert.assertTrue(GTFIndex.getIndexFile(output).exists());
+
+        GTFRegion region = new GTFRegion("chr1", 1000000, 2000000);
+        List<String> expected = new ArrayList<>();
+        for (String line : sorted(lines, Arrays.asList("chr2", "chr1", "chrX"))) {
+            String[] fields = line.split("\t");
+            if (fields[0].equals("chr1") && Long.parseLong(fields[3]) <= 2000000
+                    && Long.parseLong(fields[4]) >= 1000000) {
+                expected.add(fields[8].substring(9, fields[8].length() - 2));
+            }
+        }
+        DataFrame dataFrame = DataFrame.load(output, GTFReaderBuilder.create()
+                .withAttribute("gene_id")
+                .withRegion(region.toString())
+                .build());
+        List<String> geneIds = new ArrayList<>();
+        for (Row row : dataFrame) {
+            geneIds.add((String) row.get("gene_id"));
+        }
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, geneIds);
+    }
+
+    @Test(expected = DataFrameRuntimeException.class)
+    public void invalidLineTest() throws IOException {
+        File input = folder.newFile("invalid.gtf");
+        try (Writer writer = new FileWriter(input)) {
+            writer.write("chr1\tensembl\texon\t100\t200\t.\t+\t.\tgene_id \"A\";\n");
+            writer.write("chr1\tensembl\texon\tx\t200\t.\t+\t.\tgene_id \"B\";\n");
+        }
+        GTFSorter.create().sort(input, folder.newFile("sorted.gtf"));
+    }
+}
@@ -1,14 +1,27 @@
 package de.unknownreality.dataframe.gtf;
 
 import de.unknownreality.dataframe.DataFrame;
+import de.unknownreality.dataframe.Values;
 import de.unknownreality.dataframe.column.DoubleColumn;
+import de.unknownreality.dataframe.column.LongColumn;
 import de.unknownreality.dataframe.column.StringColumn;
+import de.unknownreality.dataframe.common.Row;
+import de.unknownreality.dataframe.filter.FilterPredicate;
 import de.unknownreality.dataframe.meta.DataFrameMeta;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Created by Alex on 19.05.2017.
@@ -74,6 +87,291 @@ public class GTFTest {
         Assert.assertEquals((Double)1.2, dataFrame.getRow(3).getDouble("test_value"));
     }
 
+    @Test
+    public void loadDataFrameTest(){
+        String gtf = "#comment\n" +
+                "1\ta\tgene\t11869\t14412\t-2.5\t+\t0\tvalue \"1e3\"; count \"-12\";\n" +
+                "1\ta\tgene\t+11\t14412\t.\t+\t.\tvalue \"0.125\"; count \"x\";\n" +
+                "1\ta\tgene\t12\t14412\t1.000000000000000001\t+\t2\t.\n";
+        DataFrame dataFrame = GTFReaderBuilder.create()
+                .withGTFField(GTFField.START)
+                .withGTFField(GTFField.SCORE)
+                .withGTFField(GTFField.FRAME)
+                .withAttribute("value", DoubleColumn.class)
+                .withAttribute("count", LongColumn.class)
+                .build()
+                .loadDataFrame(new StringReader(gtf));
+
+        Assert.assertEquals(3, dataFrame.size());
+        Assert.assertEquals((Long) 11869L, dataFrame.getRow(0).getLong("start"));
+        Assert.assertEquals((Double) (-2.5), dataFrame.getRow(0).getDouble("score"));
+        Assert.assertEquals((Integer) 0, dataFrame.getRow(0).getInteger("frame"));
+        Assert.assertEquals((Double) 1000.0, dataFrame.getRow(0).getDouble("value"));
+        Assert.assertEquals((Long) (-12L), dataFrame.getRow(0).getLong("count"));
+
+        Assert.assertEquals((Long) 11L, dataFrame.getRow(1).getLong("start"));
+        Assert.assertTrue(dataFrame.getRow(1).isNA("score"));
+        Assert.assertTrue(dataFrame.getRow(1).isNA("frame"));
+        Assert.assertEquals((Double) 0.125, dataFrame.getRow(1).getDouble("value"));
+        Assert.assertTrue(dataFrame.getRow(1).isNA("count"));
+
+        Assert.assertEquals((Double) 1.0, dataFrame.getRow(2).getDouble("score"));
+        Assert.assertTrue(dataFrame.getRow(2).isNA("value"));
+        Assert.assertTrue(dataFrame.getRow(2).isNA("count"));
+    }
+
+    @Test
+    public void dictionaryTest(){
+        GTFReader gtfReader = GTFReaderBuilder.create()
+                .withAttribute("gene_name")
+                .withAttribute("transcript_source")
+                .withDictionaryEncoding(GTFField.SEQNAME)
+                .withDictionaryEncoding(GTFField.FEATURE)
+                .withDictionaryEncoding("gene_name")
+                .withDictionaryEncoding("transcript_source")
+                .build();
+        DataFrame dataFrame = DataFrame.load(
+                "test.gtf",getClass().getClassLoader(),
+                gtfReader);
+
+        Assert.assertEquals(4, dataFrame.size());
+        Assert.assertSame(dataFrame.getRow(0).get("seqname"), dataFrame.getRow(3).get("seqname"));
+        Assert.assertSame(dataFrame.getRow(1).get("feature"), dataFrame.getRow(3).get("feature"));
+        Assert.assertSame(dataFrame.getRow(0).get("gene_name"), dataFrame.getRow(2).get("gene_name"));
+        Assert.assertEquals("havana", dataFrame.getRow(3).get("transcript_source"));
+
+        Assert.assertEquals((Integer) 1, gtfReader.getDictionarySizes().get("seqname"));
+        Assert.assertEquals((Integer) 3, gtfReader.getDictionarySizes().get("feature"));
+        Assert.assertEquals((Integer) 1, gtfReader.getDictionarySizes().get("gene_name"));
+        Assert.assertEquals((Integer) 2, gtfReader.getDictionarySizes().get("transcript_source"));
+
+        DataFrame columnDataFrame = gtfReader.loadDataFrame(
+                new InputStreamReader(getClass().getClassLoader().getResourceAsStream("test.gtf")));
+        Assert.assertSame(dataFrame.getRow(0).get("gene_name"), columnDataFrame.getRow(1).get("gene_name"));
+        Assert.assertEquals((Integer) 3, gtfReader.getDictionarySizes().get("feature"));
+
+        gtfReader.clearDictionaries();
+        Assert.assertEquals((Integer) 0, gtfReader.getDictionarySizes().get("feature"));
+        String other = "chr2\ttest\tgene\t1\t10\t.\t+\t.\tgene_name \"A\";\n" +
+                "chr2\ttest\tgene\t20\t30\t.\t+\t.\tgene_name \"B\";\n";
+        gtfReader.loadDataFrame(new StringReader(other));
+        Assert.assertEquals((Integer) 1, gtfReader.getDictionarySizes().get("feature"));
+        Assert.assertEquals((Integer) 2, gtfReader.getDictionarySizes().get("gene_name"));
+        Assert.assertEquals((Integer) 0, gtfReader.getDictionarySizes().get("transcript_source"));
+    }
+
+    @Test
+    public void selectivePreFilterTest(){
+        final int commentLines = 100000;
+        final int filteredRows = 1000000;
+        Reader reader = new Reader() {
+            private int line = 0;
+            private String current = "";
+            private int position = 0;
+
+            @Override
+            public int read(char[] buffer, int offset, int length) {
+                if (position == current.length()) {
+                    if (line == commentLines + filteredRows + 1) {
+                        return -1;
+                    }
+                    current = line < commentLines ? "#!comment\n"
+                            : "1\tensembl\t" + (line < commentLines + filteredRows ? "exon" : "start_codon")
+                            + "\t1\t100\t.\t+\t.\tgene_id \"G\";\n";
+                    position = 0;
+                    line++;
+                }
+                int count = Math.min(length, current.length() - position);
+                current.getChars(position, position + count, buffer, offset);
+                position += count;
+                return count;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        GTFIterator iterator = GTFReaderBuilder.create()
+                .withGTFField(GTFField.FEATURE)
+                .withPreFilter("feature == 'start_codon'")
+                .build()
+                .load(reader);
+
+        Assert.assertTrue(iterator.hasNext());
+        GTFRow row = iterator.next();
+        Assert.assertEquals("start_codon", row.get(GTFField.FEATURE.getName()));
+        Assert.assertEquals(0, row.getIndex());
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertEquals(commentLines, iterator.getSkippedLineCount());
+        Assert.assertEquals(filteredRows, iterator.getFilteredRowCount());
+    }
+
+    @Test
+    public void lazyRowTest(){
+        String gtf = "1\ta\tgene\t1\t10\t.\t+\t.\tgene_id \"g1\"; gene_name \"A\\\"B\";\n" +
+                "#comment\n" +
+                "1\ta\ttranscript\t1\t10\t.\t+\t.\tgene_id \"g1\"; transcript_id \"t1\";\n" +
+                "1\ta\texon\t1\t5\t0.5\t-\t0\t.\n";
+        GTFReaderBuilder builder = GTFReaderBuilder.create()
+                .withAttribute("gene_id")
+                .withAttribute("gene_name")
+                .withAttribute("transcript_id");
+        List<GTFRow> expected = toList(builder.build().load(new StringReader(gtf)));
+        List<GTFRow> lazy = toList(builder.withLazyParsing(true).build().load(new StringReader(gtf)));
+        Assert.assertEquals(3, lazy.size());
+
+        GTFLazyRow row = (GTFLazyRow) lazy.get(1);
+        Assert.assertEquals(2, row.getLineNumber());
+        Assert.assertEquals(1, row.getIndex());
+        int featureIndex = row.getHeader().getIndex(GTFField.FEATURE.getName());
+        int geneIdIndex = row.getHeader().getIndex("gene_id");
+        int transcriptIdIndex = row.getHeader().getIndex("transcript_id");
+        Assert.assertFalse(row.isParsed(featureIndex));
+        Assert.assertFalse(row.isParsed(geneIdIndex));
+        Assert.assertEquals("transcript", row.get(featureIndex));
+        Assert.assertTrue(row.isParsed(featureIndex));
+        Assert.assertFalse(row.isParsed(geneIdIndex));
+        Assert.assertEquals("g1", row.get(geneIdIndex));
+        Assert.assertTrue(row.isParsed(transcriptIdIndex));
+
+        row = (GTFLazyRow) lazy.get(2);
+        Assert.assertFalse(row.isParsed(featureIndex));
+        Assert.assertArrayEquals(expected.get(2).getValues(), row.getValues());
+        Assert.assertTrue(row.isParsed(featureIndex));
+
+        for (int r = 0; r < expected.size(); r++) {
+            for (int c = 0; c < expected.get(r).size(); c++) {
+                Assert.assertEquals(expected.get(r).get(c), lazy.get(r).get(c));
+            }
+        }
+
+        lazy = toList(builder.withPreFilter("strand == '-'").build().load(new StringReader(gtf)));
+        Assert.assertEquals(1, lazy.size());
+        row = (GTFLazyRow) lazy.get(0);
+        Assert.assertTrue(row.isParsed(row.getHeader().getIndex(GTFField.STRAND.getName())));
+        Assert.assertFalse(row.isParsed(featureIndex));
+        Assert.assertEquals("exon", row.get(featureIndex));
+        Assert.assertTrue(row.isNA("gene_id"));
+    }
+
+    private static List<GTFRow> toList(GTFIterator iterator) {
+        List<GTFRow> rows = new ArrayList<>();
+        for (GTFRow row : iterator) {
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    @Test
+    public void duplicateFieldTest(){
+        String gtf = "1\ta\tgene\t11\t20\t.\t+\t.\tgene_id \"g1\";\n" +
+                "2\ta\texon\t.\t15\t.\t+\t.\tgene_id \"g2\";\n";
+        List<GTFRow> rows = toList(GTFReaderBuilder.create()
+                .withGTFField(GTFField.START)
+                .withGTFField(GTFField.SEQNAME)
+                .withGTFField(GTFField.START)
+                .build()
+                .load(new StringReader(gtf)));
+        Assert.assertEquals(2, rows.size());
+        Assert.assertArrayEquals(new String[]{"1", "11", "11"}, rows.get(0).getValues());
+        Assert.assertArrayEquals(new String[]{"2", Values.NA.toString(), Values.NA.toString()}, rows.get(1).getValues());
+    }
+
+    @Test
+    public void filterPushdownTest(){
+        String gtf = "1\ta\tgene\t1\t10\t.\t+\t.\tgene_id \"g1\";\n" +
+                "1\ta\ttranscript\t1\t10\t.\t+\t.\tgene_id \"g1\"; test_value \"1.3\";\n" +
+                "1\ta\texon\t1\t5\t.\t+\t.\tgene_id \"g1\"; test_value \"2.0\";\n" +
+                "1\ta\ttranscript\t1\t10\t.\t-\t.\tgene_id \"g2\"; test_value \"1.2\";\n" +
+                "1\ta\ttranscript\t1\t10\t.\t-\t.\t.\n" +
+                "1\ta\ttranscript\t20\t30\t.\t-\t.\tgene_id \"g3\"; test_value \"1.5\";\n";
+        FilterPredicate predicate = new FilterPredicate() {
+            @Override
+            public boolean valid(Row<?, ?> row) {
+                GTFRow gtfRow = (GTFRow) row;
+                return "transcript".equals(gtfRow.getString("feature"))
+                        && !gtfRow.isNA("test_value")
+                        && Double.parseDouble(gtfRow.getString("test_value")) > 1.25;
+            }
+        };
+        GTFReader gtfReader = GTFReaderBuilder.create()
+                .withGTFField(GTFField.FEATURE)
+                .withGTFField(GTFField.START)
+                .withAttribute("gene_id")
+                .withAttribute("test_value")
+                .withPreFilter(predicate)
+                .build();
+
+        GTFIterator iterator = gtfReader.load(new StringReader(gtf));
+        GTFRow row = iterator.next();
+        Assert.assertEquals("g1", row.get("gene_id"));
+        Assert.assertEquals(0, row.getIndex());
+        row = iterator.next();
+        Assert.assertEquals("g3", row.get("gene_id"));
+        Assert.assertEquals("20", row.get("start"));
+        Assert.assertEquals(1, row.getIndex());
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertEquals(4, iterator.getFilteredRowCount());
+
+        DataFrame columnDataFrame = gtfReader.loadDataFrame(new StringReader(gtf));
+        Assert.assertEquals(2, columnDataFrame.size());
+        Assert.assertEquals("g1", columnDataFrame.getRow(0).get("gene_id"));
+        Assert.assertEquals("g3", columnDataFrame.getRow(1).get("gene_id"));
+
+        FilterPredicate indexPredicate = new FilterPredicate() {
+            @Override
+            public boolean valid(Row<?, ?> row) {
+                return "g2".equals(row.getString(1));
+            }
+        };
+        DataFrame dataFrame = GTFReaderBuilder.create()
+                .withGTFField(GTFField.START)
+                .withAttribute("gene_id")
+                .withPreFilter(indexPredicate)
+                .build()
+                .loadDataFrame(new StringReader(gtf));
+        Assert.assertEquals(1, dataFrame.size());
+        Assert.assertEquals("g2", dataFrame.getRow(0).get("gene_id"));
+    }
+
+    @Test
+    public void streamTest(){
+        GTFReader gtfReader = GTFReaderBuilder.create()
+                .withGTFField(GTFField.FEATURE)
+                .withAttribute("gene_id")
+                .withAttribute("test_value")
+                .build();
+        final Map<String, Integer> featureCounts = new HashMap<>();
+        int records = gtfReader.stream(
+                new InputStreamReader(getClass().getClassLoader().getResourceAsStream("test.gtf")),
+                record -> featureCounts.merge(record.get(GTFField.FEATURE), 1, Integer::sum));
+        Assert.assertEquals(4, records);
+        Assert.assertEquals((Integer) 1, featureCounts.get("gene"));
+        Assert.assertEquals((Integer) 2, featureCounts.get("transcript"));
+        Assert.assertEquals((Integer) 1, featureCounts.get("exon"));
+
+        gtfReader = GTFReaderBuilder.create()
+                .withGTFField(GTFField.FEATURE)
+                .withAttribute("gene_id")
+                .withAttribute("test_value")
+                .withPreFilter("feature == 'transcript'")
+                .build();
+        List<GTFRow> rows;
+        try (Stream<GTFRecordView> stream = gtfReader.stream(
+                new InputStreamReader(getClass().getClassLoader().getResourceAsStream("test.gtf")))) {
+            rows = stream
+                    .filter(record -> !record.isNA("test_value"))
+                    .map(GTFRecordView::toRow)
+                    .collect(Collectors.toList());
+        }
+        Assert.assertEquals(2, rows.size());
+        Assert.assertEquals("1.3", rows.get(0).get("test_value"));
+        Assert.assertEquals("ENSG00000223972", rows.get(0).get("gene_id"));
+        Assert.assertEquals(0, rows.get(0).getIndex());
+        Assert.assertEquals("1.2", rows.get(1).get("test_value"));
+        Assert.assertEquals(1, rows.get(1).getIndex());
+    }
+
     @Test
     public void writerTest(){
         GTFReader gtfReader = GTFReaderBuilder.create()
@@ -100,6 +398,38 @@ public class GTFTest {
 
     }
 
+    @Test
+    public void writerLayoutTest(){
+        StringColumn geneId = new StringColumn("gene_id");
+        geneId.append("g1");
+        geneId.appendNA();
+        LongColumn start = new LongColumn("start");
+        start.append(10L);
+        start.append(20L);
+        StringColumn feature = new StringColumn("feature");
+        feature.append("gene");
+        feature.append("exon");
+        DataFrame dataFrame = DataFrame.create()
+                .addColumn(geneId)
+                .addColumn(start)
+                .addColumn(feature);
+
+        StringWriter stringWriter = new StringWriter();
+        dataFrame.write(stringWriter, GTFWriterBuilder.create()
+                .withBufferSize(16)
+                .build());
+        String[] lines = stringWriter.toString().split("\r?\n");
+        Assert.assertEquals(2, lines.length);
+        Assert.assertEquals(".\t.\tgene\t10\t.\t.\t.\t.\tgene_id \"g1\";", lines[0]);
+        Assert.assertEquals(".\t.\texon\t20\t.\t.\t.\t.\tgene_id \".\";", lines[1]);
+
+        LongColumn end = new LongColumn("end");
+        end.append(30L);
+        stringWriter = new StringWriter();
+        DataFrame.create().addColumn(end).write(stringWriter, GTFFormat.GTF);
+        Assert.assertEquals(".\t.\t.\t.\t30\t.\t.\t.\t.", stringWriter.toString().trim());
+    }
+
     @Test
     public void metaTest(){
         GTFReader gtfReader = GTFReaderBuilder.create()